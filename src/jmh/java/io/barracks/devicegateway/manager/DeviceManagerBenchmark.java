@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.manager;
+
+import io.barracks.devicegateway.metrics.CallTimers;
+import io.barracks.devicegateway.model.DeviceRequest;
+import io.barracks.devicegateway.model.Package;
+import io.barracks.devicegateway.model.ResolvedPackages;
+import io.barracks.devicegateway.model.ResolvedVersions;
+import io.barracks.devicegateway.model.Version;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceManagerBenchmark {
+
+    @Param({"1", "20", "500"})
+    private int packageCount;
+
+    private DeviceManager deviceManager;
+    private DeviceRequest request;
+    private ResolvedPackages resolvedPackages;
+
+    @Setup
+    public void setUp() {
+        final Version version = Version.builder().reference("io.barracks.package").version("2.0.0").size(42L).md5("deadbeef").build();
+        deviceManager = new DeviceManager(null, null, null, new CallTimers()) {
+            @Override
+            Version getVersion(String userId, String reference, String versionId) {
+                return version;
+            }
+        };
+        final DeviceRequest.DeviceRequestBuilder requestBuilder = DeviceRequest.builder()
+                .userId("userId")
+                .unitId("unitId");
+        final ResolvedPackages.ResolvedPackagesBuilder resolvedBuilder = ResolvedPackages.builder();
+        for (int i = 0; i < packageCount; i++) {
+            final Package devicePackage = Package.builder().reference("io.barracks.package." + i).version("1.0.0").build();
+            requestBuilder.addPackage(devicePackage);
+            switch (i % 4) {
+                case 0:
+                    resolvedBuilder.addPresent(devicePackage);
+                    break;
+                case 1:
+                    resolvedBuilder.addPresent(devicePackage.toBuilder().version("2.0.0").build());
+                    break;
+                case 2:
+                    resolvedBuilder.addAbsent(devicePackage);
+                    break;
+                default:
+                    resolvedBuilder.addPresent(Package.builder().reference("io.barracks.new." + i).version("1.0.0").build());
+                    break;
+            }
+        }
+        request = requestBuilder.build();
+        resolvedPackages = resolvedBuilder.build();
+    }
+
+    @Benchmark
+    public ResolvedVersions buildResolvedVersions() {
+        return deviceManager.buildResolvedVersions(request, resolvedPackages);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.metrics;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of timing a resource, manager and client call stack, as /update/check and /resolve do, with around advice on
+ * CGLIB proxies (the former monitors) and with {@link CallTimers} handles. Both record into the same histograms, the
+ * difference is the proxy chain and the per-call timer lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallTimersBenchmark {
+
+    private Resource plain;
+    private Resource proxied;
+    private Resource timed;
+    private int value;
+
+    @Setup
+    public void setUp() {
+        final CallTimers callTimers = new CallTimers();
+        final MonitorAspect aspect = new MonitorAspect(callTimers);
+        plain = new Resource(new Manager(new Client()));
+        proxied = proxy(new Resource(proxy(new Manager(proxy(new Client(), aspect)), aspect)), aspect);
+        timed = new TimedResource(new TimedManager(new TimedClient(callTimers), callTimers), callTimers);
+    }
+
+    @Benchmark
+    public int uninstrumented() {
+        return plain.call(value++);
+    }
+
+    @Benchmark
+    public int aspectProxies() {
+        return proxied.call(value++);
+    }
+
+    @Benchmark
+    public int callTimers() {
+        return timed.call(value++);
+    }
+
+    private static <T> T proxy(T target, MonitorAspect aspect) {
+        final AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        return factory.getProxy();
+    }
+
+    @Aspect
+    public static class MonitorAspect {
+        private final CallTimers callTimers;
+
+        MonitorAspect(CallTimers callTimers) {
+            this.callTimers = callTimers;
+        }
+
+        @Around("execution(public int io.barracks.devicegateway.metrics.CallTimersBenchmark.*.call(int))")
+        public Object monitor(ProceedingJoinPoint joinPoint) throws Throwable {
+            final long start = System.nanoTime();
+            try {
+                return joinPoint.proceed();
+            } finally {
+                callTimers.timer(joinPoint.getSignature().getDeclaringTypeName(), joinPoint.getSignature().getName())
+                        .record(start);
+            }
+        }
+    }
+
+    public static class Client {
+        public int call(int value) {
+            return value + 1;
+        }
+    }
+
+    public static class Manager {
+        private final Client client;
+
+        public Manager(Client client) {
+            this.client = client;
+        }
+
+        public int call(int value) {
+            return client.call(value) * 31;
+        }
+    }
+
+    public static class Resource {
+        private final Manager manager;
+
+        public Resource(Manager manager) {
+            this.manager = manager;
+        }
+
+        public int call(int value) {
+            return manager.call(value) ^ value;
+        }
+    }
+
+    public static class TimedClient extends Client {
+        private final CallTimers.Timer timer;
+
+        TimedClient(CallTimers callTimers) {
+            this.timer = callTimers.timer("client", "call");
+        }
+
+        @Override
+        public int call(int value) {
+            final long start = System.nanoTime();
+            try {
+                return super.call(value);
+            } finally {
+                timer.record(start);
+            }
+        }
+    }
+
+    public static class TimedManager extends Manager {
+        private final CallTimers.Timer timer;
+
+        TimedManager(Client client, CallTimers callTimers) {
+            super(client);
+            this.timer = callTimers.timer("manager", "call");
+        }
+
+        @Override
+        public int call(int value) {
+            final long start = System.nanoTime();
+            try {
+                return super.call(value);
+            } finally {
+                timer.record(start);
+            }
+        }
+    }
+
+    public static class TimedResource extends Resource {
+        private final CallTimers.Timer timer;
+
+        TimedResource(Manager manager, CallTimers callTimers) {
+            super(manager);
+            this.timer = callTimers.timer("resource", "call");
+        }
+
+        @Override
+        public int call(int value) {
+            final long start = System.nanoTime();
+            try {
+                return super.call(value);
+            } finally {
+                timer.record(start);
+            }
+        }
+    }
+}
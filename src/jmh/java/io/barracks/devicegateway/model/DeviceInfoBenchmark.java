@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.barracks.devicegateway.rest.entity.DeviceRequestEntity;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows custom client data through the /update/check path: the request body is bound, copied into a
+ * {@link DeviceInfo} and serialized twice, for the queuing service and for the device service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceInfoBenchmark {
+
+    @Param({"1", "20", "500"})
+    private int clientDataSize;
+
+    private ObjectMapper mapper;
+    private byte[] requestJson;
+    private DeviceRequestEntity deviceRequest;
+    private DeviceInfo deviceInfo;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+        final Map<String, Object> clientData = new LinkedHashMap<>();
+        for (int i = 0; i < clientDataSize; i++) {
+            clientData.put("key" + i, "value" + i);
+        }
+        final Map<String, Object> request = new LinkedHashMap<>();
+        request.put("unitId", "unitId");
+        request.put("versionId", "versionId");
+        request.put("customClientData", clientData);
+        requestJson = mapper.writeValueAsBytes(request);
+        deviceRequest = mapper.readValue(requestJson, DeviceRequestEntity.class);
+        deviceInfo = toDeviceInfo(deviceRequest);
+    }
+
+    @Benchmark
+    public DeviceInfo buildDeviceInfo() {
+        return toDeviceInfo(deviceRequest);
+    }
+
+    @Benchmark
+    public void serializeDeviceInfo(Blackhole blackhole) throws IOException {
+        blackhole.consume(mapper.writeValueAsBytes(deviceInfo));
+        blackhole.consume(mapper.writeValueAsBytes(deviceInfo));
+    }
+
+    @Benchmark
+    public void checkPath(Blackhole blackhole) throws IOException {
+        final DeviceInfo info = toDeviceInfo(mapper.readValue(requestJson, DeviceRequestEntity.class));
+        blackhole.consume(mapper.writeValueAsBytes(info));
+        blackhole.consume(mapper.writeValueAsBytes(info));
+    }
+
+    private static DeviceInfo toDeviceInfo(DeviceRequestEntity deviceRequest) {
+        return DeviceInfo.builder()
+                .userId("userId")
+                .unitId(deviceRequest.getUnitId())
+                .versionId(deviceRequest.getVersionId())
+                .additionalProperties(deviceRequest.getCustomClientData())
+                .deviceIP("127.0.0.1")
+                .userAgent("barracks-client/1.0")
+                .build();
+    }
+}
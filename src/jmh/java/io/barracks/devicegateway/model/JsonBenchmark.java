@@ -0,0 +1,178 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.model;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    @Param({"1", "20", "500"})
+    private int packageCount;
+
+    @Param({"default", "afterburner"})
+    private String mapperProfile;
+
+    private ObjectMapper mapper;
+    private DeviceRequest deviceRequest;
+    private byte[] deviceRequestJson;
+    private ResolvedVersions resolvedVersions;
+    private byte[] resolvedPackagesJson;
+    private DeviceEvent deviceEvent;
+    private byte[] updateJson;
+    private byte[] updateStatusJson;
+    private DeviceInfo deviceInfo;
+    private byte[] deviceInfoJson;
+    private byte[] packageInfoJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Mirrors JacksonAutoConfiguration: well-known modules plus the application's Module beans
+        final Module[] modules = "afterburner".equals(mapperProfile)
+                ? new Module[]{new ParameterNamesModule(), new AfterburnerModule()}
+                : new Module[]{new ParameterNamesModule()};
+        mapper = Jackson2ObjectMapperBuilder.json().modulesToInstall(modules).build();
+        final DeviceRequest.DeviceRequestBuilder requestBuilder = DeviceRequest.builder()
+                .userId("userId")
+                .unitId("unitId")
+                .addCustomClientData("string", "deadbeef")
+                .addCustomClientData("number", Math.PI)
+                .addCustomClientData("boolean", true);
+        final Map<String, Object> sensors = new LinkedHashMap<>();
+        final ResolvedPackages.ResolvedPackagesBuilder resolvedPackagesBuilder = ResolvedPackages.builder();
+        final ResolvedVersions.ResolvedVersionsBuilder resolvedVersionsBuilder = ResolvedVersions.builder();
+        for (int i = 0; i < packageCount; i++) {
+            final Package aPackage = Package.builder().reference("io.barracks.package." + i).version("1.0.0").build();
+            requestBuilder.addPackage(aPackage);
+            sensors.put("sensor" + i, new double[]{i, Math.E, Math.PI});
+            resolvedPackagesBuilder.addPresent(aPackage.toBuilder().version("2.0.0").build());
+            resolvedVersionsBuilder.addChanged(Version.builder()
+                    .reference(aPackage.getReference())
+                    .version("2.0.0")
+                    .filename("package.bin")
+                    .md5("deadbeef")
+                    .size(42L)
+                    .url("https://app.barracks.io/api/device/packages/" + aPackage.getReference() + "/versions/2.0.0/file")
+                    .addMetadata("critical", true)
+                    .build());
+        }
+        deviceRequest = requestBuilder.addCustomClientData("sensors", sensors).build();
+        deviceRequestJson = mapper.writeValueAsBytes(deviceRequest);
+        resolvedVersions = resolvedVersionsBuilder.build();
+        resolvedPackagesJson = mapper.writeValueAsBytes(resolvedPackagesBuilder.build());
+        deviceEvent = DeviceEvent.builder().request(deviceRequest).response(resolvedVersions).build();
+        updateJson = ("{\"uuid\":\"uuid\",\"packageId\":\"packageId\",\"userId\":\"userId\","
+                + "\"additionalProperties\":{\"critical\":true},\"status\":\"published\"}").getBytes("UTF-8");
+        updateStatusJson = "\"archived\"".getBytes("UTF-8");
+        deviceInfo = DeviceInfo.builder()
+                .unitId("unitId")
+                .userId("userId")
+                .versionId("versionId")
+                .receptionDate(Instant.EPOCH)
+                .deviceIP("127.0.0.1")
+                .userAgent("barracks-client/1.0")
+                .additionalProperties(deviceRequest.getCustomClientData())
+                .build();
+        deviceInfoJson = mapper.writeValueAsBytes(deviceInfo);
+        packageInfoJson = mapper.writeValueAsBytes(PackageInfo.builder()
+                .id("id")
+                .versionId("versionId")
+                .userId("userId")
+                .md5("deadbeef")
+                .size(42L)
+                .build());
+    }
+
+    @Benchmark
+    public DeviceRequest readDeviceRequest() throws IOException {
+        return mapper.readValue(deviceRequestJson, DeviceRequest.class);
+    }
+
+    @Benchmark
+    public byte[] forwardDeviceRequest() throws IOException {
+        return mapper.writeValueAsBytes(mapper.readValue(deviceRequestJson, DeviceRequest.class));
+    }
+
+    @Benchmark
+    public byte[] writeDeviceRequest() throws IOException {
+        return mapper.writeValueAsBytes(deviceRequest);
+    }
+
+    @Benchmark
+    public ResolvedPackages readResolvedPackages() throws IOException {
+        return mapper.readValue(resolvedPackagesJson, ResolvedPackages.class);
+    }
+
+    @Benchmark
+    public byte[] writeResolvedVersions() throws IOException {
+        return mapper.writeValueAsBytes(resolvedVersions);
+    }
+
+    @Benchmark
+    public byte[] writeDeviceEvent() throws IOException {
+        return mapper.writeValueAsBytes(deviceEvent);
+    }
+
+    @Benchmark
+    public Update readUpdate() throws IOException {
+        return mapper.readValue(updateJson, Update.class);
+    }
+
+    @Benchmark
+    public DeviceInfo readDeviceInfo() throws IOException {
+        return mapper.readValue(deviceInfoJson, DeviceInfo.class);
+    }
+
+    @Benchmark
+    public byte[] writeDeviceInfo() throws IOException {
+        return mapper.writeValueAsBytes(deviceInfo);
+    }
+
+    @Benchmark
+    public PackageInfo readPackageInfo() throws IOException {
+        return mapper.readValue(packageInfoJson, PackageInfo.class);
+    }
+
+    @Benchmark
+    public UpdateStatus readUpdateStatus() throws IOException {
+        return mapper.readValue(updateStatusJson, UpdateStatus.class);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.barracks.devicegateway.model.DetailedUpdate;
+import io.barracks.devicegateway.model.PackageInfo;
+import io.barracks.devicegateway.model.Update;
+import io.barracks.devicegateway.rest.entity.DevicePackageInfo;
+import io.barracks.devicegateway.rest.entity.DeviceUpdate;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceUpdateBodyBenchmark {
+
+    private static final DownloadUrlTemplate DOWNLOAD_URL_TEMPLATE = new DownloadUrlTemplate("/update/download/{uuid}");
+
+    @Param({"1", "20"})
+    private int customUpdateDataSize;
+
+    private ObjectMapper mapper;
+    private DeviceUpdateBodyCache cache;
+    private DetailedUpdate detailedUpdate;
+    private String baseUrl;
+
+    @Setup
+    public void setUp() {
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+        cache = new DeviceUpdateBodyCache(mapper, 100);
+        baseUrl = "https://app.barracks.io:8443/api/device";
+        cache.get(newDetailedUpdate(), baseUrl, () -> toDeviceUpdate(newDetailedUpdate()));
+        // Each request gets an equal but distinct instance from the upstream services
+        detailedUpdate = newDetailedUpdate();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return mapper.writeValueAsBytes(toDeviceUpdate(detailedUpdate));
+    }
+
+    @Benchmark
+    public byte[] cached() {
+        return cache.get(detailedUpdate, baseUrl, () -> toDeviceUpdate(detailedUpdate));
+    }
+
+    private DetailedUpdate newDetailedUpdate() {
+        final Update.UpdateBuilder update = Update.builder()
+                .uuid("2b9a5b7e-6b67-4c4c-a3e8-0b0b7f5b8b52")
+                .packageId("packageId")
+                .userId("userId");
+        for (int i = 0; i < customUpdateDataSize; i++) {
+            update.additionalProperty("key" + i, "value" + i);
+        }
+        return DetailedUpdate.builder()
+                .update(update.build())
+                .packageInfo(PackageInfo.builder().versionId("1.0.0").md5("deadbeef").size(42L).build())
+                .build();
+    }
+
+    private DeviceUpdate toDeviceUpdate(DetailedUpdate update) {
+        return DeviceUpdate.builder()
+                .versionId(update.getPackageInfo().getVersionId())
+                .packageInfo(DevicePackageInfo.builder()
+                        .url(DOWNLOAD_URL_TEMPLATE.expand(baseUrl, update.getUpdate().getUuid()))
+                        .md5(update.getPackageInfo().getMd5())
+                        .size(update.getPackageInfo().getSize())
+                        .build())
+                .customUpdateData(update.getUpdate().getAdditionalProperties())
+                .build();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.rest;
+
+import io.barracks.devicegateway.metrics.CallTimers;
+import io.barracks.devicegateway.model.Update;
+import io.barracks.devicegateway.model.Version;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DownloadUrlBenchmark {
+
+    private UpdateResource updateResource;
+    private VersionResource versionResource;
+    private MockHttpServletRequest request;
+    private Update update;
+    private Version version;
+    private List<Version> versions;
+    private String baseUrl;
+
+    @Setup
+    public void setUp() {
+        updateResource = new UpdateResource(null, null, null, null, new CallTimers());
+        versionResource = new VersionResource(null, null, null, null, null, null, new CallTimers());
+        request = new MockHttpServletRequest("POST", "/resolve");
+        request.addHeader("Host", "app.barracks.io:8443");
+        request.addHeader("X-Forwarded-Proto", "https");
+        request.addHeader("X-Forwarded-Prefix", "/api/device");
+        update = Update.builder().uuid("2b9a5b7e-6b67-4c4c-a3e8-0b0b7f5b8b52").build();
+        version = Version.builder().reference("io.barracks.firmware").version("1.0.0").md5("deadbeef").size(42L).build();
+        baseUrl = versionResource.getBaseUrl(request);
+        versions = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            versions.add(version.toBuilder().reference("io.barracks.package." + i).build());
+        }
+    }
+
+    @Benchmark
+    public String buildDownloadUrl() {
+        return updateResource.buildDownloadUrl(request, update);
+    }
+
+    @Benchmark
+    public String getBaseUrl() {
+        return versionResource.getBaseUrl(request);
+    }
+
+    @Benchmark
+    public Version addVersionUrl() {
+        return versionResource.addVersionUrl(baseUrl, version);
+    }
+
+    @Benchmark
+    public List<Version> resolveFiftyVersionUrls() {
+        final String resolveBaseUrl = versionResource.getBaseUrl(request);
+        final List<Version> result = new ArrayList<>(versions.size());
+        for (Version aVersion : versions) {
+            result.add(versionResource.addVersionUrl(resolveBaseUrl, aVersion));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.load;
+
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AMQP stand-in: converts messages with the gateway's converter, so serialization costs are kept, then drops them.
+ */
+public class InMemoryRabbitTemplate extends RabbitTemplate {
+
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    public InMemoryRabbitTemplate(MessageConverter messageConverter) {
+        setMessageConverter(messageConverter);
+    }
+
+    /**
+     * @param holder receives the template installed in the gateway
+     * @return an initializer replacing the gateway's {@link RabbitTemplate} with an in-memory one
+     */
+    static ApplicationContextInitializer<ConfigurableApplicationContext> replacing(AtomicReference<InMemoryRabbitTemplate> holder) {
+        return context -> context.getBeanFactory().addBeanPostProcessor(new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+                return bean;
+            }
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                if (bean instanceof RabbitTemplate && !(bean instanceof InMemoryRabbitTemplate)) {
+                    holder.set(new InMemoryRabbitTemplate(((RabbitTemplate) bean).getMessageConverter()));
+                    return holder.get();
+                }
+                return bean;
+            }
+        });
+    }
+
+    @Override
+    public void convertAndSend(String exchange, String routingKey, Object object) throws AmqpException {
+        final Message message = getMessageConverter().toMessage(object, new MessageProperties());
+        messages.increment();
+        bytes.add(message.getBody().length);
+    }
+
+    long getMessages() {
+        return messages.sum();
+    }
+
+    long getBytes() {
+        return bytes.sum();
+    }
+}
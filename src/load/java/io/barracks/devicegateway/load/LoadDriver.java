@@ -0,0 +1,212 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives a weighted mix of check, resolve and download calls against the gateway from a fixed number of workers.
+ */
+public class LoadDriver {
+
+    enum Call {
+        CHECK, RESOLVE, DOWNLOAD
+    }
+
+    private static final ResponseExtractor<Long> DRAIN = response -> {
+        final byte[] buffer = new byte[8192];
+        long total = 0;
+        try (InputStream body = response.getBody()) {
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                total += read;
+            }
+        }
+        return total;
+    };
+
+    private final String gatewayUrl;
+    private final int concurrency;
+    private final Map<Call, Integer> mix;
+    private final double upToDateRatio;
+    private final int packagesPerDevice;
+    private final RestTemplate restTemplate;
+    private final Map<Call, Recorder> recorders = new EnumMap<>(Call.class);
+    private final Map<Call, LongAdder> errors = new EnumMap<>(Call.class);
+
+    public LoadDriver(String gatewayUrl, int concurrency, Map<Call, Integer> mix, double upToDateRatio, int packagesPerDevice) {
+        this.gatewayUrl = gatewayUrl;
+        this.concurrency = concurrency;
+        this.mix = mix;
+        this.upToDateRatio = upToDateRatio;
+        this.packagesPerDevice = packagesPerDevice;
+        final SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setBufferRequestBody(false);
+        this.restTemplate = new RestTemplate(requestFactory);
+        for (Call call : Call.values()) {
+            recorders.put(call, new Recorder(TimeUnit.MINUTES.toMicros(1), 3));
+            errors.put(call, new LongAdder());
+        }
+    }
+
+    public Map<Call, Histogram> run(long warmupSeconds, long durationSeconds) throws InterruptedException {
+        runFor(warmupSeconds);
+        for (Recorder recorder : recorders.values()) {
+            recorder.reset();
+        }
+        for (LongAdder error : errors.values()) {
+            error.reset();
+        }
+        runFor(durationSeconds);
+        final Map<Call, Histogram> histograms = new EnumMap<>(Call.class);
+        recorders.forEach((call, recorder) -> histograms.put(call, recorder.getIntervalHistogram()));
+        return histograms;
+    }
+
+    private void runFor(long seconds) throws InterruptedException {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            final String unitId = "load-unit-" + i;
+            workers.execute(() -> {
+                while (System.nanoTime() < end) {
+                    execute(pickCall(), unitId);
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+    }
+
+    private Call pickCall() {
+        final int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        int pick = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<Call, Integer> entry : mix.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                return entry.getKey();
+            }
+        }
+        return Call.CHECK;
+    }
+
+    private void execute(Call call, String unitId) {
+        final long start = System.nanoTime();
+        try {
+            switch (call) {
+                case CHECK:
+                    restTemplate.exchange(gatewayUrl + "/update/check", HttpMethod.POST, new HttpEntity<>(checkBody(unitId), headers()), String.class);
+                    break;
+                case RESOLVE:
+                    restTemplate.exchange(gatewayUrl + "/resolve", HttpMethod.POST, new HttpEntity<>(resolveBody(unitId), headers()), String.class);
+                    break;
+                case DOWNLOAD:
+                    restTemplate.execute(
+                            gatewayUrl + "/update/download/" + UpstreamStubs.UPDATE_ID,
+                            HttpMethod.GET,
+                            request -> request.getHeaders().putAll(headers()),
+                            DRAIN
+                    );
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown call " + call);
+            }
+        } catch (RestClientException e) {
+            errors.get(call).increment();
+        } finally {
+            recorders.get(call).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        }
+    }
+
+    private HttpHeaders headers() {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.AUTHORIZATION, "load-api-key");
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return headers;
+    }
+
+    private Map<String, Object> checkBody(String unitId) {
+        final Map<String, Object> body = new LinkedHashMap<>();
+        body.put("unitId", unitId);
+        body.put("versionId", ThreadLocalRandom.current().nextDouble() < upToDateRatio ? UpstreamStubs.LATEST_VERSION : "1.0.0");
+        body.put("customClientData", Collections.singletonMap("battery", 42));
+        return body;
+    }
+
+    private Map<String, Object> resolveBody(String unitId) {
+        final List<Map<String, Object>> packages = new ArrayList<>(packagesPerDevice);
+        final boolean upToDate = ThreadLocalRandom.current().nextDouble() < upToDateRatio;
+        for (int i = 0; i < packagesPerDevice; i++) {
+            final Map<String, Object> aPackage = new LinkedHashMap<>();
+            aPackage.put("reference", "io.barracks.load." + i);
+            aPackage.put("version", upToDate ? UpstreamStubs.LATEST_VERSION : "1.0.0");
+            packages.add(aPackage);
+        }
+        final Map<String, Object> body = new LinkedHashMap<>();
+        body.put("unitId", unitId);
+        body.put("packages", packages);
+        body.put("customClientData", Collections.singletonMap("battery", 42));
+        return body;
+    }
+
+    public void report(Map<Call, Histogram> histograms, long durationSeconds, PrintStream out) {
+        out.printf("%-10s %10s %8s %10s %10s %10s %10s %10s %10s%n", "call", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p999 ms", "max ms");
+        histograms.forEach((call, histogram) -> out.printf(
+                "%-10s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                call,
+                histogram.getTotalCount(),
+                errors.get(call).sum(),
+                histogram.getTotalCount() / (double) durationSeconds,
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0
+        ));
+    }
+}
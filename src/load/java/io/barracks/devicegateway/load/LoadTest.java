@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.load;
+
+import io.barracks.devicegateway.Application;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Boots the gateway against in-process upstream stubs and an in-memory AMQP stand-in, drives a realistic mix of
+ * calls and prints throughput and latency percentiles.
+ * <p>
+ * Run with {@code gradle loadTest}; every {@code load.*} system property given to Gradle is forwarded:
+ * <ul>
+ * <li>{@code load.concurrency} (32), {@code load.warmup} (10s), {@code load.duration} (60s)</li>
+ * <li>{@code load.mix} ({@code check:60,resolve:35,download:5})</li>
+ * <li>{@code load.upToDateRatio} (0.8), {@code load.resolve.packages} (5), {@code load.download.size} (65536 bytes)</li>
+ * <li>{@code load.<service>.latency}, {@code load.<service>.jitter}, {@code load.<service>.errorRate}, see {@link StubProfile}</li>
+ * </ul>
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final UpstreamStubs stubs = new UpstreamStubs(Integer.getInteger("load.download.size", 64 * 1024));
+        final UpstreamServer upstream = UpstreamServer.start(stubs);
+
+        final AtomicReference<InMemoryRabbitTemplate> rabbitTemplate = new AtomicReference<>();
+        final ConfigurableApplicationContext gateway = new SpringApplicationBuilder(Application.class)
+                .initializers(InMemoryRabbitTemplate.replacing(rabbitTemplate))
+                .run(upstream.gatewayArguments("--server.port=0", "--spring.main.banner-mode=off", "--logging.level.io.barracks=WARN"));
+        final String gatewayUrl = "http://localhost:" + ((EmbeddedWebApplicationContext) gateway).getEmbeddedServletContainer().getPort();
+
+        final long warmup = Long.getLong("load.warmup", 10L);
+        final long duration = Long.getLong("load.duration", 60L);
+        final LoadDriver driver = new LoadDriver(
+                gatewayUrl,
+                Integer.getInteger("load.concurrency", 32),
+                parseMix(System.getProperty("load.mix", "check:60,resolve:35,download:5")),
+                Double.parseDouble(System.getProperty("load.upToDateRatio", "0.8")),
+                Integer.getInteger("load.resolve.packages", 5)
+        );
+        try {
+            final Map<LoadDriver.Call, Histogram> histograms = driver.run(warmup, duration);
+            System.out.println();
+            stubs.getProfiles().forEach((service, profile) -> System.out.println("upstream " + service + ": " + profile));
+            System.out.println("amqp messages: " + rabbitTemplate.get().getMessages() + " (" + rabbitTemplate.get().getBytes() + " bytes)");
+            driver.report(histograms, duration, System.out);
+        } finally {
+            gateway.close();
+            upstream.close();
+        }
+    }
+
+    static Map<LoadDriver.Call, Integer> parseMix(String mix) {
+        final Map<LoadDriver.Call, Integer> weights = new EnumMap<>(LoadDriver.Call.class);
+        for (String entry : mix.split(",")) {
+            final String[] split = entry.trim().split(":");
+            weights.put(LoadDriver.Call.valueOf(split[0].trim().toUpperCase()), Integer.valueOf(split[1].trim()));
+        }
+        return weights;
+    }
+}
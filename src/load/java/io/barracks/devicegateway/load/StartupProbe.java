@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.load;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Launches the gateway with the command line given as arguments against the upstream stubs and reports the time
+ * from process start to the first successful {@code /update/check}, e.g.
+ * {@code StartupProbe java -Xshare:off -cp ... io.barracks.devicegateway.Application}. Two runs, with and without a JVM
+ * option, give a before/after report of its effect on startup. The {@code startupReport} Gradle task runs the probe
+ * against the built gateway.
+ * <p>
+ * {@code probe.runs} (3) launches are measured and the median is reported, prefixed by {@code probe.label}.
+ * A launch fails after {@code probe.timeout} (120s); the gateway output is kept in a temporary file.
+ */
+public final class StartupProbe {
+
+    private StartupProbe() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: StartupProbe <gateway command line>");
+            System.exit(2);
+        }
+        final int runs = Integer.getInteger("probe.runs", 3);
+        final long timeout = Long.getLong("probe.timeout", 120L);
+        final String label = System.getProperty("probe.label", String.join(" ", args));
+        final long[] samples = new long[runs];
+        try (UpstreamServer upstream = UpstreamServer.start(new UpstreamStubs(1024))) {
+            for (int i = 0; i < runs; i++) {
+                samples[i] = measure(args, upstream, timeout);
+            }
+        }
+        Arrays.sort(samples);
+        System.out.printf("%s: first successful /update/check after %d ms (median of %d, min %d ms, max %d ms)%n",
+                label, samples[runs / 2], runs, samples[0], samples[runs - 1]);
+    }
+
+    static long measure(String[] command, UpstreamServer upstream, long timeoutSeconds) throws IOException, InterruptedException {
+        final int port = freePort();
+        final List<String> commandLine = new ArrayList<>(Arrays.asList(command));
+        commandLine.addAll(Arrays.asList(upstream.gatewayArguments("--server.port=" + port)));
+        final File output = File.createTempFile("startup-probe", ".log");
+        final SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(1000);
+        requestFactory.setReadTimeout(10000);
+        final RestTemplate restTemplate = new RestTemplate(requestFactory);
+        final HttpEntity<Map<String, Object>> request = checkRequest();
+
+        final long start = System.nanoTime();
+        final Process process = new ProcessBuilder(commandLine)
+                .redirectErrorStream(true)
+                .redirectOutput(output)
+                .start();
+        try {
+            final long deadline = start + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("The gateway exited with code " + process.exitValue() + ", see " + output);
+                }
+                try {
+                    if (restTemplate.exchange("http://localhost:" + port + "/update/check", HttpMethod.POST, request, String.class)
+                            .getStatusCode().is2xxSuccessful()) {
+                        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                        output.delete();
+                        return elapsed;
+                    }
+                } catch (RestClientException e) {
+                    // Not ready yet
+                }
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            throw new IllegalStateException("No successful /update/check within " + timeoutSeconds + "s, see " + output);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static HttpEntity<Map<String, Object>> checkRequest() {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.AUTHORIZATION, "probe-api-key");
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        final Map<String, Object> body = new LinkedHashMap<>();
+        body.put("unitId", "probe-unit");
+        body.put("versionId", "1.0.0");
+        return new HttpEntity<>(body, headers);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.load;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and error profile of a stubbed upstream service.
+ * <p>
+ * Configured through the {@code load.<service>.latency}, {@code load.<service>.jitter} (milliseconds) and
+ * {@code load.<service>.errorRate} (between 0 and 1) system properties.
+ */
+public class StubProfile {
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double errorRate;
+
+    StubProfile(long latencyMillis, long jitterMillis, double errorRate) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.errorRate = errorRate;
+    }
+
+    static StubProfile fromSystemProperties(String service) {
+        return new StubProfile(
+                Long.getLong("load." + service + ".latency", 5L),
+                Long.getLong("load." + service + ".jitter", 2L),
+                Double.parseDouble(System.getProperty("load." + service + ".errorRate", "0"))
+        );
+    }
+
+    /**
+     * Waits for the configured latency.
+     *
+     * @return true if the call should fail
+     */
+    boolean await() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final long delay = latencyMillis + (jitterMillis > 0 ? random.nextLong(-jitterMillis, jitterMillis + 1) : 0);
+        if (delay > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return random.nextDouble() < errorRate;
+    }
+
+    @Override
+    public String toString() {
+        return latencyMillis + "ms +/-" + jitterMillis + "ms, " + (errorRate * 100) + "% errors";
+    }
+}
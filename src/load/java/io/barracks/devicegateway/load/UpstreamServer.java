@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.load;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Serves the {@link UpstreamStubs} on an ephemeral port and provides the arguments pointing a gateway at them.
+ */
+public class UpstreamServer implements AutoCloseable {
+
+    private final ConfigurableApplicationContext context;
+    private final String url;
+
+    private UpstreamServer(ConfigurableApplicationContext context) {
+        this.context = context;
+        this.url = "http://localhost:" + ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+    }
+
+    public static UpstreamServer start(UpstreamStubs stubs) {
+        return new UpstreamServer(new SpringApplicationBuilder(StubApplication.class)
+                .initializers(context -> context.getBeanFactory().registerSingleton("upstreamStubs", stubs))
+                .run("--server.port=0", "--spring.main.banner-mode=off"));
+    }
+
+    /**
+     * @param arguments additional gateway arguments
+     * @return the given arguments followed by the base URLs of the stubbed services
+     */
+    public String[] gatewayArguments(String... arguments) {
+        final List<String> all = new ArrayList<>(Arrays.asList(arguments));
+        all.add("--io.barracks.authorizationservice.base_url=" + url + "/auth");
+        all.add("--io.barracks.deviceservice.base_url=" + url + "/device");
+        all.add("--io.barracks.updateservice.base_url=" + url + "/update");
+        all.add("--io.barracks.packageservice.base_url=" + url + "/package");
+        all.add("--io.barracks.componentservice.base_url=" + url + "/component");
+        all.add("--io.barracks.deploymentservice.base_url=" + url + "/deployment");
+        return all.toArray(new String[all.size()]);
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.load;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process stand-in for the authorization, device, update, package, component and deployment services.
+ * <p>
+ * Not a component on purpose, so that the gateway's component scan does not pick it up.
+ */
+@RequestMapping
+public class UpstreamStubs {
+
+    static final String USER_ID = "load-user";
+    static final String LATEST_VERSION = "2.0.0";
+    static final String UPDATE_ID = "6a3b2d5e-5c1f-4f39-9d43-3c4f09d4a7e1";
+
+    private final Map<String, StubProfile> profiles = new HashMap<>();
+    private final byte[] file;
+
+    public UpstreamStubs(int fileSize) {
+        for (String service : new String[]{"auth", "device", "update", "package", "component", "deployment"}) {
+            profiles.put(service, StubProfile.fromSystemProperties(service));
+        }
+        this.file = new byte[fileSize];
+    }
+
+    Map<String, StubProfile> getProfiles() {
+        return Collections.unmodifiableMap(profiles);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/auth/device/authenticate")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> authenticate() {
+        if (profiles.get("auth").await()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        final Map<String, Object> user = new HashMap<>();
+        user.put("id", USER_ID);
+        user.put("email", "load@barracks.io");
+        return ResponseEntity.ok(user);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/device/devices")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> createDevice(@RequestBody Map<String, Object> device) {
+        if (profiles.get("device").await()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        final Map<String, Object> saved = new LinkedHashMap<>(device);
+        saved.put("segmentId", "load-segment");
+        saved.put("receptionDate", System.currentTimeMillis());
+        return ResponseEntity.status(HttpStatus.CREATED).body(saved);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = {"/update/updates/latest", "/update/updates/{uuid}"})
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> getUpdate() {
+        if (profiles.get("update").await()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        final Map<String, Object> update = new HashMap<>();
+        update.put("uuid", UPDATE_ID);
+        update.put("packageId", "load-package");
+        update.put("userId", USER_ID);
+        update.put("status", "published");
+        update.put("additionalProperties", Collections.singletonMap("critical", true));
+        return ResponseEntity.ok(update);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/package/packages/{packageId}")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> getPackageInfo(@PathVariable("packageId") String packageId) {
+        if (profiles.get("package").await()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        final Map<String, Object> packageInfo = new HashMap<>();
+        packageInfo.put("id", packageId);
+        packageInfo.put("versionId", LATEST_VERSION);
+        packageInfo.put("userId", USER_ID);
+        packageInfo.put("md5", "deadbeef");
+        packageInfo.put("size", file.length);
+        return ResponseEntity.ok(packageInfo);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = {"/package/packages/{packageId}/file", "/component/owners/{userId}/packages/{reference}/versions/{id}/file"}, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public void getFile(HttpServletResponse response) throws IOException {
+        if (profiles.get("package").await()) {
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setContentLength(file.length);
+        response.getOutputStream().write(file);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/component/owners/{userId}/packages/{reference}/versions/{id}")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> getVersion(@PathVariable("reference") String reference, @PathVariable("id") String id) {
+        if (profiles.get("component").await()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        final Map<String, Object> version = new HashMap<>();
+        version.put("packageRef", reference);
+        version.put("id", id);
+        version.put("length", file.length);
+        version.put("md5", "deadbeef");
+        version.put("filename", reference + ".bin");
+        version.put("metadata", Collections.singletonMap("critical", false));
+        return ResponseEntity.ok(version);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/deployment/packages/resolve")
+    @ResponseBody
+    @SuppressWarnings("unchecked")
+    public ResponseEntity<Map<String, Object>> resolvePackages(@RequestBody Map<String, Object> request) {
+        if (profiles.get("deployment").await()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        final List<Map<String, Object>> packages = (List<Map<String, Object>>) request.getOrDefault("packages", Collections.emptyList());
+        final List<Map<String, Object>> present = new ArrayList<>(packages.size());
+        for (Map<String, Object> aPackage : packages) {
+            final Map<String, Object> resolved = new HashMap<>();
+            resolved.put("reference", aPackage.get("reference"));
+            resolved.put("version", LATEST_VERSION);
+            present.add(resolved);
+        }
+        final Map<String, Object> response = new HashMap<>();
+        response.put("present", present);
+        response.put("absent", Collections.emptyList());
+        return ResponseEntity.ok(response);
+    }
+}
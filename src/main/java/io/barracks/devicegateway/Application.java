@@ -24,12 +24,8 @@
 
 package io.barracks.devicegateway;
 
-import io.barracks.commons.logging.ManagerMonitor;
-import io.barracks.commons.logging.RestResourceMonitor;
-import io.barracks.commons.logging.ServiceClientMonitor;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
 public class Application {
@@ -38,19 +34,4 @@ public class Application {
         SpringApplication.run(Application.class, args);
     }
 
-    @Bean
-    public ManagerMonitor managerMonitor() {
-        return new ManagerMonitor();
-    }
-
-    @Bean
-    public RestResourceMonitor restResourceMonitor() {
-        return new RestResourceMonitor();
-    }
-
-    @Bean
-    public ServiceClientMonitor serviceClientMonitor() {
-        return new ServiceClientMonitor();
-    }
-
 }
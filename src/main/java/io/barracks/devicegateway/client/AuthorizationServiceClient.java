@@ -25,6 +25,7 @@
 package io.barracks.devicegateway.client;
 
 import io.barracks.devicegateway.client.exception.AuthorizationServiceClientException;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.ApiKey;
 import io.barracks.devicegateway.model.User;
 import org.springframework.beans.factory.annotation.Value;
@@ -35,6 +36,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 import io.barracks.commons.util.Endpoint;
@@ -48,24 +50,39 @@ public class AuthorizationServiceClient {
 
     private RestTemplate restTemplate;
 
+    private final UpstreamGuard guard;
+    private final UpstreamLatencyMetrics.Operation authenticateApiKeyLatency;
+
     public AuthorizationServiceClient(
             @Value("${io.barracks.authorizationservice.base_url}") String authorizationServiceBaseUrl,
-            RestTemplateBuilder restTemplateBuilder
+            RestTemplateBuilder restTemplateBuilder,
+            UpstreamLatencyMetrics upstreamLatencyMetrics,
+            UpstreamGuards upstreamGuards
     ) {
         this.authorizationServiceBaseUrl = authorizationServiceBaseUrl;
         this.restTemplate = restTemplateBuilder.build();
+        this.guard = upstreamGuards.guard("authorizationservice");
+        this.authenticateApiKeyLatency = upstreamLatencyMetrics.operation("authorizationservice", "authenticateApiKey");
     }
 
     public User authenticateApiKey(ApiKey apiKey) {
-        try {
-            final ResponseEntity<User> responseEntity = restTemplate.exchange(
-                    AUTHENTICATE_API_KEY_ENDPOINT.withBase(authorizationServiceBaseUrl).body(apiKey).getRequestEntity(),
-                    User.class
-            );
-            return responseEntity.getBody();
-        } catch (HttpClientErrorException | HttpServerErrorException e) {
-            throw new AuthorizationServiceClientException(e, apiKey);
-        }
+        return guard.call(() -> {
+            final long start = System.nanoTime();
+            try {
+                final ResponseEntity<User> responseEntity = restTemplate.exchange(
+                        AUTHENTICATE_API_KEY_ENDPOINT.withBase(authorizationServiceBaseUrl).body(apiKey).getRequestEntity(),
+                        User.class
+                );
+                authenticateApiKeyLatency.record(responseEntity.getStatusCode(), start);
+                return responseEntity.getBody();
+            } catch (HttpClientErrorException | HttpServerErrorException e) {
+                authenticateApiKeyLatency.record(e.getStatusCode(), start);
+                throw new AuthorizationServiceClientException(e, apiKey);
+            } catch (RestClientException e) {
+                authenticateApiKeyLatency.recordFailure(start);
+                throw e;
+            }
+        });
     }
 
     public RestTemplate getRestTemplate() {
@@ -26,6 +26,7 @@ package io.barracks.devicegateway.client;
 
 import io.barracks.commons.util.Endpoint;
 import io.barracks.devicegateway.client.exception.ComponentServiceClientException;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.Version;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,9 +34,12 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.OutputStream;
@@ -51,37 +55,69 @@ public class ComponentServiceClient {
 
     private RestTemplate restTemplate;
 
+    private final UpstreamGuard guard;
+    private final UpstreamGuard fileGuard;
+    private final UpstreamLatencyMetrics.Operation versionFileLatency;
+    private final UpstreamLatencyMetrics.Operation versionLatency;
+    private final UpstreamHedging.Hedge versionHedge;
+
     @Autowired
     public ComponentServiceClient(
             @Value("${io.barracks.componentservice.base_url}") String componentServiceBaseUrl,
-            RestTemplateBuilder restTemplateBuilder
+            RestTemplateBuilder restTemplateBuilder,
+            UpstreamLatencyMetrics upstreamLatencyMetrics,
+            UpstreamGuards upstreamGuards,
+            UpstreamHedging upstreamHedging
     ) {
         this.componentServiceBaseUrl = componentServiceBaseUrl;
         this.restTemplate = restTemplateBuilder.build();
+        this.guard = upstreamGuards.guard("componentservice");
+        this.fileGuard = upstreamGuards.fileGuard("componentservice.files");
+        this.versionFileLatency = upstreamLatencyMetrics.operation("componentservice", "getVersionFile");
+        this.versionLatency = upstreamLatencyMetrics.operation("componentservice", "getVersion");
+        this.versionHedge = upstreamHedging.hedge("componentservice.getVersion", versionLatency);
     }
 
     public long getVersionFile(String userId, String packageRef, String versionId, OutputStream outputStream) {
-        try {
-            return restTemplate.execute(
-                    GET_VERSION_FILE_ENDPOINT.withBase(componentServiceBaseUrl).getURI(userId, packageRef, versionId),
-                    GET_VERSION_FILE_ENDPOINT.getMethod(),
-                    request -> request.getHeaders().set(HttpHeaders.ACCEPT, MediaType.APPLICATION_OCTET_STREAM_VALUE),
-                    new LargeFileForwardingExtractor(restTemplate.getMessageConverters(), outputStream)
-            );
-        } catch (HttpStatusCodeException e) {
-            throw new ComponentServiceClientException(e);
-        }
+        return fileGuard.call(() -> {
+            final long start = System.nanoTime();
+            try {
+                final long size = restTemplate.execute(
+                        GET_VERSION_FILE_ENDPOINT.withBase(componentServiceBaseUrl).getURI(userId, packageRef, versionId),
+                        GET_VERSION_FILE_ENDPOINT.getMethod(),
+                        request -> request.getHeaders().set(HttpHeaders.ACCEPT, MediaType.APPLICATION_OCTET_STREAM_VALUE),
+                        new LargeFileForwardingExtractor(restTemplate.getMessageConverters(), outputStream)
+                );
+                versionFileLatency.record(HttpStatus.OK, start);
+                return size;
+            } catch (HttpStatusCodeException e) {
+                versionFileLatency.record(e.getStatusCode(), start);
+                throw new ComponentServiceClientException(e);
+            } catch (RestClientException e) {
+                versionFileLatency.recordFailure(start);
+                throw e;
+            }
+        });
     }
 
     public Version getVersion(String userId, String reference, String version) {
-        try {
-            return restTemplate.exchange(
-                    GET_VERSION_ENDPOINT.withBase(componentServiceBaseUrl).getRequestEntity(userId, reference, version),
-                    Version.class
-            ).getBody();
-        } catch (HttpStatusCodeException e) {
-            throw new ComponentServiceClientException(e);
-        }
+        return versionHedge.call(() -> guard.call(() -> {
+            final long start = System.nanoTime();
+            try {
+                final ResponseEntity<Version> responseEntity = restTemplate.exchange(
+                        GET_VERSION_ENDPOINT.withBase(componentServiceBaseUrl).getRequestEntity(userId, reference, version),
+                        Version.class
+                );
+                versionLatency.record(responseEntity.getStatusCode(), start);
+                return responseEntity.getBody();
+            } catch (HttpStatusCodeException e) {
+                versionLatency.record(e.getStatusCode(), start);
+                throw new ComponentServiceClientException(e);
+            } catch (RestClientException e) {
+                versionLatency.recordFailure(start);
+                throw e;
+            }
+        }));
     }
 }
 
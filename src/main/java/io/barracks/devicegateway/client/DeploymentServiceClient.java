@@ -26,14 +26,17 @@ package io.barracks.devicegateway.client;
 
 import io.barracks.commons.util.Endpoint;
 import io.barracks.devicegateway.client.exception.DeploymentServiceClientException;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.DeviceRequest;
 import io.barracks.devicegateway.model.ResolvedPackages;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 @Component
@@ -42,25 +45,40 @@ public class DeploymentServiceClient {
 
     private final RestTemplate restTemplate;
     private final String baseUrl;
+    private final UpstreamGuard guard;
+    private final UpstreamLatencyMetrics.Operation resolvePackagesLatency;
 
     @Autowired
     public DeploymentServiceClient(
             @Value("${io.barracks.deploymentservice.base_url}") String baseUrl,
-            RestTemplateBuilder restTemplateBuilder
+            RestTemplateBuilder restTemplateBuilder,
+            UpstreamLatencyMetrics upstreamLatencyMetrics,
+            UpstreamGuards upstreamGuards
     ) {
         this.restTemplate = restTemplateBuilder.build();
         this.baseUrl = baseUrl;
+        this.guard = upstreamGuards.guard("deploymentservice");
+        this.resolvePackagesLatency = upstreamLatencyMetrics.operation("deploymentservice", "resolvePackages");
     }
 
     public ResolvedPackages resolvePackages(DeviceRequest request) {
-        try {
-            return restTemplate.exchange(
-                    RESOLVE_PACKAGES_ENDPOINT.withBase(baseUrl).body(request).getRequestEntity(),
-                    ResolvedPackages.class
-            ).getBody();
-        } catch (HttpStatusCodeException e) {
-            throw new DeploymentServiceClientException(e);
-        }
+        return guard.call(() -> {
+            final long start = System.nanoTime();
+            try {
+                final ResponseEntity<ResolvedPackages> responseEntity = restTemplate.exchange(
+                        RESOLVE_PACKAGES_ENDPOINT.withBase(baseUrl).body(request).getRequestEntity(),
+                        ResolvedPackages.class
+                );
+                resolvePackagesLatency.record(responseEntity.getStatusCode(), start);
+                return responseEntity.getBody();
+            } catch (HttpStatusCodeException e) {
+                resolvePackagesLatency.record(e.getStatusCode(), start);
+                throw new DeploymentServiceClientException(e);
+            } catch (RestClientException e) {
+                resolvePackagesLatency.recordFailure(start);
+                throw e;
+            }
+        });
     }
 
 }
@@ -26,6 +26,7 @@ package io.barracks.devicegateway.client;
 
 import io.barracks.commons.util.Endpoint;
 import io.barracks.devicegateway.client.exception.DeviceServiceClientException;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.DeviceInfo;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
@@ -37,6 +38,7 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 @Component
@@ -49,26 +51,41 @@ public class DeviceServiceClient {
 
     private RestTemplate restTemplate;
 
+    private final UpstreamGuard guard;
+    private final UpstreamLatencyMetrics.Operation createDeviceInfoLatency;
+
     public DeviceServiceClient(
             @Value("${io.barracks.deviceservice.base_url}") String deviceServiceUrl,
-            RestTemplateBuilder restTemplateBuilder
+            RestTemplateBuilder restTemplateBuilder,
+            UpstreamLatencyMetrics upstreamLatencyMetrics,
+            UpstreamGuards upstreamGuards
     ) {
         this.restTemplate = restTemplateBuilder.build();
         this.deviceServiceBaseUrl = deviceServiceUrl;
+        this.guard = upstreamGuards.guard("deviceservice");
+        this.createDeviceInfoLatency = upstreamLatencyMetrics.operation("deviceservice", "createDeviceInfo");
     }
 
     public DeviceInfo createDeviceInfo(DeviceInfo deviceInfo) {
-        try {
-            log.debug("Creating device '{}'", deviceInfo);
-            final ResponseEntity<DeviceInfo> responseEntity = restTemplate.exchange(
-                    CREATE_DEVICE_ENDPOINT.withBase(deviceServiceBaseUrl).body(deviceInfo).getRequestEntity(),
-                    DeviceInfo.class
-            );
-            return responseEntity.getBody();
-        } catch (HttpStatusCodeException e) {
-            log.debug("Creation failed with '{}'", e.getResponseBodyAsString());
-            throw new DeviceServiceClientException(e, deviceInfo);
-        }
+        return guard.call(() -> {
+            final long start = System.nanoTime();
+            try {
+                log.debug("Creating device '{}'", deviceInfo);
+                final ResponseEntity<DeviceInfo> responseEntity = restTemplate.exchange(
+                        CREATE_DEVICE_ENDPOINT.withBase(deviceServiceBaseUrl).body(deviceInfo).getRequestEntity(),
+                        DeviceInfo.class
+                );
+                createDeviceInfoLatency.record(responseEntity.getStatusCode(), start);
+                return responseEntity.getBody();
+            } catch (HttpStatusCodeException e) {
+                createDeviceInfoLatency.record(e.getStatusCode(), start);
+                log.debug("Creation failed with '{}'", e.getResponseBodyAsString());
+                throw new DeviceServiceClientException(e, deviceInfo);
+            } catch (RestClientException e) {
+                createDeviceInfoLatency.recordFailure(start);
+                throw e;
+            }
+        });
     }
 
 }
@@ -0,0 +1,195 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.client;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Caps the bytes per second sent to devices by the node, {@code io.barracks.download.bytes_per_second}, and by each
+ * user, {@code io.barracks.download.users.<userId>.bytes_per_second} with fallback on
+ * {@code io.barracks.download.tenant.bytes_per_second}. A zero rate, the default, leaves downloads unshaped.
+ * <p>
+ * Downloads reserve bandwidth one chunk at a time and only reserve their next chunk once the previous one is written,
+ * so that backlogged downloads take turns and share the budget evenly while downloads held back by a slow device
+ * leave their share to the others.
+ * <p>
+ * Waits happen while the file is read from its upstream, which is why the file guards have no bulkhead by default and
+ * why a wait cut short by an interruption fails as a {@link io.barracks.devicegateway.exception.DeviceStreamException}
+ * rather than as an upstream failure.
+ */
+@Component
+public class DownloadGovernor implements PublicMetrics {
+
+    static final int CHUNK_SIZE = 16 * 1024;
+
+    private static final String PREFIX = "io.barracks.download.";
+
+    private final Environment environment;
+    private final LongSupplier clock;
+    private final long burstNanos;
+    private final Pacer nodePacer;
+    private final ConcurrentMap<String, Pacer> userPacers = new ConcurrentHashMap<>();
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder bytes = new LongAdder();
+    private volatile double throughput;
+    private long lastBytes;
+    private long lastSample;
+
+    @Autowired
+    public DownloadGovernor(Environment environment) {
+        this(environment, System::nanoTime);
+    }
+
+    DownloadGovernor(Environment environment, LongSupplier clock) {
+        this.environment = environment;
+        this.clock = clock;
+        this.burstNanos = TimeUnit.MILLISECONDS.toNanos(environment.getProperty(PREFIX + "burst", Long.class, 100L));
+        this.nodePacer = new Pacer(environment.getProperty(PREFIX + "bytes_per_second", Long.class, 0L));
+        this.lastSample = clock.getAsLong();
+    }
+
+    /**
+     * Wraps the stream of a download, closing the returned stream ends the download but leaves the destination open.
+     */
+    public ShapedOutputStream shape(String userId, OutputStream destination) {
+        final Pacer userPacer = userPacers.computeIfAbsent(userId, key -> {
+            final Long fallback = environment.getProperty(PREFIX + "tenant.bytes_per_second", Long.class, 0L);
+            return new Pacer(environment.getProperty(PREFIX + "users." + key + ".bytes_per_second", Long.class, fallback));
+        });
+        active.incrementAndGet();
+        return new ShapedOutputStream(destination, this, userPacer);
+    }
+
+    void beforeWrite(Pacer userPacer, int length) throws InterruptedIOException {
+        sleep(userPacer.reserve(length));
+        sleep(nodePacer.reserve(length));
+    }
+
+    void afterWrite(int length) {
+        bytes.add(length);
+    }
+
+    void finish() {
+        active.decrementAndGet();
+    }
+
+    private static void sleep(long nanos) throws InterruptedIOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while shaping download");
+        }
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public void sample() {
+        sample(clock.getAsLong());
+    }
+
+    synchronized void sample(long now) {
+        final long total = bytes.sum();
+        throughput = (total - lastBytes) * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, now - lastSample);
+        lastBytes = total;
+        lastSample = now;
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
+    Pacer getNodePacer() {
+        return nodePacer;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("download.active", getActive()),
+                new Metric<>("download.bytes", getBytes()),
+                new Metric<>("download.throughput", getThroughput())
+        );
+    }
+
+    /**
+     * Bandwidth kept as the time at which it is next free, up to {@code burst} of unused bandwidth being carried over.
+     */
+    class Pacer {
+
+        private final double nanosPerByte;
+        private final AtomicLong freeAt = new AtomicLong(clock.getAsLong());
+
+        Pacer(long bytesPerSecond) {
+            this.nanosPerByte = bytesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / (double) bytesPerSecond : 0;
+        }
+
+        /**
+         * @return the nanoseconds to wait before sending {@code length} bytes.
+         */
+        long reserve(int length) {
+            if (nanosPerByte == 0) {
+                return 0;
+            }
+            final long cost = Math.round(length * nanosPerByte);
+            while (true) {
+                final long now = clock.getAsLong();
+                final long current = freeAt.get();
+                final long start = current - (now - burstNanos) > 0 ? current : now - burstNanos;
+                if (freeAt.compareAndSet(current, start + cost)) {
+                    return Math.max(0, start - now);
+                }
+            }
+        }
+    }
+}
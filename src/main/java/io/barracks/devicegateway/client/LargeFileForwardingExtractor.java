@@ -24,17 +24,20 @@
 
 package io.barracks.devicegateway.client;
 
-import org.apache.tomcat.util.http.fileupload.IOUtils;
+import io.barracks.devicegateway.exception.DeviceStreamException;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.web.client.HttpMessageConverterExtractor;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.List;
 
 public class LargeFileForwardingExtractor extends HttpMessageConverterExtractor<Long> {
+    private static final int BUFFER_SIZE = 4096;
+
     private final OutputStream destination;
     private final HttpMessageConverterExtractor<InputStreamResource> sourceExtractor;
 
@@ -46,7 +49,18 @@ public class LargeFileForwardingExtractor extends HttpMessageConverterExtractor<
 
     @Override
     public Long extractData(ClientHttpResponse response) throws IOException {
-        InputStreamResource resource = sourceExtractor.extractData(response);
-        return IOUtils.copyLarge(resource.getInputStream(), destination);
+        final InputStream source = sourceExtractor.extractData(response).getInputStream();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long count = 0;
+        int read;
+        while ((read = source.read(buffer)) != -1) {
+            try {
+                destination.write(buffer, 0, read);
+            } catch (IOException e) {
+                throw new DeviceStreamException(e);
+            }
+            count += read;
+        }
+        return count;
     }
 }
\ No newline at end of file
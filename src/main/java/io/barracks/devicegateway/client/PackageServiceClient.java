@@ -26,14 +26,18 @@ package io.barracks.devicegateway.client;
 
 import io.barracks.commons.util.Endpoint;
 import io.barracks.devicegateway.client.exception.PackageServiceClientException;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.PackageInfo;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
@@ -48,35 +52,67 @@ public class PackageServiceClient {
 
     private String packageServiceBaseUrl;
 
+    private final UpstreamGuard guard;
+    private final UpstreamGuard fileGuard;
+    private final UpstreamLatencyMetrics.Operation downloadLatency;
+    private final UpstreamLatencyMetrics.Operation packageInfoLatency;
+    private final UpstreamHedging.Hedge packageInfoHedge;
+
     public PackageServiceClient(
             @Value("${io.barracks.packageservice.base_url}") String packageServiceBaseUrl,
-            RestTemplateBuilder restTemplateBuilder
+            RestTemplateBuilder restTemplateBuilder,
+            UpstreamLatencyMetrics upstreamLatencyMetrics,
+            UpstreamGuards upstreamGuards,
+            UpstreamHedging upstreamHedging
     ) {
         this.packageServiceBaseUrl = packageServiceBaseUrl;
         this.restTemplate = restTemplateBuilder.build();
+        this.guard = upstreamGuards.guard("packageservice");
+        this.fileGuard = upstreamGuards.fileGuard("packageservice.files");
+        this.downloadLatency = upstreamLatencyMetrics.operation("packageservice", "loadPackageStream");
+        this.packageInfoLatency = upstreamLatencyMetrics.operation("packageservice", "getPackageInfo");
+        this.packageInfoHedge = upstreamHedging.hedge("packageservice.getPackageInfo", packageInfoLatency);
     }
 
     public long loadPackageStream(PackageInfo packageInfo, OutputStream outputStream) throws IOException {
-        try {
-            return restTemplate.execute(
-                    DOWNLOAD_ENDPOINT.withBase(packageServiceBaseUrl).getURI(packageInfo.getId()),
-                    DOWNLOAD_ENDPOINT.getMethod(),
-                    request -> request.getHeaders().set(HttpHeaders.ACCEPT, MediaType.APPLICATION_OCTET_STREAM_VALUE),
-                    new LargeFileForwardingExtractor(restTemplate.getMessageConverters(), outputStream)
-            );
-        } catch (HttpStatusCodeException e) {
-            throw new PackageServiceClientException(e);
-        }
+        return fileGuard.call(() -> {
+            final long start = System.nanoTime();
+            try {
+                final long size = restTemplate.execute(
+                        DOWNLOAD_ENDPOINT.withBase(packageServiceBaseUrl).getURI(packageInfo.getId()),
+                        DOWNLOAD_ENDPOINT.getMethod(),
+                        request -> request.getHeaders().set(HttpHeaders.ACCEPT, MediaType.APPLICATION_OCTET_STREAM_VALUE),
+                        new LargeFileForwardingExtractor(restTemplate.getMessageConverters(), outputStream)
+                );
+                downloadLatency.record(HttpStatus.OK, start);
+                return size;
+            } catch (HttpStatusCodeException e) {
+                downloadLatency.record(e.getStatusCode(), start);
+                throw new PackageServiceClientException(e);
+            } catch (RestClientException e) {
+                downloadLatency.recordFailure(start);
+                throw e;
+            }
+        });
     }
 
     public PackageInfo getPackageInfo(String id) {
-        try {
-            return restTemplate.exchange(
-                    GET_PACKAGE_INFO_ENDPOINT.withBase(packageServiceBaseUrl).getRequestEntity(id),
-                    PackageInfo.class
-            ).getBody();
-        } catch (HttpStatusCodeException e) {
-            throw new PackageServiceClientException(e);
-        }
+        return packageInfoHedge.call(() -> guard.call(() -> {
+            final long start = System.nanoTime();
+            try {
+                final ResponseEntity<PackageInfo> responseEntity = restTemplate.exchange(
+                        GET_PACKAGE_INFO_ENDPOINT.withBase(packageServiceBaseUrl).getRequestEntity(id),
+                        PackageInfo.class
+                );
+                packageInfoLatency.record(responseEntity.getStatusCode(), start);
+                return responseEntity.getBody();
+            } catch (HttpStatusCodeException e) {
+                packageInfoLatency.record(e.getStatusCode(), start);
+                throw new PackageServiceClientException(e);
+            } catch (RestClientException e) {
+                packageInfoLatency.recordFailure(start);
+                throw e;
+            }
+        }));
     }
 }
@@ -25,6 +25,7 @@
 package io.barracks.devicegateway.client;
 
 
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.DeviceInfo;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
@@ -41,21 +42,34 @@ public class QueuingServiceClient {
     private String exchangeName;
     private String routingKey;
 
+    private final UpstreamGuard guard;
+    private final UpstreamLatencyMetrics.Operation postDeviceInfoLatency;
+
     @Autowired
     public QueuingServiceClient(
             @Value("${io.barracks.googleanalyticsv1.exchangename}") String exchangeName,
             @Value("${io.barracks.queuingservice.routingkey.v1}") String routingKey,
-            RabbitTemplate rabbitTemplate
+            RabbitTemplate rabbitTemplate,
+            UpstreamLatencyMetrics upstreamLatencyMetrics,
+            UpstreamGuards upstreamGuards
     ) {
         this.exchangeName = exchangeName;
         this.routingKey = routingKey;
         this.rabbitTemplate = rabbitTemplate;
+        this.guard = upstreamGuards.guard("queuingservice");
+        this.postDeviceInfoLatency = upstreamLatencyMetrics.operation("queuingservice", "postDeviceInfo");
     }
 
     public void postDeviceInfo(DeviceInfo deviceInfo) {
+        final long start = System.nanoTime();
         try {
-            rabbitTemplate.convertAndSend(exchangeName, routingKey, deviceInfo);
+            guard.call(() -> {
+                rabbitTemplate.convertAndSend(exchangeName, routingKey, deviceInfo);
+                return null;
+            });
+            postDeviceInfoLatency.record("success", start);
         } catch (Exception e) {
+            postDeviceInfoLatency.record("error", start);
             log.error("The message cannot be sent to RabbitMQ. It is possible that the broker is not running. Exception : " + e);
         }
     }
@@ -25,6 +25,7 @@
 package io.barracks.devicegateway.client;
 
 
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.DeviceEvent;
 import io.barracks.devicegateway.model.DeviceRequest;
 import lombok.extern.slf4j.Slf4j;
@@ -45,24 +46,37 @@ public class QueuingServiceClientV2 {
 
     private final CounterService counter;
 
+    private final UpstreamGuard guard;
+    private final UpstreamLatencyMetrics.Operation postDeviceRequestLatency;
+
     @Autowired
     public QueuingServiceClientV2(
             @Value("${io.barracks.amqp.exchangename}") String exchangeName,
             @Value("${io.barracks.queuingservice.routingkey.v2}") String routingKey,
             RabbitTemplate rabbitTemplate,
-            CounterService counter
+            CounterService counter,
+            UpstreamLatencyMetrics upstreamLatencyMetrics,
+            UpstreamGuards upstreamGuards
     ) {
         this.exchangeName = exchangeName;
         this.routingKey = routingKey;
         this.rabbitTemplate = rabbitTemplate;
         this.counter = counter;
+        this.guard = upstreamGuards.guard("queuingservice");
+        this.postDeviceRequestLatency = upstreamLatencyMetrics.operation("queuingservice", "postDeviceRequest");
     }
 
     public void postDeviceRequest(DeviceEvent deviceEvent) {
+        final long start = System.nanoTime();
         try {
-            rabbitTemplate.convertAndSend(exchangeName, routingKey, deviceEvent);
+            guard.call(() -> {
+                rabbitTemplate.convertAndSend(exchangeName, routingKey, deviceEvent);
+                return null;
+            });
+            postDeviceRequestLatency.record("success", start);
             incrementRabbitMQMetric("success");
         } catch (Exception e) {
+            postDeviceRequestLatency.record("error", start);
             log.error("The message cannot be sent to RabbitMQ. It is possible that the broker is not running. Exception : " + e);
             incrementRabbitMQMetric("error");
         }
@@ -0,0 +1,74 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.client;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Download stream written in chunks of at most {@link DownloadGovernor#CHUNK_SIZE} bytes, each one waiting for its
+ * share of the bandwidth.
+ */
+public class ShapedOutputStream extends FilterOutputStream {
+
+    private final DownloadGovernor governor;
+    private final DownloadGovernor.Pacer userPacer;
+    private boolean closed;
+
+    ShapedOutputStream(OutputStream destination, DownloadGovernor governor, DownloadGovernor.Pacer userPacer) {
+        super(destination);
+        this.governor = governor;
+        this.userPacer = userPacer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            final int chunk = Math.min(len, DownloadGovernor.CHUNK_SIZE);
+            governor.beforeWrite(userPacer, chunk);
+            out.write(b, off, chunk);
+            governor.afterWrite(chunk);
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    /**
+     * Ends the download without closing the destination, which belongs to the response.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            governor.finish();
+        }
+    }
+}
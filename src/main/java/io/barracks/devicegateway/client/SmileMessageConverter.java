@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractMessageConverter;
+import org.springframework.amqp.support.converter.DefaultJackson2JavaTypeMapper;
+import org.springframework.amqp.support.converter.Jackson2JavaTypeMapper;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+
+/**
+ * Encodes AMQP payloads as Smile, Jackson's binary JSON. Messages carry the {@value #CONTENT_TYPE} content type and
+ * the same {@code __TypeId__} headers as the JSON converter, so consumers can pick the decoder from the headers alone.
+ */
+public class SmileMessageConverter extends AbstractMessageConverter {
+
+    public static final String CONTENT_TYPE = "application/x-jackson-smile";
+
+    private final ObjectMapper mapper;
+
+    private final Jackson2JavaTypeMapper typeMapper = new DefaultJackson2JavaTypeMapper();
+
+    public SmileMessageConverter(ObjectMapper mapper) {
+        Assert.isInstanceOf(SmileFactory.class, mapper.getFactory(), "The mapper must use a SmileFactory");
+        this.mapper = mapper;
+    }
+
+    @Override
+    protected Message createMessage(Object object, MessageProperties messageProperties) {
+        final byte[] bytes;
+        try {
+            bytes = mapper.writeValueAsBytes(object);
+        } catch (IOException e) {
+            throw new MessageConversionException("Failed to convert Message content", e);
+        }
+        messageProperties.setContentType(CONTENT_TYPE);
+        messageProperties.setContentLength(bytes.length);
+        typeMapper.fromJavaType(mapper.constructType(object.getClass()), messageProperties);
+        return new Message(bytes, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        final MessageProperties properties = message.getMessageProperties();
+        if (properties == null || !CONTENT_TYPE.equals(properties.getContentType())) {
+            return message.getBody();
+        }
+        try {
+            return mapper.readValue(message.getBody(), typeMapper.toJavaType(properties));
+        } catch (IOException e) {
+            throw new MessageConversionException("Failed to convert Message content", e);
+        }
+    }
+}
@@ -26,6 +26,7 @@ package io.barracks.devicegateway.client;
 
 import io.barracks.commons.util.Endpoint;
 import io.barracks.devicegateway.client.exception.UpdateServiceClientException;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.Update;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -34,6 +35,7 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.Optional;
@@ -48,36 +50,64 @@ public class UpdateServiceClient {
 
     private RestTemplate restTemplate;
 
+    private final UpstreamGuard guard;
+    private final UpstreamLatencyMetrics.Operation latestUpdateLatency;
+    private final UpstreamLatencyMetrics.Operation updateByIdLatency;
+    private final UpstreamHedging.Hedge updateByIdHedge;
+
     @Autowired
     public UpdateServiceClient(
             @Value("${io.barracks.updateservice.base_url}") String updateServiceBaseUrl,
-            RestTemplateBuilder restTemplateBuilder
+            RestTemplateBuilder restTemplateBuilder,
+            UpstreamLatencyMetrics upstreamLatencyMetrics,
+            UpstreamGuards upstreamGuards,
+            UpstreamHedging upstreamHedging
     ) {
         this.updateServiceBaseUrl = updateServiceBaseUrl;
         this.restTemplate = restTemplateBuilder.build();
+        this.guard = upstreamGuards.guard("updateservice");
+        this.latestUpdateLatency = upstreamLatencyMetrics.operation("updateservice", "getLatestPublishedUpdate");
+        this.updateByIdLatency = upstreamLatencyMetrics.operation("updateservice", "getUpdateByUuid");
+        this.updateByIdHedge = upstreamHedging.hedge("updateservice.getUpdateByUuid", updateByIdLatency);
     }
 
     public Optional<Update> getLatestPublishedUpdateByUserIdAndSegmentId(String userId, String segmentId) {
-        try {
-            final ResponseEntity<Update> responseEntity = restTemplate.exchange(
-                    LATEST_UPDATE_ENDPOINT.withBase(updateServiceBaseUrl).getRequestEntity(userId, segmentId),
-                    Update.class
-            );
-            return Optional.ofNullable(responseEntity.getBody());
-        } catch (HttpStatusCodeException e) {
-            throw new UpdateServiceClientException(e);
-        }
+        return guard.call(() -> {
+            final long start = System.nanoTime();
+            try {
+                final ResponseEntity<Update> responseEntity = restTemplate.exchange(
+                        LATEST_UPDATE_ENDPOINT.withBase(updateServiceBaseUrl).getRequestEntity(userId, segmentId),
+                        Update.class
+                );
+                latestUpdateLatency.record(responseEntity.getStatusCode(), start);
+                return Optional.ofNullable(responseEntity.getBody());
+            } catch (HttpStatusCodeException e) {
+                latestUpdateLatency.record(e.getStatusCode(), start);
+                throw new UpdateServiceClientException(e);
+            } catch (RestClientException e) {
+                latestUpdateLatency.recordFailure(start);
+                throw e;
+            }
+        });
     }
 
     public Optional<Update> getUpdateByUuidAndUserId(String updateId, String userId) {
-        try {
-            final ResponseEntity<Update> responseEntity = restTemplate.exchange(
-                    UPDATE_BY_ID_ENDPOINT.withBase(updateServiceBaseUrl).getRequestEntity(updateId, userId),
-                    Update.class
-            );
-            return Optional.ofNullable(responseEntity.getBody());
-        } catch (HttpStatusCodeException e) {
-            throw new UpdateServiceClientException(e);
-        }
+        return updateByIdHedge.call(() -> guard.call(() -> {
+            final long start = System.nanoTime();
+            try {
+                final ResponseEntity<Update> responseEntity = restTemplate.exchange(
+                        UPDATE_BY_ID_ENDPOINT.withBase(updateServiceBaseUrl).getRequestEntity(updateId, userId),
+                        Update.class
+                );
+                updateByIdLatency.record(responseEntity.getStatusCode(), start);
+                return Optional.ofNullable(responseEntity.getBody());
+            } catch (HttpStatusCodeException e) {
+                updateByIdLatency.record(e.getStatusCode(), start);
+                throw new UpdateServiceClientException(e);
+            } catch (RestClientException e) {
+                updateByIdLatency.recordFailure(start);
+                throw e;
+            }
+        }));
     }
 }
@@ -0,0 +1,195 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.client;
+
+import io.barracks.devicegateway.exception.DeviceStreamException;
+import io.barracks.devicegateway.exception.UpstreamUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Bulkhead and circuit breaker in front of one upstream service.
+ * <p>
+ * At most {@code maxConcurrentCalls} calls run at once, the others are rejected straight away, a value of 0 or less
+ * disables this bulkhead. After
+ * {@code failureThreshold} consecutive failures the circuit opens and calls are rejected for {@code openDuration},
+ * then a single probe call is let through: the circuit closes if it succeeds and opens again otherwise. Client errors
+ * (4xx) are answers from a healthy upstream and do not count as failures, neither do failures to write a forwarded
+ * stream to the device.
+ * <p>
+ * Each state change starts a new generation of the circuit, and only calls let through in the current generation
+ * settle it: a slow call started before the circuit opened cannot push back its reopening, nor reopen it while the
+ * probe is running.
+ */
+@Slf4j
+public class UpstreamGuard {
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final String name;
+    private final int maxConcurrentCalls;
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private final LongSupplier clock;
+
+    private final Semaphore permits;
+    private final AtomicReference<Circuit> circuit = new AtomicReference<>(new Circuit(State.CLOSED, 0, 0));
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public UpstreamGuard(String name, int maxConcurrentCalls, int failureThreshold, long openDurationMillis) {
+        this(name, maxConcurrentCalls, failureThreshold, openDurationMillis, System::nanoTime);
+    }
+
+    UpstreamGuard(String name, int maxConcurrentCalls, int failureThreshold, long openDurationMillis, LongSupplier clock) {
+        this.name = name;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+        this.clock = clock;
+        this.permits = new Semaphore(maxConcurrentCalls > 0 ? maxConcurrentCalls : Integer.MAX_VALUE);
+    }
+
+    public <T, E extends Exception> T call(UpstreamCall<T, E> call) throws E {
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            throw new UpstreamUnavailableException(name, "too many concurrent calls");
+        }
+        try {
+            final Circuit admitted = admit();
+            if (admitted == null) {
+                rejected.increment();
+                throw new UpstreamUnavailableException(name, "circuit is open");
+            }
+            final T result;
+            try {
+                result = call.call();
+            } catch (Throwable e) {
+                // Errors too, a half-open probe must always settle the state of the circuit
+                if (isFailure(e)) {
+                    onFailure(admitted);
+                } else {
+                    onSuccess(admitted);
+                }
+                throw e;
+            }
+            onSuccess(admitted);
+            return result;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return the generation of the circuit the call is let through in, null if it is rejected.
+     */
+    private Circuit admit() {
+        final Circuit current = circuit.get();
+        if (current.state == State.CLOSED) {
+            return current;
+        }
+        if (current.state == State.OPEN && clock.getAsLong() - current.openedAt >= openDurationNanos) {
+            final Circuit probe = current.next(State.HALF_OPEN, current.openedAt);
+            return circuit.compareAndSet(current, probe) ? probe : null;
+        }
+        return null;
+    }
+
+    private void onSuccess(Circuit admitted) {
+        if (circuit.get().generation != admitted.generation) {
+            return;
+        }
+        consecutiveFailures.set(0);
+        if (admitted.state == State.HALF_OPEN && circuit.compareAndSet(admitted, admitted.next(State.CLOSED, 0))) {
+            log.info("Circuit of upstream '{}' is closed", name);
+        }
+    }
+
+    private void onFailure(Circuit admitted) {
+        if (circuit.get().generation != admitted.generation) {
+            return;
+        }
+        final int failures = consecutiveFailures.incrementAndGet();
+        if (admitted.state == State.HALF_OPEN || failures >= failureThreshold) {
+            open(admitted);
+        }
+    }
+
+    private void open(Circuit from) {
+        if (circuit.compareAndSet(from, from.next(State.OPEN, clock.getAsLong()))) {
+            log.warn("Circuit of upstream '{}' is open after {} consecutive failures", name, consecutiveFailures.getAndSet(0));
+        }
+    }
+
+    private static boolean isFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpClientErrorException || cause instanceof DeviceStreamException) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return circuit.get().state;
+    }
+
+    public int getActiveCalls() {
+        return (maxConcurrentCalls > 0 ? maxConcurrentCalls : Integer.MAX_VALUE) - permits.availablePermits();
+    }
+
+    public long getRejectedCalls() {
+        return rejected.sum();
+    }
+
+    private static final class Circuit {
+        private final State state;
+        private final long generation;
+        private final long openedAt;
+
+        private Circuit(State state, long generation, long openedAt) {
+            this.state = state;
+            this.generation = generation;
+            this.openedAt = openedAt;
+        }
+
+        private Circuit next(State state, long openedAt) {
+            return new Circuit(state, generation + 1, openedAt);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.client;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One {@link UpstreamGuard} per upstream, configured by {@code io.barracks.upstream.<name>.*} with fallback on
+ * {@code io.barracks.upstream.*}, and the state of each guard published as metrics.
+ */
+@Component
+public class UpstreamGuards implements PublicMetrics {
+
+    private static final String PREFIX = "io.barracks.upstream.";
+
+    private final Environment environment;
+    private final ConcurrentMap<String, UpstreamGuard> guards = new ConcurrentHashMap<>();
+
+    @Autowired
+    public UpstreamGuards(Environment environment) {
+        this.environment = environment;
+    }
+
+    public UpstreamGuard guard(String name) {
+        return guards.computeIfAbsent(name, key -> new UpstreamGuard(
+                key,
+                getProperty(key, "max_concurrent_calls", 64),
+                getProperty(key, "failure_threshold", 5),
+                getProperty(key, "open_duration", 10000)
+        ));
+    }
+
+    /**
+     * Guard for a file forwarded to a device, the call then lasts as long as the device takes to read the file: there is
+     * no bulkhead unless {@code io.barracks.upstream.<name>.max_concurrent_calls} is set.
+     */
+    public UpstreamGuard fileGuard(String name) {
+        return guards.computeIfAbsent(name, key -> new UpstreamGuard(
+                key,
+                environment.getProperty(PREFIX + key + ".max_concurrent_calls", Integer.class, 0),
+                getProperty(key, "failure_threshold", 5),
+                getProperty(key, "open_duration", 10000)
+        ));
+    }
+
+    private int getProperty(String name, String property, int defaultValue) {
+        final Integer fallback = environment.getProperty(PREFIX + property, Integer.class, defaultValue);
+        return environment.getProperty(PREFIX + name + "." + property, Integer.class, fallback);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>(guards.size() * 3);
+        guards.forEach((name, guard) -> {
+            metrics.add(new Metric<>("upstream." + name + ".circuit.state", guard.getState().ordinal()));
+            metrics.add(new Metric<>("upstream." + name + ".bulkhead.active", guard.getActiveCalls()));
+            metrics.add(new Metric<>("upstream." + name + ".rejected", guard.getRejectedCalls()));
+        });
+        return metrics;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.client;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.barracks.devicegateway.metrics.RequestTiming;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hedging of idempotent upstream reads: when the first attempt has not answered after the observed latency percentile
+ * of the operation, a second attempt is sent and the first answer wins. The percentile is taken every second over the
+ * calls answered since, once there are enough of them, so that the delay follows a shift in upstream latency.
+ * <p>
+ * Hedges are paid from a token bucket credited with {@code budget_percent} of a token on each call, so they never
+ * exceed that share of the traffic beyond a small burst. Hedging is disabled by default, calls then run inline. They
+ * also run inline while the budget cannot pay for a hedge. Otherwise attempts run on the hedging pool, since a blocking
+ * read cannot be abandoned once the hedge answers, and record their spans into the caller's request timing.
+ */
+@Component
+public class UpstreamHedging implements PublicMetrics {
+
+    private static final long TOKEN = 1000L;
+    private static final long MAX_TOKENS = 10 * TOKEN;
+    private static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long DELAY_MIN_SAMPLES = 20;
+
+    private final boolean enabled;
+    private final long creditPerCall;
+    private final double percentile;
+    private final long minDelayMicros;
+    private final ExecutorService executor;
+    private final List<Hedge> hedges = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public UpstreamHedging(
+            @Value("${io.barracks.hedging.enabled:false}") boolean enabled,
+            @Value("${io.barracks.hedging.budget_percent:5}") int budgetPercent,
+            @Value("${io.barracks.hedging.percentile:95}") double percentile,
+            @Value("${io.barracks.hedging.min_delay:5}") long minDelayMillis,
+            @Value("${io.barracks.hedging.max_threads:64}") int maxThreads
+    ) {
+        this.enabled = enabled;
+        this.creditPerCall = budgetPercent * TOKEN / 100;
+        this.percentile = percentile;
+        this.minDelayMicros = TimeUnit.MILLISECONDS.toMicros(minDelayMillis);
+        this.executor = enabled ? new ThreadPoolExecutor(
+                0, maxThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("hedge-%d").setDaemon(true).build()
+        ) : null;
+    }
+
+    public Hedge hedge(String name, UpstreamLatencyMetrics.Operation operation) {
+        final Hedge hedge = new Hedge(name, operation);
+        hedges.add(hedge);
+        return hedge;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>(hedges.size());
+        for (Hedge hedge : hedges) {
+            metrics.add(new Metric<>("hedging." + hedge.name + ".hedges", hedge.getHedges()));
+        }
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public final class Hedge {
+        private final String name;
+        private final UpstreamLatencyMetrics.Operation operation;
+        private final AtomicLong tokens = new AtomicLong(MAX_TOKENS);
+        private final LongAdder sent = new LongAdder();
+        private volatile long delayMicros = minDelayMicros;
+        private volatile long nextRefresh = System.nanoTime();
+
+        private Hedge(String name, UpstreamLatencyMetrics.Operation operation) {
+            this.name = name;
+            this.operation = operation;
+        }
+
+        public <T> T call(Supplier<T> call) {
+            if (!enabled) {
+                return call.get();
+            }
+            credit();
+            if (tokens.get() < TOKEN) {
+                return call.get();
+            }
+            final Supplier<T> attempt = RequestTiming.bind(call);
+            final CompletionService<T> attempts = new ExecutorCompletionService<>(executor);
+            final Future<T> primary;
+            try {
+                primary = attempts.submit(attempt::get);
+            } catch (RejectedExecutionException e) {
+                return call.get();
+            }
+            Future<T> hedge = null;
+            try {
+                Future<T> first = attempts.poll(getDelayMicros(), TimeUnit.MICROSECONDS);
+                if (first == null) {
+                    hedge = submitHedge(attempts, attempt);
+                    first = attempts.take();
+                }
+                try {
+                    return first.get();
+                } catch (ExecutionException e) {
+                    if (hedge == null) {
+                        throw propagate(e);
+                    }
+                    try {
+                        return attempts.take().get();
+                    } catch (ExecutionException ignored) {
+                        throw propagate(e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for upstream", e);
+            } finally {
+                primary.cancel(true);
+                if (hedge != null) {
+                    hedge.cancel(true);
+                }
+            }
+        }
+
+        private <T> Future<T> submitHedge(CompletionService<T> attempts, Supplier<T> call) {
+            if (!tryAcquireToken()) {
+                return null;
+            }
+            try {
+                final Future<T> hedge = attempts.submit(call::get);
+                sent.increment();
+                return hedge;
+            } catch (RejectedExecutionException e) {
+                return null;
+            }
+        }
+
+        private void credit() {
+            long current;
+            do {
+                current = tokens.get();
+            } while (current < MAX_TOKENS && !tokens.compareAndSet(current, Math.min(MAX_TOKENS, current + creditPerCall)));
+        }
+
+        private boolean tryAcquireToken() {
+            long current;
+            do {
+                current = tokens.get();
+                if (current < TOKEN) {
+                    return false;
+                }
+            } while (!tokens.compareAndSet(current, current - TOKEN));
+            return true;
+        }
+
+        private long getDelayMicros() {
+            final long now = System.nanoTime();
+            if (now - nextRefresh >= 0) {
+                nextRefresh = now + DELAY_REFRESH_NANOS;
+                final long recentMicros = operation.takeRecentValueAtPercentile(HttpStatus.OK, percentile, DELAY_MIN_SAMPLES);
+                if (recentMicros > 0) {
+                    delayMicros = Math.max(minDelayMicros, recentMicros);
+                }
+            }
+            return delayMicros;
+        }
+
+        public long getHedges() {
+            return sent.sum();
+        }
+    }
+
+    private static RuntimeException propagate(ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+}
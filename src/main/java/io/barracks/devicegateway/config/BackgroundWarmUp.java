@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Once the application is ready, creates the singletons left lazy by {@link LazyApplicationBeansPostProcessor} and
+ * opens the shared RabbitMQ connection on a background thread, so the first requests do not pay for them.
+ * Failures are only logged: a missing broker must not prevent the gateway from serving.
+ */
+@Slf4j
+public class BackgroundWarmUp implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final LazyApplicationBeansPostProcessor lazyBeans;
+
+    public BackgroundWarmUp(LazyApplicationBeansPostProcessor lazyBeans) {
+        this.lazyBeans = lazyBeans;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        final ConfigurableApplicationContext context = event.getApplicationContext();
+        final Thread thread = new Thread(() -> warmUp(context), "background-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void warmUp(ConfigurableApplicationContext context) {
+        final long start = System.nanoTime();
+        int created = 0;
+        for (String name : lazyBeans.getLazyBeanNames()) {
+            if (!context.isActive()) {
+                return;
+            }
+            try {
+                context.getBean(name);
+                created++;
+            } catch (RuntimeException e) {
+                log.warn("Failed to initialize bean '{}' in the background", name, e);
+            }
+        }
+        if (!context.isActive()) {
+            return;
+        }
+        for (ConnectionFactory connectionFactory : context.getBeansOfType(ConnectionFactory.class).values()) {
+            try {
+                final Connection connection = connectionFactory.createConnection();
+                log.debug("Opened connection to {}:{}", connectionFactory.getHost(), connectionFactory.getPort());
+                connection.close();
+            } catch (RuntimeException e) {
+                log.warn("Failed to open connection to {}:{}", connectionFactory.getHost(), connectionFactory.getPort(), e);
+            }
+        }
+        log.info("Initialized {} lazy beans in the background in {} ms", created,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
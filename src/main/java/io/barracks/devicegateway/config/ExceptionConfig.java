@@ -29,7 +29,9 @@ import io.barracks.commons.configuration.ExceptionHandlingConfiguration;
 import io.barracks.devicegateway.exception.*;
 import io.barracks.devicegateway.exception.NoUpdateAvailableException;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpStatus;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
 
 @Configuration
 public class ExceptionConfig extends ExceptionHandlingConfiguration {
@@ -37,12 +39,16 @@ public class ExceptionConfig extends ExceptionHandlingConfiguration {
     @Override
     public RestHandlerExceptionResolverBuilder restExceptionResolver() {
         return super.restExceptionResolver()
+                .addErrorMessageHandler(AsyncRequestTimeoutException.class, HttpStatus.SERVICE_UNAVAILABLE)
+                .addErrorMessageHandler(BatchTooLargeException.class, HttpStatus.PAYLOAD_TOO_LARGE)
                 .addErrorMessageHandler(DeviceGatewayException.class, HttpStatus.INTERNAL_SERVER_ERROR)
                 .addErrorMessageHandler(InvalidUpdateStatusException.class, HttpStatus.NOT_FOUND)
                 .addErrorMessageHandler(NoUpdateAvailableException.class, HttpStatus.NO_CONTENT)
                 .addErrorMessageHandler(NotPackageOwnerException.class, HttpStatus.NOT_FOUND)
                 .addErrorMessageHandler(PackageStreamException.class, HttpStatus.INTERNAL_SERVER_ERROR)
-                .addErrorMessageHandler(UnknownUpdateStatusException.class, HttpStatus.BAD_REQUEST);
+                .addErrorMessageHandler(TaskRejectedException.class, HttpStatus.SERVICE_UNAVAILABLE)
+                .addErrorMessageHandler(UnknownUpdateStatusException.class, HttpStatus.BAD_REQUEST)
+                .addErrorMessageHandler(UpstreamUnavailableException.class, HttpStatus.SERVICE_UNAVAILABLE);
 
     }
 
@@ -0,0 +1,52 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.config;
+
+import io.barracks.devicegateway.Application;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Startup-optimized profile. Together with {@code application-fast-startup.properties}, which drops the unused
+ * auto-configurations, it defers the creation of the application beans (service clients, resources, RabbitMQ
+ * connection factory and template) and warms them up in the background once the application is ready.
+ */
+@Configuration
+@Profile(FastStartupConfig.PROFILE)
+public class FastStartupConfig {
+
+    public static final String PROFILE = "fast-startup";
+
+    @Bean
+    public static LazyApplicationBeansPostProcessor lazyApplicationBeansPostProcessor() {
+        return new LazyApplicationBeansPostProcessor(Application.class.getPackage().getName());
+    }
+
+    @Bean
+    public BackgroundWarmUp backgroundWarmUp(LazyApplicationBeansPostProcessor lazyApplicationBeansPostProcessor) {
+        return new BackgroundWarmUp(lazyApplicationBeansPostProcessor);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.config;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.util.ClassUtils;
+
+import javax.servlet.Filter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Marks the singletons declared by the application (components scanned under the given package and the
+ * {@code @Bean} methods of its configuration classes) as lazy, so they are created on first use instead of during
+ * context refresh. Beans that must exist for the application to react to anything (listeners, servlet filters
+ * and {@link SmartInitializingSingleton}s) are left untouched, as are the framework's own beans.
+ */
+public class LazyApplicationBeansPostProcessor implements BeanFactoryPostProcessor {
+
+    private static final List<Class<?>> EAGER_TYPES = Arrays.asList(
+            ApplicationListener.class,
+            Filter.class,
+            SmartInitializingSingleton.class,
+            BeanFactoryPostProcessor.class
+    );
+
+    private final String basePackage;
+    private final Set<String> lazyBeanNames = new LinkedHashSet<>();
+
+    public LazyApplicationBeansPostProcessor(String basePackage) {
+        this.basePackage = basePackage + ".";
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        for (String name : beanFactory.getBeanDefinitionNames()) {
+            final BeanDefinition definition = beanFactory.getBeanDefinition(name);
+            if (definition instanceof AbstractBeanDefinition
+                    && definition.isSingleton()
+                    && !definition.isAbstract()
+                    && definition.getRole() == BeanDefinition.ROLE_APPLICATION
+                    && isDeclaredByApplication(beanFactory, definition)
+                    && !isEager(beanFactory, definition)) {
+                definition.setLazyInit(true);
+                lazyBeanNames.add(name);
+            }
+        }
+    }
+
+    /**
+     * @return the names of the beans this post-processor made lazy
+     */
+    public Set<String> getLazyBeanNames() {
+        return Collections.unmodifiableSet(lazyBeanNames);
+    }
+
+    private boolean isDeclaredByApplication(ConfigurableListableBeanFactory beanFactory, BeanDefinition definition) {
+        final String owner = definition.getFactoryBeanName() != null && beanFactory.containsBeanDefinition(definition.getFactoryBeanName())
+                ? beanFactory.getBeanDefinition(definition.getFactoryBeanName()).getBeanClassName()
+                : definition.getBeanClassName();
+        return owner != null && owner.startsWith(basePackage);
+    }
+
+    private boolean isEager(ConfigurableListableBeanFactory beanFactory, BeanDefinition definition) {
+        final String typeName = getTypeName(definition);
+        if (typeName == null) {
+            return true;
+        }
+        try {
+            final Class<?> type = ClassUtils.forName(typeName, beanFactory.getBeanClassLoader());
+            return EAGER_TYPES.stream().anyMatch(eager -> eager.isAssignableFrom(type));
+        } catch (ClassNotFoundException | LinkageError e) {
+            return true;
+        }
+    }
+
+    private String getTypeName(BeanDefinition definition) {
+        if (definition instanceof AnnotatedBeanDefinition) {
+            final MethodMetadata factoryMethod = ((AnnotatedBeanDefinition) definition).getFactoryMethodMetadata();
+            if (factoryMethod != null) {
+                return factoryMethod.getReturnTypeName();
+            }
+        }
+        return definition.getFactoryMethodName() == null ? definition.getBeanClassName() : null;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs asynchronous request processing, such as the streamed body of a batch resolution, on a bounded pool rather than
+ * on a new thread per request, and times it out.
+ * <p>
+ * Unless {@code io.barracks.mvc.async.timeout_ms} is set, the timeout gives {@code io.barracks.resolve.batch.round_ms}
+ * to each of the {@code max_devices / parallelism} rounds needed to resolve the largest batch. A timed out request
+ * gets a 503 if nothing was streamed yet, and its processing thread is interrupted so that it goes back to the pool.
+ */
+@Configuration
+public class MvcAsyncConfig extends WebMvcConfigurerAdapter {
+
+    private final long timeout;
+    private final ThreadPoolTaskExecutor executor;
+
+    @Autowired
+    public MvcAsyncConfig(
+            @Value("${io.barracks.mvc.async.timeout_ms:0}") long timeout,
+            @Value("${io.barracks.mvc.async.threads:64}") int threads,
+            @Value("${io.barracks.mvc.async.queue_capacity:64}") int queueCapacity,
+            @Value("${io.barracks.resolve.batch.max_devices:1000}") int maxDevices,
+            @Value("${io.barracks.resolve.batch.parallelism:8}") int parallelism,
+            @Value("${io.barracks.resolve.batch.round_ms:1000}") long roundMs
+    ) {
+        this.timeout = timeout > 0 ? timeout : batchTimeout(maxDevices, parallelism, roundMs);
+        this.executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("mvc-async-");
+        executor.setDaemon(true);
+        executor.initialize();
+    }
+
+    static long batchTimeout(int maxDevices, int parallelism, long roundMs) {
+        final int rounds = (maxDevices + parallelism - 1) / parallelism;
+        return Math.max(1, rounds) * roundMs;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(executor)
+                .setDefaultTimeout(timeout)
+                .registerCallableInterceptors(new InterruptOnTimeout());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Interrupts the thread processing a request once it timed out, unless it is already done with it.
+     */
+    static final class InterruptOnTimeout extends CallableProcessingInterceptorAdapter {
+        private static final String PROCESSING_ATTRIBUTE = InterruptOnTimeout.class.getName() + ".processing";
+
+        @Override
+        public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+            request.setAttribute(PROCESSING_ATTRIBUTE, new Processing(Thread.currentThread()), RequestAttributes.SCOPE_REQUEST);
+        }
+
+        @Override
+        public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+            final Processing processing = (Processing) request.getAttribute(PROCESSING_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            if (processing != null) {
+                processing.finish();
+            }
+        }
+
+        @Override
+        public <T> Object handleTimeout(NativeWebRequest request, Callable<T> task) {
+            final Processing processing = (Processing) request.getAttribute(PROCESSING_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            if (processing != null) {
+                processing.interrupt();
+            }
+            return RESULT_NONE;
+        }
+    }
+
+    private static final class Processing {
+        private Thread thread;
+
+        private Processing(Thread thread) {
+            this.thread = thread;
+        }
+
+        synchronized void finish() {
+            thread = null;
+        }
+
+        synchronized void interrupt() {
+            if (thread != null) {
+                thread.interrupt();
+                thread = null;
+            }
+        }
+    }
+}
@@ -25,14 +25,22 @@
 package io.barracks.devicegateway.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.barracks.devicegateway.client.SmileMessageConverter;
+import io.barracks.devicegateway.warmup.WarmUpRabbitTemplate;
+import io.barracks.devicegateway.warmup.WarmUpState;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -44,17 +52,37 @@ public class RabbitMQConfig {
     @Value("${io.barracks.amqp.uri}")
     private String uri;
 
+    @Value("${io.barracks.amqp.encoding:json}")
+    private String encoding;
+
     @Bean
     public ConnectionFactory cf() throws URISyntaxException {
         return new CachingConnectionFactory(new URI(uri));
     }
 
     @Bean
-    public RabbitTemplate rabbitTemplate(ObjectMapper mapper) throws URISyntaxException {
-        final RabbitTemplate template = new RabbitTemplate(cf());
+    public RabbitTemplate rabbitTemplate(MessageConverter messageConverter, WarmUpState warmUpState) throws URISyntaxException {
+        final RabbitTemplate template = new WarmUpRabbitTemplate(cf(), warmUpState);
+        template.setMessageConverter(messageConverter);
+        return template;
+    }
+
+    /**
+     * Outgoing messages use the encoding set by {@code io.barracks.amqp.encoding} ({@code json} or {@code smile});
+     * incoming messages are decoded according to their content type.
+     */
+    @Bean
+    public MessageConverter messageConverter(ObjectMapper mapper, Jackson2ObjectMapperBuilder builder) {
         final Jackson2JsonMessageConverter jackson2JsonMessageConverter = new Jackson2JsonMessageConverter();
         jackson2JsonMessageConverter.setJsonObjectMapper(mapper);
-        template.setMessageConverter(jackson2JsonMessageConverter);
-        return template;
+        final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        builder.configure(smileMapper);
+        final SmileMessageConverter smileMessageConverter = new SmileMessageConverter(smileMapper);
+        final ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(
+                "smile".equals(encoding) ? smileMessageConverter : jackson2JsonMessageConverter
+        );
+        converter.addDelegate(MessageProperties.CONTENT_TYPE_JSON, jackson2JsonMessageConverter);
+        converter.addDelegate(SmileMessageConverter.CONTENT_TYPE, smileMessageConverter);
+        return converter;
     }
 }
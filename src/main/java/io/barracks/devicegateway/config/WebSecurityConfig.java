@@ -25,7 +25,10 @@
 package io.barracks.devicegateway.config;
 
 import io.barracks.devicegateway.client.AuthorizationServiceClient;
+import io.barracks.devicegateway.security.AdmissionControl;
+import io.barracks.devicegateway.security.AdmissionControlFilter;
 import io.barracks.devicegateway.security.ApiKeyAuthenticationFilter;
+import io.barracks.devicegateway.security.RateLimits;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -40,9 +43,15 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 
     private final AuthorizationServiceClient authorizationServiceClient;
 
+    private final AdmissionControl admissionControl;
+
+    private final RateLimits rateLimits;
+
     @Autowired
-    public WebSecurityConfig(AuthorizationServiceClient authorizationServiceClient) {
+    public WebSecurityConfig(AuthorizationServiceClient authorizationServiceClient, AdmissionControl admissionControl, RateLimits rateLimits) {
         this.authorizationServiceClient = authorizationServiceClient;
+        this.admissionControl = admissionControl;
+        this.rateLimits = rateLimits;
     }
 
     @Override
@@ -52,7 +61,10 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
                 .antMatchers(HttpMethod.GET, "/docs/**").permitAll()
                 .anyRequest().authenticated()
                 .and()
-                .addFilterBefore(new ApiKeyAuthenticationFilter(authorizationServiceClient), UsernamePasswordAuthenticationFilter.class);
+                .addFilterBefore(new ApiKeyAuthenticationFilter(authorizationServiceClient, rateLimits), UsernamePasswordAuthenticationFilter.class);
+        if (admissionControl.isEnabled()) {
+            http.addFilterBefore(new AdmissionControlFilter(admissionControl), ApiKeyAuthenticationFilter.class);
+        }
     }
 
 }
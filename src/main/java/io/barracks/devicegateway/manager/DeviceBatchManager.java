@@ -0,0 +1,186 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.manager;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.barracks.devicegateway.exception.BatchTooLargeException;
+import io.barracks.devicegateway.exception.DeviceGatewayException;
+import io.barracks.devicegateway.metrics.CallTimers;
+import io.barracks.devicegateway.model.DeviceRequest;
+import io.barracks.devicegateway.model.ResolvedVersions;
+import io.barracks.devicegateway.model.Version;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Resolves the devices behind an edge hub in one go.
+ * <p>
+ * Devices of a batch are resolved in parallel, at most {@code io.barracks.resolve.batch.parallelism} at a time, on a
+ * pool shared by all batches. A version needed by several devices of the batch is only looked up once.
+ */
+@Slf4j
+@Service
+public class DeviceBatchManager {
+
+    private final DeviceManager deviceManager;
+    private final int maxDevices;
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    private final CallTimers.Timer resolveVersionsTimer;
+
+    @Autowired
+    public DeviceBatchManager(
+            DeviceManager deviceManager,
+            CallTimers callTimers,
+            @Value("${io.barracks.resolve.batch.max_devices:1000}") int maxDevices,
+            @Value("${io.barracks.resolve.batch.parallelism:8}") int parallelism,
+            @Value("${io.barracks.resolve.batch.threads:64}") int threads
+    ) {
+        this.deviceManager = deviceManager;
+        this.maxDevices = maxDevices;
+        this.parallelism = parallelism;
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("batch-resolve-%d").setDaemon(true).build()
+        );
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+        this.resolveVersionsTimer = callTimers.timer("devicebatchmanager", "resolveVersions");
+    }
+
+    public void checkSize(int devices) {
+        if (devices > maxDevices) {
+            throw new BatchTooLargeException(devices, maxDevices);
+        }
+    }
+
+    /**
+     * Resolves every request and posts its device event, handing each result to the listener on the calling thread
+     * as soon as it is available. A device failing does not fail the batch, it is reported to the listener instead.
+     */
+    public void resolveVersions(List<DeviceRequest> requests, Listener listener) throws IOException {
+        final long start = System.nanoTime();
+        final SharedVersions versions = new SharedVersions();
+        final CompletionService<Resolution> completionService = new ExecutorCompletionService<>(executor);
+        final List<Future<Resolution>> futures = new ArrayList<>(requests.size());
+        try {
+            int submitted = 0;
+            for (; submitted < Math.min(parallelism, requests.size()); submitted++) {
+                futures.add(completionService.submit(resolution(requests.get(submitted), versions)));
+            }
+            for (int completed = 0; completed < requests.size(); completed++) {
+                final Resolution resolution = completionService.take().get();
+                if (submitted < requests.size()) {
+                    futures.add(completionService.submit(resolution(requests.get(submitted++), versions)));
+                }
+                if (resolution.failure == null) {
+                    listener.onResolved(resolution.request, resolution.resolvedVersions);
+                } else {
+                    listener.onFailed(resolution.request, resolution.failure);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeviceGatewayException("Interrupted while resolving a batch of " + requests.size() + " devices", e);
+        } catch (ExecutionException e) {
+            throw new DeviceGatewayException("Batch resolution failed", e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+            resolveVersionsTimer.record(start);
+        }
+    }
+
+    private Callable<Resolution> resolution(DeviceRequest request, SharedVersions versions) {
+        return () -> {
+            try {
+                return new Resolution(request, deviceManager.resolveVersions(request, versions), null);
+            } catch (RuntimeException e) {
+                log.warn("Resolution of device '{}' failed: '{}'", request.getUnitId(), e.getMessage());
+                return new Resolution(request, null, e);
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public interface Listener {
+        void onResolved(DeviceRequest request, ResolvedVersions resolvedVersions) throws IOException;
+
+        void onFailed(DeviceRequest request, RuntimeException failure) throws IOException;
+    }
+
+    private static final class Resolution {
+        private final DeviceRequest request;
+        private final ResolvedVersions resolvedVersions;
+        private final RuntimeException failure;
+
+        private Resolution(DeviceRequest request, ResolvedVersions resolvedVersions, RuntimeException failure) {
+            this.request = request;
+            this.resolvedVersions = resolvedVersions;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Version lookups of a batch: the first device needing a version looks it up, the others wait for its result.
+     */
+    final class SharedVersions implements DeviceManager.VersionLookup {
+        private final ConcurrentMap<List<String>, CompletableFuture<Version>> versions = new ConcurrentHashMap<>();
+
+        @Override
+        public Version getVersion(String userId, String reference, String version) {
+            final CompletableFuture<Version> lookup = new CompletableFuture<>();
+            final CompletableFuture<Version> existing = versions.putIfAbsent(Arrays.asList(userId, reference, version), lookup);
+            if (existing != null) {
+                try {
+                    return existing.join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+            }
+            try {
+                final Version result = deviceManager.getVersion(userId, reference, version);
+                lookup.complete(result);
+                return result;
+            } catch (RuntimeException e) {
+                lookup.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+}
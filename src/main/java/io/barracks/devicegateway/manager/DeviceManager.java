@@ -24,18 +24,18 @@
 
 package io.barracks.devicegateway.manager;
 
+import com.google.common.collect.Maps;
 import io.barracks.devicegateway.client.ComponentServiceClient;
 import io.barracks.devicegateway.client.DeploymentServiceClient;
 import io.barracks.devicegateway.client.QueuingServiceClientV2;
+import io.barracks.devicegateway.metrics.CallTimers;
 import io.barracks.devicegateway.model.DeviceEvent;
 import io.barracks.devicegateway.model.*;
 import io.barracks.devicegateway.model.Package;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 @Service
 public class DeviceManager {
@@ -44,81 +44,80 @@ public class DeviceManager {
     private final ComponentServiceClient componentServiceClient;
     private final QueuingServiceClientV2 queuingServiceClientV2;
 
+    private final CallTimers.Timer resolveVersionsTimer;
+
     public DeviceManager(
             DeploymentServiceClient deploymentServiceClient,
             ComponentServiceClient componentServiceClient,
-            QueuingServiceClientV2 queuingServiceClientV2
+            QueuingServiceClientV2 queuingServiceClientV2,
+            CallTimers callTimers
     ) {
         this.deploymentServiceClient = deploymentServiceClient;
         this.componentServiceClient = componentServiceClient;
         this.queuingServiceClientV2 = queuingServiceClientV2;
+        this.resolveVersionsTimer = callTimers.timer("devicemanager", "resolveVersions");
     }
 
     public ResolvedVersions resolveVersions(DeviceRequest request) {
-        final ResolvedPackages resolvedPackages = deploymentServiceClient.resolvePackages(request);
-        final ResolvedVersions resolvedVersions = buildResolvedVersions(request, resolvedPackages);
-        final DeviceEvent deviceEvent = DeviceEvent.builder().request(request).response(resolvedVersions).build();
-        queuingServiceClientV2.postDeviceRequest(deviceEvent);
-        return resolvedVersions;
-    }
-
-    ResolvedVersions buildResolvedVersions(DeviceRequest request, ResolvedPackages resolvedPackages) {
-        final Map<String, Package> requestPackages = request.getPackages().stream()
-                .collect(
-                        Collectors.toMap(
-                                Package::getReference,
-                                pkg -> pkg
-                        )
-                );
-        return ResolvedVersions.builder()
-                .available(getAvailableVersions(request.getUserId(), requestPackages, resolvedPackages))
-                .unavailable(getUnavailableVersions(requestPackages, resolvedPackages))
-                .changed(getChangedVersions(request.getUserId(), requestPackages, resolvedPackages))
-                .unchanged(getUnchangedVersions(requestPackages, resolvedPackages))
-                .build();
+        return resolve(request, resolvedPackages -> buildResolvedVersions(request, resolvedPackages));
     }
 
-    private List<Version> getAvailableVersions(String userId, Map<String, Package> requestPackages, ResolvedPackages resolvedPackages) {
-        return resolvedPackages.getPresent()
-                .stream()
-                .filter(pkg -> !Optional.ofNullable(requestPackages.get(pkg.getReference())).isPresent())
-                .filter(pkg -> pkg.getVersion().isPresent())
-                .map(pkg -> getVersion(userId, pkg.getReference(), pkg.getVersion().get()))
-                .collect(Collectors.toList());
+    ResolvedVersions resolveVersions(DeviceRequest request, VersionLookup versions) {
+        return resolve(request, resolvedPackages -> buildResolvedVersions(request, resolvedPackages, versions));
     }
 
-    private List<Version> getUnavailableVersions(Map<String, Package> requestPackages, ResolvedPackages resolvedPackages) {
-        return resolvedPackages.getAbsent()
-                .stream()
-                .filter(pkg -> Optional.ofNullable(requestPackages.get(pkg.getReference())).isPresent())
-                .map(Version::fromPackage)
-                .collect(Collectors.toList());
+    private ResolvedVersions resolve(DeviceRequest request, Function<ResolvedPackages, ResolvedVersions> builder) {
+        final long start = System.nanoTime();
+        try {
+            final ResolvedPackages resolvedPackages = deploymentServiceClient.resolvePackages(request);
+            final ResolvedVersions resolvedVersions = builder.apply(resolvedPackages);
+            final DeviceEvent deviceEvent = DeviceEvent.builder().request(request).response(resolvedVersions).build();
+            queuingServiceClientV2.postDeviceRequest(deviceEvent);
+            return resolvedVersions;
+        } finally {
+            resolveVersionsTimer.record(start);
+        }
     }
 
-    private List<Version> getChangedVersions(String userId, Map<String, Package> requestPackages, ResolvedPackages resolvedPackages) {
-        return resolvedPackages.getPresent()
-                .stream()
-                .filter(pkg -> Optional.ofNullable(requestPackages.get(pkg.getReference()))
-                        .filter(devicePkg -> pkg.getVersion().isPresent() && !devicePkg.getVersion().equals(pkg.getVersion()))
-                        .isPresent()
-                )
-                .map(pkg -> getVersion(userId, pkg.getReference(), pkg.getVersion().get()))
-                .collect(Collectors.toList());
-
+    ResolvedVersions buildResolvedVersions(DeviceRequest request, ResolvedPackages resolvedPackages) {
+        return buildResolvedVersions(request, resolvedPackages, this::getVersion);
     }
 
-    private List<Version> getUnchangedVersions(Map<String, Package> requestPackages, ResolvedPackages resolvedPackages) {
-        return resolvedPackages.getPresent()
-                .stream()
-                .filter(pkg -> Optional.ofNullable(requestPackages.get(pkg.getReference()))
-                        .filter(devicePackage -> !pkg.getVersion().isPresent() || pkg.getVersion().equals(devicePackage.getVersion()))
-                        .isPresent()
-                )
-                .map(Version::fromPackage)
-                .collect(Collectors.toList());
+    ResolvedVersions buildResolvedVersions(DeviceRequest request, ResolvedPackages resolvedPackages, VersionLookup versions) {
+        final Map<String, Package> requestPackages = Maps.newHashMapWithExpectedSize(request.getPackages().size());
+        for (Package pkg : request.getPackages()) {
+            if (requestPackages.put(pkg.getReference(), pkg) != null) {
+                throw new IllegalStateException("Duplicate package reference " + pkg.getReference());
+            }
+        }
+        final ResolvedVersions.ResolvedVersionsBuilder builder = ResolvedVersions.builder();
+        for (Package pkg : resolvedPackages.getPresent()) {
+            final Package devicePackage = requestPackages.get(pkg.getReference());
+            final String version = pkg.versionOrNull();
+            if (devicePackage == null) {
+                if (version != null) {
+                    builder.addAvailable(versions.getVersion(request.getUserId(), pkg.getReference(), version));
+                }
+            } else if (version == null || version.equals(devicePackage.versionOrNull())) {
+                builder.addUnchanged(Version.fromPackage(pkg));
+            } else {
+                builder.addChanged(versions.getVersion(request.getUserId(), pkg.getReference(), version));
+            }
+        }
+        for (Package pkg : resolvedPackages.getAbsent()) {
+            if (requestPackages.containsKey(pkg.getReference())) {
+                builder.addUnavailable(Version.fromPackage(pkg));
+            }
+        }
+        return builder.build();
     }
 
     Version getVersion(String userId, String reference, String version) {
         return componentServiceClient.getVersion(userId, reference, version);
     }
+
+    @FunctionalInterface
+    interface VersionLookup {
+        Version getVersion(String userId, String reference, String version);
+    }
 }
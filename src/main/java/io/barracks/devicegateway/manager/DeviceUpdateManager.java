@@ -31,6 +31,7 @@ import io.barracks.devicegateway.exception.InvalidUpdateStatusException;
 import io.barracks.devicegateway.exception.NotPackageOwnerException;
 import io.barracks.devicegateway.exception.PackageStreamException;
 import io.barracks.devicegateway.exception.NoUpdateAvailableException;
+import io.barracks.devicegateway.metrics.CallTimers;
 import io.barracks.devicegateway.model.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,20 +49,41 @@ public class DeviceUpdateManager {
     private final PackageServiceClient packageServiceClient;
     private final QueuingServiceClient queuingServiceClient;
     private final ComponentServiceClient componentServiceClient;
+    private final DownloadGovernor downloadGovernor;
+
+    private final CallTimers.Timer checkForUpdateTimer;
+    private final CallTimers.Timer downloadUpdateTimer;
+    private final CallTimers.Timer downloadVersionTimer;
 
     @Autowired
-    public DeviceUpdateManager(DeviceServiceClient deviceServiceClient, PackageServiceClient packageServiceClient, QueuingServiceClient queuingServiceClient, UpdateServiceClient updateServiceClient, ComponentServiceClient componentServiceClient) {
+    public DeviceUpdateManager(DeviceServiceClient deviceServiceClient, PackageServiceClient packageServiceClient, QueuingServiceClient queuingServiceClient, UpdateServiceClient updateServiceClient, ComponentServiceClient componentServiceClient, DownloadGovernor downloadGovernor, CallTimers callTimers) {
         this.deviceServiceClient = deviceServiceClient;
         this.packageServiceClient = packageServiceClient;
         this.queuingServiceClient = queuingServiceClient;
         this.updateServiceClient = updateServiceClient;
         this.componentServiceClient = componentServiceClient;
+        this.downloadGovernor = downloadGovernor;
+        this.checkForUpdateTimer = callTimers.timer("deviceupdatemanager", "checkForUpdate");
+        this.downloadUpdateTimer = callTimers.timer("deviceupdatemanager", "downloadUpdate");
+        this.downloadVersionTimer = callTimers.timer("deviceupdatemanager", "downloadVersion");
     }
 
     public DetailedUpdate checkForUpdate(DeviceInfo deviceInfo) {
+        final long start = System.nanoTime();
+        try {
+            final DeviceInfo savedDeviceInfo = registerDevice(deviceInfo);
+            return getUpdateForDevice(savedDeviceInfo);
+        } finally {
+            checkForUpdateTimer.record(start);
+        }
+    }
+
+    /**
+     * Records the device's poll and returns the device as saved by the device service, with its segment.
+     */
+    public DeviceInfo registerDevice(DeviceInfo deviceInfo) {
         queuingServiceClient.postDeviceInfo(deviceInfo);
-        final DeviceInfo savedDeviceInfo = createDeviceInfo(deviceInfo);
-        return getUpdateForDevice(savedDeviceInfo);
+        return createDeviceInfo(deviceInfo);
     }
 
     DeviceInfo createDeviceInfo(DeviceInfo deviceInfo) {
@@ -72,7 +94,7 @@ public class DeviceUpdateManager {
         }
     }
 
-    DetailedUpdate getUpdateForDevice(DeviceInfo deviceInfo) {
+    public DetailedUpdate getUpdateForDevice(DeviceInfo deviceInfo) {
         return updateServiceClient.getLatestPublishedUpdateByUserIdAndSegmentId(deviceInfo.getUserId(), deviceInfo.getSegmentId())
                 .map(update -> {
                     final PackageInfo packageInfo = getPackageInfoByPackageIdAndUserId(update.getPackageId(), deviceInfo.getUserId());
@@ -86,18 +108,27 @@ public class DeviceUpdateManager {
     }
 
     public long downloadUpdate(String userId, String updateId, OutputStream outputStream) {
-        final PackageInfo packageInfo = getPackageInfoByUpdateIdAndUserId(updateId, userId);
-        final long copied = loadPackageStream(packageInfo, outputStream);
-
-        if (copied != packageInfo.getSize()) {
-            log.error("Expected '" + packageInfo.getSize() + "' but copied '" + copied + "'");
+        final long start = System.nanoTime();
+        try (ShapedOutputStream shapedStream = downloadGovernor.shape(userId, outputStream)) {
+            final PackageInfo packageInfo = getPackageInfoByUpdateIdAndUserId(updateId, userId);
+            final long copied = loadPackageStream(packageInfo, shapedStream);
+
+            if (copied != packageInfo.getSize()) {
+                log.error("Expected '" + packageInfo.getSize() + "' but copied '" + copied + "'");
+            }
+            return packageInfo.getSize();
+        } finally {
+            downloadUpdateTimer.record(start);
         }
-        return packageInfo.getSize();
-
     }
 
     public long downloadVersion(String userId, String packageRef, String versionId, OutputStream outputStream) {
-        return componentServiceClient.getVersionFile(userId, packageRef, versionId, outputStream);
+        final long start = System.nanoTime();
+        try (ShapedOutputStream shapedStream = downloadGovernor.shape(userId, outputStream)) {
+            return componentServiceClient.getVersionFile(userId, packageRef, versionId, shapedStream);
+        } finally {
+            downloadVersionTimer.record(start);
+        }
     }
 
     long loadPackageStream(PackageInfo packageInfo, OutputStream outputStream) {
@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histograms of the gateway's own resources and managers, per component and method.
+ * <p>
+ * Components get their {@link Timer}s once at construction and record on them directly, so the hot path is a clock
+ * read and a histogram record. Each record is also added as a span to the {@link RequestTiming} of the current
+ * request, if any.
+ */
+@Component
+public class CallTimers {
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Timer>> timers = new ConcurrentHashMap<>();
+
+    public Timer timer(String component, String method) {
+        return timers.computeIfAbsent(component, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(method, key -> new Timer(component + "." + method));
+    }
+
+    public Map<String, Map<String, LatencySnapshot>> getSnapshots() {
+        final Map<String, Map<String, LatencySnapshot>> snapshots = new TreeMap<>();
+        timers.forEach((component, byMethod) -> {
+            final Map<String, LatencySnapshot> componentSnapshots = new TreeMap<>();
+            byMethod.forEach((method, timer) -> componentSnapshots.put(method, timer.histogram.snapshot()));
+            snapshots.put(component, componentSnapshots);
+        });
+        return snapshots;
+    }
+
+    /**
+     * Clears all the histograms, e.g. to drop the samples recorded while warming up.
+     */
+    public void reset() {
+        timers.values().forEach(byMethod -> byMethod.values().forEach(timer -> timer.histogram.reset()));
+    }
+
+    public static final class Timer {
+        private final String spanName;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private Timer(String spanName) {
+            this.spanName = spanName;
+        }
+
+        public void record(long startNanos) {
+            final long durationNanos = System.nanoTime() - startNanos;
+            RequestTiming.record(spanName, durationNanos);
+            histogram.record(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latencies in microseconds, recorded without locking and accumulated into a histogram when read. A second, recent
+ * histogram accumulates the same samples until it is taken.
+ */
+final class LatencyHistogram {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final Histogram accumulated = new Histogram(SIGNIFICANT_DIGITS);
+    private final Histogram recent = new Histogram(SIGNIFICANT_DIGITS);
+    private Histogram interval;
+
+    void record(long micros) {
+        recorder.recordValue(Math.max(micros, 0));
+    }
+
+    synchronized LatencySnapshot snapshot() {
+        accumulate();
+        return LatencySnapshot.builder()
+                .count(accumulated.getTotalCount())
+                .p50(toMillis(accumulated.getValueAtPercentile(50.0)))
+                .p99(toMillis(accumulated.getValueAtPercentile(99.0)))
+                .p999(toMillis(accumulated.getValueAtPercentile(99.9)))
+                .max(toMillis(accumulated.getMaxValue()))
+                .build();
+    }
+
+    synchronized long getValueAtPercentile(double percentile) {
+        accumulate();
+        return accumulated.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * @return the value at the given percentile of the samples recorded since it was last taken, which are then
+     * cleared, or 0 while there are fewer than {@code minCount} of them.
+     */
+    synchronized long takeRecentValueAtPercentile(double percentile, long minCount) {
+        accumulate();
+        if (recent.getTotalCount() < minCount) {
+            return 0L;
+        }
+        final long value = recent.getValueAtPercentile(percentile);
+        recent.reset();
+        return value;
+    }
+
+    synchronized void reset() {
+        interval = recorder.getIntervalHistogram(interval);
+        accumulated.reset();
+        recent.reset();
+    }
+
+    private void accumulate() {
+        interval = recorder.getIntervalHistogram(interval);
+        accumulated.add(interval);
+        recent.add(interval);
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+}
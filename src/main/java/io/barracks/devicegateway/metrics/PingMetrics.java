@@ -0,0 +1,156 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.metrics;
+
+import io.barracks.devicegateway.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Device polls counted per API version and per user, with a bounded number of users.
+ * <p>
+ * Only the totals are published to the actuator metrics, the per-user counts are exported periodically as
+ * {@code userId} tagged log records and are available on the {@code pings} endpoint.
+ */
+@Slf4j
+@Component
+public class PingMetrics implements PublicMetrics {
+
+    public static final String OTHER_USERS = "_other";
+
+    public enum ApiVersion {
+        V1, V2;
+
+        private final String metricName = "ping." + name().toLowerCase();
+
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    private final int maxUsers;
+    private final ConcurrentMap<String, UserPings> pings = new ConcurrentHashMap<>();
+    private final LongAdder[] totals = new LongAdder[ApiVersion.values().length];
+
+    @Autowired
+    public PingMetrics(@Value("${io.barracks.metrics.ping.max_users:10000}") int maxUsers) {
+        this.maxUsers = maxUsers;
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = new LongAdder();
+        }
+    }
+
+    public void increment(ApiVersion version, User user) {
+        totals[version.ordinal()].increment();
+        getUserPings(user.getId()).counters[version.ordinal()].increment();
+    }
+
+    private UserPings getUserPings(String userId) {
+        final UserPings existing = pings.get(userId);
+        if (existing != null) {
+            return existing;
+        }
+        if (pings.size() >= maxUsers) {
+            return pings.computeIfAbsent(OTHER_USERS, key -> new UserPings());
+        }
+        final UserPings created = new UserPings();
+        final UserPings raced = pings.putIfAbsent(userId, created);
+        return raced != null ? raced : created;
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (LongAdder adder : totals) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    public Map<String, Map<String, Long>> getCountsByUser() {
+        final Map<String, Map<String, Long>> counts = new LinkedHashMap<>();
+        pings.forEach((userId, userPings) -> {
+            final Map<String, Long> byVersion = new LinkedHashMap<>();
+            for (ApiVersion version : ApiVersion.values()) {
+                byVersion.put(version.getMetricName(), userPings.counters[version.ordinal()].sum());
+            }
+            counts.put(userId, byVersion);
+        });
+        return counts;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>(totals.length + 1);
+        for (ApiVersion version : ApiVersion.values()) {
+            metrics.add(new Metric<>(version.getMetricName(), totals[version.ordinal()].sum()));
+        }
+        metrics.add(new Metric<>("ping.users", pings.size()));
+        return metrics;
+    }
+
+    @Scheduled(fixedDelayString = "${io.barracks.metrics.ping.export_interval:60000}")
+    public void export() {
+        pings.forEach((userId, userPings) -> {
+            for (ApiVersion version : ApiVersion.values()) {
+                final long delta = userPings.drainDelta(version);
+                if (delta > 0) {
+                    log.info("metric={} userId={} count={}", version.getMetricName(), userId, delta);
+                }
+            }
+        });
+    }
+
+    private static final class UserPings {
+        private final LongAdder[] counters = new LongAdder[ApiVersion.values().length];
+        private final long[] exported = new long[ApiVersion.values().length];
+
+        private UserPings() {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = new LongAdder();
+            }
+        }
+
+        private synchronized long drainDelta(ApiVersion version) {
+            final long current = counters[version.ordinal()].sum();
+            final long delta = current - exported[version.ordinal()];
+            exported[version.ordinal()] = current;
+            return delta;
+        }
+    }
+}
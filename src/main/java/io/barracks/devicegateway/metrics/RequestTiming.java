@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.metrics;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Spans collected for the current request, used to build the {@code Server-Timing} header and the trace log.
+ * <p>
+ * Recording is a no-op unless {@link RequestTimingFilter} has started a timing for the current request. Work handed to
+ * another thread keeps recording into the request's timing when wrapped with {@link #bind(Supplier)}.
+ */
+public final class RequestTiming {
+
+    private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos;
+    private final List<Span> spans = new CopyOnWriteArrayList<>();
+
+    private RequestTiming(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    static RequestTiming start() {
+        final RequestTiming timing = new RequestTiming(System.nanoTime());
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    static void stop() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Wraps the supplier so that, on whichever thread it runs, it records into the timing of the current request.
+     */
+    public static <T> Supplier<T> bind(Supplier<T> supplier) {
+        final RequestTiming timing = CURRENT.get();
+        if (timing == null) {
+            return supplier;
+        }
+        return () -> {
+            final RequestTiming previous = CURRENT.get();
+            CURRENT.set(timing);
+            try {
+                return supplier.get();
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    public static void record(String name, long durationNanos) {
+        final RequestTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.spans.add(new Span(name, durationNanos));
+        }
+    }
+
+    long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    String toServerTiming(long totalNanos) {
+        final StringBuilder builder = new StringBuilder();
+        for (Span span : spans) {
+            appendMetric(builder, span.name, span.durationNanos).append(", ");
+        }
+        return appendMetric(builder, "total", totalNanos).toString();
+    }
+
+    String toLogFields(long totalNanos) {
+        final StringBuilder builder = new StringBuilder("total=").append(toMillis(totalNanos));
+        for (Span span : spans) {
+            builder.append(' ').append(span.name).append('=').append(toMillis(span.durationNanos));
+        }
+        return builder.toString();
+    }
+
+    private static StringBuilder appendMetric(StringBuilder builder, String name, long durationNanos) {
+        return builder.append(name).append(";dur=").append(toMillis(durationNanos));
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static final class Span {
+        private final String name;
+        private final long durationNanos;
+
+        private Span(String name, long durationNanos) {
+            this.name = name;
+            this.durationNanos = durationNanos;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.metrics;
+
+import com.google.common.collect.ImmutableSet;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Times the device polls, including authentication, and reports the upstream spans recorded through
+ * {@link UpstreamLatencyMetrics}.
+ * <p>
+ * When {@code io.barracks.timing.header.enabled} is set the response carries a {@code Server-Timing} header, the body
+ * is then buffered so the header can be added once all the spans are known. Independently, a fraction of the requests
+ * given by {@code io.barracks.timing.log.sample_rate} is logged with the same spans.
+ */
+@Slf4j
+@Component
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER - 1)
+public class RequestTimingFilter extends OncePerRequestFilter {
+
+    static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    private static final Set<String> TIMED_PATHS = ImmutableSet.of("/update/check", "/resolve");
+
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+    private final boolean headerEnabled;
+    private final double logSampleRate;
+
+    @Autowired
+    public RequestTimingFilter(
+            @Value("${io.barracks.timing.header.enabled:false}") boolean headerEnabled,
+            @Value("${io.barracks.timing.log.sample_rate:0.0}") double logSampleRate
+    ) {
+        this.headerEnabled = headerEnabled;
+        this.logSampleRate = logSampleRate;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
+        return !headerEnabled && logSampleRate <= 0.0
+                || !TIMED_PATHS.contains(urlPathHelper.getPathWithinApplication(request));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        final boolean sampled = logSampleRate > 0.0 && ThreadLocalRandom.current().nextDouble() < logSampleRate;
+        if (!headerEnabled && !sampled) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        final RequestTiming timing = RequestTiming.start();
+        try {
+            if (headerEnabled) {
+                final ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+                filterChain.doFilter(request, wrapper);
+                wrapper.setHeader(SERVER_TIMING_HEADER, timing.toServerTiming(timing.getElapsedNanos()));
+                wrapper.copyBodyToResponse();
+            } else {
+                filterChain.doFilter(request, response);
+            }
+        } finally {
+            RequestTiming.stop();
+            if (sampled) {
+                log.info("timing path={} status={} {}",
+                        urlPathHelper.getPathWithinApplication(request), response.getStatus(), timing.toLogFields(timing.getElapsedNanos()));
+            }
+        }
+    }
+}
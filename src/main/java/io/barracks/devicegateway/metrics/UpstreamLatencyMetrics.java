@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.metrics;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histograms of the calls made to the upstream services, per client, operation and response status.
+ * <p>
+ * Clients get their {@link Operation} once and record on it, so the hot path is a single lookup on the status. Each
+ * record is also added as a span to the {@link RequestTiming} of the current request, if any.
+ */
+@Component
+public class UpstreamLatencyMetrics {
+
+    public static final String FAILURE = "failure";
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Operation>> operations = new ConcurrentHashMap<>();
+
+    public Operation operation(String client, String name) {
+        return operations.computeIfAbsent(client, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(name, key -> new Operation(client + "." + name));
+    }
+
+    public Map<String, Map<String, Map<String, LatencySnapshot>>> getSnapshots() {
+        final Map<String, Map<String, Map<String, LatencySnapshot>>> snapshots = new TreeMap<>();
+        operations.forEach((client, byName) -> {
+            final Map<String, Map<String, LatencySnapshot>> clientSnapshots = new TreeMap<>();
+            byName.forEach((name, operation) -> clientSnapshots.put(name, operation.getSnapshots()));
+            snapshots.put(client, clientSnapshots);
+        });
+        return snapshots;
+    }
+
+    /**
+     * Clears all the histograms, e.g. to drop the samples recorded while warming up.
+     */
+    public void reset() {
+        operations.values().forEach(byName -> byName.values().forEach(operation -> operation.histograms.values().forEach(LatencyHistogram::reset)));
+    }
+
+    public static final class Operation {
+        private final String spanName;
+        private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+        private Operation(String spanName) {
+            this.spanName = spanName;
+        }
+
+        public void record(HttpStatus status, long startNanos) {
+            record(status.toString(), startNanos);
+        }
+
+        public void record(String status, long startNanos) {
+            final long durationNanos = System.nanoTime() - startNanos;
+            RequestTiming.record(spanName, durationNanos);
+            final long micros = TimeUnit.NANOSECONDS.toMicros(durationNanos);
+            LatencyHistogram histogram = histograms.get(status);
+            if (histogram == null) {
+                histogram = histograms.computeIfAbsent(status, key -> new LatencyHistogram());
+            }
+            histogram.record(micros);
+        }
+
+        public void recordFailure(long startNanos) {
+            record(FAILURE, startNanos);
+        }
+
+        /**
+         * @return the latency at the given percentile of the calls answered with the given status, in microseconds, or
+         * 0 if there was none yet.
+         */
+        public long getValueAtPercentile(HttpStatus status, double percentile) {
+            final LatencyHistogram histogram = histograms.get(status.toString());
+            return histogram == null ? 0L : histogram.getValueAtPercentile(percentile);
+        }
+
+        /**
+         * @return the latency at the given percentile of the calls answered with the given status since the last time
+         * it was taken, in microseconds, or 0 while there were fewer than {@code minCount} of them.
+         */
+        public long takeRecentValueAtPercentile(HttpStatus status, double percentile, long minCount) {
+            final LatencyHistogram histogram = histograms.get(status.toString());
+            return histogram == null ? 0L : histogram.takeRecentValueAtPercentile(percentile, minCount);
+        }
+
+        private Map<String, LatencySnapshot> getSnapshots() {
+            final Map<String, LatencySnapshot> snapshots = new TreeMap<>();
+            histograms.forEach((status, histogram) -> snapshots.put(status, histogram.snapshot()));
+            return snapshots;
+        }
+    }
+}
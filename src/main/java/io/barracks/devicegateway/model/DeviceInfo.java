@@ -28,14 +28,17 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.barracks.devicegateway.model.utils.ImmutableMaps;
+import io.barracks.devicegateway.model.utils.InstantAsDateSerializer;
 import lombok.*;
 import org.hibernate.validator.constraints.NotBlank;
 
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
+import java.time.Instant;
 import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Builder(toBuilder = true)
@@ -57,14 +60,14 @@ public final class DeviceInfo {
     @NotBlank
     private final String versionId;
 
-    private final Date receptionDate;
+    @JsonSerialize(using = InstantAsDateSerializer.class)
+    private final Instant receptionDate;
 
     private final String deviceIP;
 
     private final String userAgent;
 
     @NotNull
-    @Singular
     private final Map<String, Object> additionalProperties;
 
     @JsonCreator
@@ -75,20 +78,24 @@ public final class DeviceInfo {
         return DeviceInfo.builder()
                 // TODO check if we are to receive null values here
                 .unitId(unitId != null ? unitId.trim() : null)
-                .receptionDate(receptionDate != null ? new Date(receptionDate.getTime()) : null)
-                .additionalProperties(additionalProperties == null ? Collections.emptyMap() : new LinkedHashMap<>(additionalProperties))
+                .receptionDate(receptionDate != null ? receptionDate.toInstant() : null)
+                // The map was just created by Jackson, it is not shared
+                .additionalProperties(additionalProperties == null ? Collections.emptyMap() : Collections.unmodifiableMap(additionalProperties))
                 .build();
     }
 
-    public Date getReceptionDate() {
-        if (this.receptionDate != null) {
-            return new Date(receptionDate.getTime());
+    public static class DeviceInfoBuilder {
+        private Map<String, Object> additionalProperties = Collections.emptyMap();
+
+        public DeviceInfoBuilder additionalProperties(Map<String, Object> additionalProperties) {
+            this.additionalProperties = ImmutableMaps.snapshot(additionalProperties);
+            return this;
         }
-        return null;
-    }
 
-    public Map<String, Object> getAdditionalProperties() {
-        return new LinkedHashMap<>(additionalProperties);
+        public DeviceInfoBuilder additionalProperty(String key, Object value) {
+            this.additionalProperties = ImmutableMaps.with(additionalProperties, key, value);
+            return this;
+        }
     }
 
 }
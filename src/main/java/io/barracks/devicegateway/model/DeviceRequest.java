@@ -25,11 +25,15 @@
 package io.barracks.devicegateway.model;
 
 import com.fasterxml.jackson.annotation.*;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import io.barracks.devicegateway.model.utils.DeviceRequestDeserializer;
+import io.barracks.devicegateway.model.utils.ImmutableMaps;
 import lombok.*;
 import org.hibernate.validator.constraints.NotBlank;
 
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -39,6 +43,7 @@ import java.util.Map;
 @ToString
 @JsonInclude(JsonInclude.Include.NON_ABSENT)
 @JsonIgnoreProperties(ignoreUnknown = true)
+@JsonDeserialize(using = DeviceRequestDeserializer.class)
 public class DeviceRequest {
 
     private final String userId;
@@ -48,7 +53,6 @@ public class DeviceRequest {
     private final String unitId;
 
     @NotNull
-    @Singular("addCustomClientData")
     private final Map<String, Object> customClientData;
 
     @NotNull
@@ -59,15 +63,17 @@ public class DeviceRequest {
 
     private final String userAgent;
 
-    @JsonCreator
-    public static DeviceRequest fromJson(@JsonProperty("unitId") String unitId) {
-        return builder()
-                .unitId(unitId != null ? unitId.trim() : null)
-                .build();
-    }
-
     @JsonProperty
     public String getUserId() {
         return userId;
     }
+
+    public static class DeviceRequestBuilder {
+        private Map<String, Object> customClientData = Collections.emptyMap();
+
+        public DeviceRequestBuilder addCustomClientData(String key, Object value) {
+            customClientData = ImmutableMaps.with(customClientData, key, value);
+            return this;
+        }
+    }
 }
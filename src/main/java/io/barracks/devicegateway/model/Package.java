@@ -54,4 +54,8 @@ public class Package {
     public Optional<String> getVersion() {
         return Optional.ofNullable(version);
     }
+
+    public String versionOrNull() {
+        return version;
+    }
 }
@@ -43,4 +43,8 @@ public class ResolvedVersions {
     private final List<Version> unchanged;
     @Singular("addUnavailable")
     private final List<Version> unavailable;
+    /**
+     * Seconds until the device should resolve again, only set in responses to devices.
+     */
+    private final Integer nextPoll;
 }
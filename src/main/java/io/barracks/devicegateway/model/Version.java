@@ -67,7 +67,7 @@ public class Version {
     public static Version fromPackage(Package aPackage) {
         return builder()
                 .reference(aPackage.getReference())
-                .version(aPackage.getVersion().orElse(null))
+                .version(aPackage.versionOrNull())
                 .build();
     }
 }
@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.model.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import io.barracks.devicegateway.model.DeviceRequest;
+import io.barracks.devicegateway.model.Package;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a {@link DeviceRequest} with the token API in a single pass: packages are built directly and the custom client
+ * data is kept as a {@link RawJsonMap}. Unknown properties are skipped.
+ */
+public class DeviceRequestDeserializer extends JsonDeserializer<DeviceRequest> {
+
+    @Override
+    public DeviceRequest deserialize(JsonParser p, DeserializationContext ctxt) throws IOException, JsonProcessingException {
+        String field;
+        if (p.isExpectedStartObjectToken()) {
+            field = p.nextFieldName();
+        } else if (p.hasToken(JsonToken.FIELD_NAME)) {
+            field = p.getCurrentName();
+        } else {
+            return (DeviceRequest) ctxt.handleUnexpectedToken(DeviceRequest.class, p);
+        }
+        final DeviceRequest.DeviceRequestBuilder builder = DeviceRequest.builder();
+        for (; field != null; field = p.nextFieldName()) {
+            p.nextToken();
+            switch (field) {
+                case "unitId":
+                    final String unitId = readString(p, ctxt);
+                    builder.unitId(unitId != null ? unitId.trim() : null);
+                    break;
+                case "userId":
+                    builder.userId(readString(p, ctxt));
+                    break;
+                case "ipAddress":
+                    builder.ipAddress(readString(p, ctxt));
+                    break;
+                case "userAgent":
+                    builder.userAgent(readString(p, ctxt));
+                    break;
+                case "customClientData":
+                    builder.customClientData(readCustomClientData(p, ctxt));
+                    break;
+                case "packages":
+                    builder.packages(readPackages(p, ctxt));
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+        return builder.build();
+    }
+
+    private String readString(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.hasToken(JsonToken.VALUE_STRING)) {
+            return p.getText();
+        }
+        return ctxt.readValue(p, String.class);
+    }
+
+    private Map<String, Object> readCustomClientData(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.hasToken(JsonToken.VALUE_NULL)) {
+            return null;
+        }
+        if (!p.isExpectedStartObjectToken()) {
+            ctxt.handleUnexpectedToken(Map.class, p);
+        }
+        return RawJsonMap.read(p);
+    }
+
+    private List<Package> readPackages(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!p.isExpectedStartArrayToken()) {
+            ctxt.handleUnexpectedToken(List.class, p);
+        }
+        final List<Package> packages = new ArrayList<>();
+        for (JsonToken token = p.nextToken(); token != JsonToken.END_ARRAY; token = p.nextToken()) {
+            packages.add(token == JsonToken.VALUE_NULL ? null : readPackage(p, ctxt));
+        }
+        return packages;
+    }
+
+    private Package readPackage(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!p.isExpectedStartObjectToken()) {
+            ctxt.handleUnexpectedToken(Package.class, p);
+        }
+        final Package.PackageBuilder builder = Package.builder();
+        for (String field = p.nextFieldName(); field != null; field = p.nextFieldName()) {
+            p.nextToken();
+            switch (field) {
+                case "reference":
+                    builder.reference(readString(p, ctxt));
+                    break;
+                case "version":
+                    builder.version(readString(p, ctxt));
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.model.utils;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshots of free-form maps. Unlike {@link ImmutableMap#copyOf(Map)} null values are kept, since they are
+ * legitimate in client and update data.
+ */
+public final class ImmutableMaps {
+
+    private static final Class<?> UNMODIFIABLE_MAP = Collections.unmodifiableMap(Collections.emptyMap()).getClass();
+
+    private ImmutableMaps() {
+    }
+
+    /**
+     * Returns {@code map} itself when it is already immutable, otherwise an unmodifiable copy preserving its order.
+     */
+    public static <K, V> Map<K, V> snapshot(Map<K, V> map) {
+        if (map == null || isImmutable(map)) {
+            return map;
+        }
+        return map.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(new LinkedHashMap<>(map));
+    }
+
+    /**
+     * Returns an unmodifiable copy of {@code map} with {@code key} mapped to {@code value}.
+     */
+    public static <K, V> Map<K, V> with(Map<K, V> map, K key, V value) {
+        final Map<K, V> copy = new LinkedHashMap<>(map);
+        copy.put(key, value);
+        return Collections.unmodifiableMap(copy);
+    }
+
+    private static boolean isImmutable(Map<?, ?> map) {
+        return map.getClass() == UNMODIFIABLE_MAP
+                || map == Collections.emptyMap()
+                || map instanceof RawJsonMap
+                || map instanceof ImmutableMap;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.model.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.json.JsonGeneratorImpl;
+import com.fasterxml.jackson.core.io.SegmentedStringWriter;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JSON object kept as its JSON text.
+ * <p>
+ * The text is copied token by token without decoding numbers and written back as a raw value, the object is only
+ * bound to a {@link Map} the first time its content is read. Opaque client data thus goes through the gateway without
+ * being materialized.
+ */
+@JsonSerialize(using = RawJsonMap.Serializer.class)
+public final class RawJsonMap extends AbstractMap<String, Object> {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final TypeReference<LinkedHashMap<String, Object>> MAP_TYPE = new TypeReference<LinkedHashMap<String, Object>>() {
+    };
+
+    private final String json;
+    private final ObjectCodec codec;
+    private volatile Map<String, Object> content;
+
+    private RawJsonMap(String json, ObjectCodec codec) {
+        this.json = json;
+        this.codec = codec;
+    }
+
+    /**
+     * Copies the object the parser is positioned on, leaving the parser on its closing token.
+     */
+    public static RawJsonMap read(JsonParser parser) throws IOException {
+        final SegmentedStringWriter writer = new SegmentedStringWriter(new BufferRecycler());
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            copyStructure(parser, generator);
+        }
+        return new RawJsonMap(writer.getAndClear(), parser.getCodec());
+    }
+
+    private static void copyStructure(JsonParser parser, JsonGenerator generator) throws IOException {
+        int depth = 0;
+        JsonToken token = parser.getCurrentToken();
+        while (true) {
+            switch (token) {
+                case START_OBJECT:
+                    generator.writeStartObject();
+                    depth++;
+                    break;
+                case START_ARRAY:
+                    generator.writeStartArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    generator.writeEndObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    generator.writeEndArray();
+                    depth--;
+                    break;
+                case FIELD_NAME:
+                    generator.writeFieldName(parser.getCurrentName());
+                    break;
+                case VALUE_STRING:
+                    generator.writeString(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                    break;
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    generator.writeRawValue(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                    break;
+                default:
+                    generator.copyCurrentEvent(parser);
+            }
+            if (depth == 0) {
+                return;
+            }
+            token = parser.nextToken();
+        }
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return getContent().entrySet();
+    }
+
+    private Map<String, Object> getContent() {
+        Map<String, Object> result = content;
+        if (result == null) {
+            try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+                result = Collections.unmodifiableMap(codec.readValue(parser, MAP_TYPE));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            content = result;
+        }
+        return result;
+    }
+
+    public static class Serializer extends JsonSerializer<RawJsonMap> {
+        @Override
+        public void serialize(RawJsonMap value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            if (gen instanceof JsonGeneratorImpl) {
+                gen.writeRawValue(value.json);
+            } else {
+                try (JsonParser parser = JSON_FACTORY.createParser(value.json)) {
+                    parser.nextToken();
+                    gen.copyCurrentStructure(parser);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.notification;
+
+import io.barracks.devicegateway.model.UpdateNotification;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Wakes the parked devices when an update notification is received on this node's queue.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "io.barracks.notifications.enabled", havingValue = "true")
+public class UpdateNotificationListener {
+
+    private final UpdateNotificationRegistry registry;
+
+    @Autowired
+    public UpdateNotificationListener(UpdateNotificationRegistry registry) {
+        this.registry = registry;
+    }
+
+    @RabbitListener(queues = "#{updateNotificationQueue.name}")
+    public void onUpdateNotification(UpdateNotification notification) {
+        if (notification.getUserId() == null) {
+            log.warn("Ignoring update notification without user: '{}'", notification);
+            return;
+        }
+        final int targets = registry.publish(notification);
+        log.debug("Sending '{}' to {} devices", notification, targets);
+    }
+}
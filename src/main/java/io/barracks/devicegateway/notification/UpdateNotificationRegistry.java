@@ -0,0 +1,225 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.notification;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.barracks.devicegateway.model.UpdateNotification;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Devices waiting for an update, parked as asynchronous server-sent event streams so that an idle device holds a
+ * connection but no thread.
+ * <p>
+ * Streams are keyed by user and segment for the v1 API, and by user and package reference for the v2 API. They end
+ * after {@code io.barracks.notifications.timeout} milliseconds, the device is then expected to reconnect.
+ * <p>
+ * Events are written by {@code io.barracks.notifications.send_threads} threads, in batches of
+ * {@code io.barracks.notifications.send_batch_size} streams, so that neither the AMQP listener nor the scheduler waits for the writes and a stalled device only holds up
+ * its own batch.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "io.barracks.notifications.enabled", havingValue = "true")
+public class UpdateNotificationRegistry implements PublicMetrics {
+
+    public static final String UPDATE_AVAILABLE_EVENT = "update-available";
+
+
+    private final long timeout;
+    private final ConcurrentMap<Key, Set<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    private final Set<SseEmitter> emitters = ConcurrentHashMap.newKeySet();
+    private final LongAdder sent = new LongAdder();
+    private final int sendBatchSize;
+    private final ExecutorService sendExecutor;
+    private final AtomicBoolean heartbeatRunning = new AtomicBoolean();
+
+    @Autowired
+    public UpdateNotificationRegistry(
+            @Value("${io.barracks.notifications.timeout:600000}") long timeout,
+            @Value("${io.barracks.notifications.send_threads:8}") int sendThreads,
+            @Value("${io.barracks.notifications.send_batch_size:1000}") int sendBatchSize
+    ) {
+        this(timeout, sendBatchSize, Executors.newFixedThreadPool(
+                sendThreads, new ThreadFactoryBuilder().setNameFormat("notification-send-%d").setDaemon(true).build()
+        ));
+    }
+
+    UpdateNotificationRegistry(long timeout, int sendBatchSize, ExecutorService sendExecutor) {
+        this.timeout = timeout;
+        this.sendBatchSize = sendBatchSize;
+        this.sendExecutor = sendExecutor;
+    }
+
+    public SseEmitter subscribe(Collection<Key> keys) {
+        final SseEmitter emitter = createEmitter();
+        emitters.add(emitter);
+        for (Key key : keys) {
+            subscribers.compute(key, (k, current) -> {
+                final Set<SseEmitter> set = current == null ? ConcurrentHashMap.newKeySet() : current;
+                set.add(emitter);
+                return set;
+            });
+        }
+        emitter.onTimeout(emitter::complete);
+        emitter.onCompletion(() -> unsubscribe(keys, emitter));
+        return emitter;
+    }
+
+    SseEmitter createEmitter() {
+        return new SseEmitter(timeout);
+    }
+
+    private void unsubscribe(Collection<Key> keys, SseEmitter emitter) {
+        for (Key key : keys) {
+            subscribers.computeIfPresent(key, (k, set) -> {
+                set.remove(emitter);
+                return set.isEmpty() ? null : set;
+            });
+        }
+        emitters.remove(emitter);
+    }
+
+    /**
+     * Starts sending the notification to every device subscribed to its segment or package.
+     *
+     * @return the number of devices the notification is sent to
+     */
+    public int publish(UpdateNotification notification) {
+        final Key key = notification.getPackageRef() == null ?
+                Key.forSegment(notification.getUserId(), notification.getSegmentId()) :
+                Key.forPackage(notification.getUserId(), notification.getPackageRef());
+        final List<SseEmitter> targets = new ArrayList<>(subscribers.getOrDefault(key, Collections.emptySet()));
+        sendAll(targets, () -> SseEmitter.event().name(UPDATE_AVAILABLE_EVENT).data(notification, MediaType.APPLICATION_JSON), true);
+        return targets.size();
+    }
+
+    public boolean notify(SseEmitter emitter, UpdateNotification notification) {
+        final boolean notified = send(emitter, SseEmitter.event().name(UPDATE_AVAILABLE_EVENT).data(notification, MediaType.APPLICATION_JSON));
+        if (notified) {
+            sent.increment();
+        }
+        return notified;
+    }
+
+    /**
+     * Keeps idle streams open through proxies and detects the devices that went away without closing their connection.
+     */
+    @Scheduled(fixedDelayString = "${io.barracks.notifications.heartbeat_interval:30000}")
+    public void heartbeat() {
+        if (!heartbeatRunning.compareAndSet(false, true)) {
+            log.warn("Skipping heartbeat, the previous one is still running");
+            return;
+        }
+        sendAll(new ArrayList<>(emitters), () -> SseEmitter.event().comment(""), false)
+                .whenComplete((result, e) -> heartbeatRunning.set(false));
+    }
+
+    private CompletableFuture<Void> sendAll(List<SseEmitter> targets, Supplier<SseEmitter.SseEventBuilder> event, boolean counted) {
+        final List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (List<SseEmitter> batch : Lists.partition(targets, sendBatchSize)) {
+            batches.add(CompletableFuture.runAsync(() -> {
+                for (SseEmitter emitter : batch) {
+                    if (send(emitter, event.get()) && counted) {
+                        sent.increment();
+                    }
+                }
+            }, sendExecutor));
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture[batches.size()]));
+    }
+
+    private boolean send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+            return true;
+        } catch (IOException e) {
+            log.debug("Could not write to notification stream, closing it: '{}'", e.getMessage());
+            emitters.remove(emitter);
+            emitter.completeWithError(e);
+            return false;
+        } catch (IllegalStateException e) {
+            // Already complete, its completion callback takes care of the subscriptions
+            emitters.remove(emitter);
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendExecutor.shutdownNow();
+    }
+
+    public int getSubscriberCount() {
+        return emitters.size();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("notifications.subscribers", getSubscriberCount()),
+                new Metric<>("notifications.sent", sent.sum())
+        );
+    }
+
+    @lombok.Value
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Key {
+        String userId;
+        String segmentId;
+        String packageRef;
+
+        public static Key forSegment(String userId, String segmentId) {
+            return new Key(userId, segmentId, null);
+        }
+
+        public static Key forPackage(String userId, String packageRef) {
+            return new Key(userId, null, packageRef);
+        }
+    }
+}
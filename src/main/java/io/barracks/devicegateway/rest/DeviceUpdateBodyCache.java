@@ -0,0 +1,112 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.rest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import io.barracks.devicegateway.exception.DeviceGatewayException;
+import io.barracks.devicegateway.model.DetailedUpdate;
+import io.barracks.devicegateway.rest.entity.DeviceUpdate;
+import lombok.EqualsAndHashCode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * Serialized {@link DeviceUpdate} bodies keyed by update and base URL, the only request dependent part of the answer.
+ * <p>
+ * Each entry remembers the {@link DetailedUpdate} it was built from and is rebuilt when the update or its package
+ * changed, so an edited update is never served stale.
+ */
+@Component
+public class DeviceUpdateBodyCache implements PublicMetrics {
+
+    private final ObjectMapper mapper;
+    private final Cache<Key, Body> bodies;
+
+    @Autowired
+    public DeviceUpdateBodyCache(
+            ObjectMapper mapper,
+            @Value("${io.barracks.update.body_cache.max_size:10000}") long maxSize
+    ) {
+        this.mapper = mapper;
+        this.bodies = CacheBuilder.newBuilder().maximumSize(maxSize).recordStats().build();
+    }
+
+    public byte[] get(DetailedUpdate update, String baseUrl, Supplier<DeviceUpdate> deviceUpdate) {
+        final Key key = new Key(update.getUpdate().getUuid(), baseUrl);
+        final Body cached = bodies.getIfPresent(key);
+        if (cached != null && cached.source.equals(update)) {
+            return cached.bytes;
+        }
+        try {
+            final byte[] bytes = mapper.writeValueAsBytes(deviceUpdate.get());
+            bodies.put(key, new Body(update, bytes));
+            return bytes;
+        } catch (JsonProcessingException e) {
+            throw new DeviceGatewayException("Failed to serialize update " + key.uuid, e);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final CacheStats stats = bodies.stats();
+        return Arrays.asList(
+                new Metric<>("update.body_cache.hits", stats.hitCount()),
+                new Metric<>("update.body_cache.misses", stats.missCount()),
+                new Metric<>("update.body_cache.size", bodies.size())
+        );
+    }
+
+    @EqualsAndHashCode
+    private static final class Key {
+        private final String uuid;
+        private final String baseUrl;
+
+        Key(String uuid, String baseUrl) {
+            this.uuid = uuid;
+            this.baseUrl = baseUrl;
+        }
+    }
+
+    private static final class Body {
+        private final DetailedUpdate source;
+        private final byte[] bytes;
+
+        Body(DetailedUpdate source, byte[] bytes) {
+            this.source = source;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.rest;
+
+import com.google.common.base.MoreObjects;
+import io.barracks.devicegateway.exception.DeviceGatewayException;
+import lombok.EqualsAndHashCode;
+import org.springframework.web.util.UriUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Download URL mapping split once into literal fragments, expanded against a base URL with escaped path segments.
+ * <p>
+ * Base URLs are validated once per protocol, host and prefix, then cached. The cache is bounded since the
+ * {@code Host} header is client controlled.
+ */
+final class DownloadUrlTemplate {
+
+    private static final int MAX_CACHED_BASE_URLS = 1024;
+    private static final int MAX_BUILDER_CAPACITY = 4096;
+    private static final ConcurrentMap<BaseUrlKey, String> BASE_URLS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private final String[] fragments;
+
+    DownloadUrlTemplate(String mapping) {
+        final List<String> literals = new ArrayList<>();
+        int start = 0;
+        int open = mapping.indexOf('{');
+        while (open >= 0) {
+            final int close = mapping.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed variable in " + mapping);
+            }
+            literals.add(mapping.substring(start, open));
+            start = close + 1;
+            open = mapping.indexOf('{', start);
+        }
+        literals.add(mapping.substring(start));
+        this.fragments = literals.toArray(new String[literals.size()]);
+    }
+
+    String expand(String baseUrl, String... values) {
+        if (values.length != fragments.length - 1) {
+            throw new IllegalArgumentException("Expected " + (fragments.length - 1) + " values but got " + values.length);
+        }
+        StringBuilder builder = BUILDER.get();
+        if (builder.capacity() > MAX_BUILDER_CAPACITY) {
+            builder = new StringBuilder(256);
+            BUILDER.set(builder);
+        }
+        builder.setLength(0);
+        builder.append(baseUrl).append(fragments[0]);
+        for (int i = 0; i < values.length; i++) {
+            appendPathSegment(builder, values[i]);
+            builder.append(fragments[i + 1]);
+        }
+        return builder.toString();
+    }
+
+    static String getBaseUrl(HttpServletRequest request) {
+        final BaseUrlKey key = new BaseUrlKey(
+                MoreObjects.firstNonNull(request.getHeader("X-Forwarded-Proto"), request.isSecure() ? "https" : "http"),
+                MoreObjects.firstNonNull(request.getHeader("Host"), ""),
+                MoreObjects.firstNonNull(request.getHeader("X-Forwarded-Prefix"), "")
+        );
+        final String cached = BASE_URLS.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            final String baseUrl = key.toUrl().toExternalForm();
+            if (BASE_URLS.size() < MAX_CACHED_BASE_URLS) {
+                BASE_URLS.putIfAbsent(key, baseUrl);
+            }
+            return baseUrl;
+        } catch (MalformedURLException e) {
+            throw new DeviceGatewayException("Failed to create download URL for " + request, e);
+        }
+    }
+
+    private static void appendPathSegment(StringBuilder builder, String segment) {
+        if (segment == null) {
+            return;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            if (!isPathSegmentChar(segment.charAt(i))) {
+                try {
+                    builder.append(UriUtils.encodePathSegment(segment, "UTF-8"));
+                    return;
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        builder.append(segment);
+    }
+
+    private static boolean isPathSegmentChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~'
+                || c == '!' || c == '$' || c == '&' || c == '\'' || c == '(' || c == ')'
+                || c == '*' || c == '+' || c == ',' || c == ';' || c == '=' || c == ':' || c == '@';
+    }
+
+    @EqualsAndHashCode
+    private static final class BaseUrlKey {
+        private final String protocol;
+        private final String host;
+        private final String prefix;
+
+        BaseUrlKey(String protocol, String host, String prefix) {
+            this.protocol = protocol;
+            this.host = host;
+            this.prefix = prefix;
+        }
+
+        URL toUrl() throws MalformedURLException {
+            final String[] splitHost = host.split(":");
+            if (splitHost.length > 1) {
+                return new URL(protocol, splitHost[0], Integer.valueOf(splitHost[1]), prefix);
+            }
+            return new URL(protocol, splitHost[0], prefix);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.rest;
+
+import com.google.common.base.Strings;
+import io.barracks.devicegateway.exception.NoUpdateAvailableException;
+import io.barracks.devicegateway.manager.DeviceUpdateManager;
+import io.barracks.devicegateway.metrics.PingMetrics;
+import io.barracks.devicegateway.model.*;
+import io.barracks.devicegateway.notification.UpdateNotificationRegistry;
+import io.barracks.devicegateway.rest.entity.DeviceRequestEntity;
+import io.barracks.devicegateway.security.UserAuthentication;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.Valid;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+/**
+ * Server-sent event streams on which devices are told when an update is available, instead of polling for it.
+ * <p>
+ * The streams carry {@code update-available} events, a device receiving one checks or resolves as usual.
+ */
+@Slf4j
+@RestController
+@ConditionalOnProperty(name = "io.barracks.notifications.enabled", havingValue = "true")
+public class NotificationResource {
+
+    private final DeviceUpdateManager deviceUpdateManager;
+    private final UpdateNotificationRegistry registry;
+    private final PingMetrics pingMetrics;
+
+    @Autowired
+    public NotificationResource(DeviceUpdateManager deviceUpdateManager, UpdateNotificationRegistry registry, PingMetrics pingMetrics) {
+        this.deviceUpdateManager = deviceUpdateManager;
+        this.registry = registry;
+        this.pingMetrics = pingMetrics;
+    }
+
+    /**
+     * Registers the device like {@code /update/check} does, then waits for an update to be published to its segment.
+     * The event is sent right away when an update is already available.
+     */
+    @RequestMapping(value = "/update/notifications", method = RequestMethod.POST, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeToUpdates(HttpServletRequest request, @Valid @RequestBody DeviceRequestEntity deviceRequest, Principal principal) {
+        final User user = ((UserAuthentication) principal).getDetails();
+        pingMetrics.increment(PingMetrics.ApiVersion.V1, user);
+        final DeviceInfo deviceInfo = DeviceInfo.builder()
+                .userId(user.getId())
+                .unitId(deviceRequest.getUnitId())
+                .versionId(deviceRequest.getVersionId())
+                .additionalProperties(deviceRequest.getCustomClientData())
+                .deviceIP(getDeviceIp(request))
+                .userAgent(request.getHeader("user-agent"))
+                .build();
+        final DeviceInfo savedDeviceInfo = deviceUpdateManager.registerDevice(deviceInfo);
+        final SseEmitter emitter = registry.subscribe(Collections.singleton(
+                UpdateNotificationRegistry.Key.forSegment(user.getId(), savedDeviceInfo.getSegmentId())
+        ));
+        try {
+            final DetailedUpdate update = deviceUpdateManager.getUpdateForDevice(savedDeviceInfo);
+            registry.notify(emitter, UpdateNotification.builder()
+                    .userId(user.getId())
+                    .segmentId(savedDeviceInfo.getSegmentId())
+                    .updateId(update.getUpdate().getUuid())
+                    .build()
+            );
+        } catch (NoUpdateAvailableException e) {
+            log.debug("No update available yet for device '{}'", savedDeviceInfo.getUnitId());
+        }
+        return emitter;
+    }
+
+    /**
+     * Waits for a new version of one of the device's packages. Devices subscribe before calling {@code /resolve} so
+     * that no version published in between is missed.
+     */
+    @RequestMapping(value = "/resolve/notifications", method = RequestMethod.POST, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeToVersions(@Valid @RequestBody DeviceRequest deviceRequest, Principal principal) {
+        return registry.subscribe(
+                deviceRequest.getPackages().stream()
+                        .map(pkg -> UpdateNotificationRegistry.Key.forPackage(principal.getName(), pkg.getReference()))
+                        .collect(Collectors.toSet())
+        );
+    }
+
+    private String getDeviceIp(HttpServletRequest request) {
+        final String ipData = request.getHeader("X-Forwarded-For");
+        if(!Strings.isNullOrEmpty(ipData)) {
+            final String ips[] = ipData.split(",");
+            return ips[0];
+        } else {
+            return request.getRemoteAddr();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.rest;
+
+import com.google.common.hash.Hashing;
+import io.barracks.devicegateway.metrics.PingMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells devices when to poll again, in seconds.
+ * <p>
+ * The interval is {@code io.barracks.poll.interval}, stretched while the node receives more polls per second than
+ * {@code io.barracks.poll.target_rate}. Each device is then given a fixed position in the interval, derived from its
+ * unit identifier, so that devices polling in sync (e.g. after a power outage) drift apart.
+ */
+@Component
+public class PollHints {
+
+    private static final double RATE_DECAY = 0.8;
+
+    private final PingMetrics pingMetrics;
+    private final long interval;
+    private final long maxInterval;
+    private final double targetRate;
+    private final double jitter;
+
+    private volatile double rate;
+    private long lastTotal;
+    private long lastSample = System.nanoTime();
+
+    @Autowired
+    public PollHints(
+            PingMetrics pingMetrics,
+            @Value("${io.barracks.poll.interval:300}") long interval,
+            @Value("${io.barracks.poll.max_interval:3600}") long maxInterval,
+            @Value("${io.barracks.poll.target_rate:200}") double targetRate,
+            @Value("${io.barracks.poll.jitter:0.5}") double jitter
+    ) {
+        this.pingMetrics = pingMetrics;
+        this.interval = interval;
+        this.maxInterval = maxInterval;
+        this.targetRate = targetRate;
+        this.jitter = jitter;
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public void sample() {
+        sample(System.nanoTime());
+    }
+
+    /**
+     * The poll rate follows increases immediately and decays slowly, so that intervals stay stretched for the whole
+     * herd instead of only its first second.
+     */
+    synchronized void sample(long now) {
+        final long total = pingMetrics.getTotal();
+        final double current = (total - lastTotal) * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, now - lastSample);
+        lastTotal = total;
+        lastSample = now;
+        rate = current >= rate ? current : rate * RATE_DECAY + current * (1 - RATE_DECAY);
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public long getInterval() {
+        return Math.min(maxInterval, Math.round(interval * Math.max(1, rate / targetRate)));
+    }
+
+    public int nextPoll(String unitId) {
+        final double position = unitId == null ? 0.5 :
+                (Hashing.murmur3_32().hashString(unitId, StandardCharsets.UTF_8).asInt() & Integer.MAX_VALUE) / (double) Integer.MAX_VALUE;
+        return (int) Math.max(1, Math.round(getInterval() * (1 - jitter + 2 * jitter * position)));
+    }
+}
@@ -24,10 +24,11 @@
 
 package io.barracks.devicegateway.rest;
 
-import com.google.common.base.MoreObjects;
 import com.google.common.base.Strings;
 import io.barracks.devicegateway.exception.DeviceGatewayException;
 import io.barracks.devicegateway.manager.DeviceUpdateManager;
+import io.barracks.devicegateway.metrics.CallTimers;
+import io.barracks.devicegateway.metrics.PingMetrics;
 import io.barracks.devicegateway.model.DetailedUpdate;
 import io.barracks.devicegateway.model.DeviceInfo;
 import io.barracks.devicegateway.model.Update;
@@ -38,7 +39,7 @@ import io.barracks.devicegateway.rest.entity.DeviceUpdate;
 import io.barracks.devicegateway.security.UserAuthentication;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
@@ -46,8 +47,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.security.Principal;
 
 @Slf4j
@@ -55,34 +54,59 @@ import java.security.Principal;
 @RequestMapping("/update")
 public class UpdateResource {
 
+    private static final DownloadUrlTemplate DOWNLOAD_URL_TEMPLATE = new DownloadUrlTemplate("/update/download/{uuid}");
+
     private final DeviceUpdateManager deviceUpdateManager;
 
-    private final CounterService counter;
+    private final PingMetrics pingMetrics;
+
+    private final DeviceUpdateBodyCache deviceUpdateBodyCache;
+
+    private final PollHints pollHints;
+
+    private final CallTimers.Timer checkForUpdateTimer;
+    private final CallTimers.Timer downloadUpdateTimer;
 
     @Autowired
-    public UpdateResource(DeviceUpdateManager deviceUpdateManager, CounterService counter) {
+    public UpdateResource(DeviceUpdateManager deviceUpdateManager, PingMetrics pingMetrics, DeviceUpdateBodyCache deviceUpdateBodyCache, PollHints pollHints, CallTimers callTimers) {
         this.deviceUpdateManager = deviceUpdateManager;
-        this.counter = counter;
+        this.pingMetrics = pingMetrics;
+        this.deviceUpdateBodyCache = deviceUpdateBodyCache;
+        this.pollHints = pollHints;
+        this.checkForUpdateTimer = callTimers.timer("updateresource", "checkForUpdate");
+        this.downloadUpdateTimer = callTimers.timer("updateresource", "downloadUpdate");
     }
 
-    @ResponseBody
-    @RequestMapping(value = "/check", method = RequestMethod.POST)
-    public DeviceUpdate checkForUpdate(HttpServletRequest request, @Valid @RequestBody DeviceRequestEntity deviceRequest, Principal principal) {
-        final String deviceIP = getDeviceIp(request);
-        final String userAgent = getUserAgent(request);
-        final User user = ((UserAuthentication) principal).getDetails();
-        incrementPingMetric(user);
-        final DeviceInfo deviceInfo = DeviceInfo.builder()
-                .userId(user.getId())
-                .unitId(deviceRequest.getUnitId())
-                .versionId(deviceRequest.getVersionId())
-                .additionalProperties(deviceRequest.getCustomClientData())
-                .deviceIP(deviceIP)
-                .userAgent(userAgent)
-                .build();
-        final DetailedUpdate update = deviceUpdateManager.checkForUpdate(deviceInfo);
-        final String url = buildDownloadUrl(request, update.getUpdate()).toString();
-        return convertToDeviceUpdate(update, url);
+    @RequestMapping(value = "/check", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public void checkForUpdate(HttpServletRequest request, @Valid @RequestBody DeviceRequestEntity deviceRequest, Principal principal, HttpServletResponse response) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            final String deviceIP = getDeviceIp(request);
+            final String userAgent = getUserAgent(request);
+            final User user = ((UserAuthentication) principal).getDetails();
+            incrementPingMetric(user);
+            // A header rather than a DeviceUpdate field, so that cached bodies stay shared between devices
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(pollHints.nextPoll(deviceRequest.getUnitId())));
+            final DeviceInfo deviceInfo = DeviceInfo.builder()
+                    .userId(user.getId())
+                    .unitId(deviceRequest.getUnitId())
+                    .versionId(deviceRequest.getVersionId())
+                    .additionalProperties(deviceRequest.getCustomClientData())
+                    .deviceIP(deviceIP)
+                    .userAgent(userAgent)
+                    .build();
+            final DetailedUpdate update = deviceUpdateManager.checkForUpdate(deviceInfo);
+            final byte[] body = deviceUpdateBodyCache.get(
+                    update,
+                    DownloadUrlTemplate.getBaseUrl(request),
+                    () -> convertToDeviceUpdate(update, buildDownloadUrl(request, update.getUpdate()))
+            );
+            response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        } finally {
+            checkForUpdateTimer.record(start);
+        }
     }
 
     private DeviceUpdate convertToDeviceUpdate(DetailedUpdate update, String url) {
@@ -113,37 +137,27 @@ public class UpdateResource {
     }
 
     private void incrementPingMetric(User user) {
-        counter.increment("ping.v1." + user.getEmail().replace("@", "_at_").replace(".", "_"));
+        pingMetrics.increment(PingMetrics.ApiVersion.V1, user);
     }
 
     @RequestMapping(value = "/download/{uuid}", method = RequestMethod.GET, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
     public void downloadUpdate(@PathVariable("uuid") String updateId, Principal principal, HttpServletResponse response) {
+        final long start = System.nanoTime();
         try {
-            long length = deviceUpdateManager.downloadUpdate(principal.getName(), updateId, response.getOutputStream());
-            response.setStatus(HttpServletResponse.SC_OK);
-            response.setContentLength((int) length);
-            response.flushBuffer();
-        } catch (IOException e) {
-            throw new DeviceGatewayException("Could not get output stream from " + response, e);
+            try {
+                long length = deviceUpdateManager.downloadUpdate(principal.getName(), updateId, response.getOutputStream());
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setContentLength((int) length);
+                response.flushBuffer();
+            } catch (IOException e) {
+                throw new DeviceGatewayException("Could not get output stream from " + response, e);
+            }
+        } finally {
+            downloadUpdateTimer.record(start);
         }
     }
 
-    URL buildDownloadUrl(HttpServletRequest request, Update update) {
-        try {
-            final String forwardedProtoHeader = request.getHeader("X-Forwarded-Proto");
-            final String forwardedPrefixHeader = request.getHeader("X-Forwarded-Prefix");
-            final String hostHeader = MoreObjects.firstNonNull(request.getHeader("Host"), "");
-            final String[] splitHostHeader = hostHeader.split(":");
-            final String host = splitHostHeader[0];
-            final Integer port = splitHostHeader.length > 1 ? Integer.valueOf(splitHostHeader[1]) : null;
-            final String protocol = request.isSecure() ? "https" : "http";
-            final String updateFilePath = "/update/download/" + update.getUuid();
-            if (port != null) {
-                return new URL(MoreObjects.firstNonNull(forwardedProtoHeader, protocol), host, port, MoreObjects.firstNonNull(forwardedPrefixHeader, "") + updateFilePath);
-            }
-            return new URL(MoreObjects.firstNonNull(forwardedProtoHeader, protocol), host, MoreObjects.firstNonNull(forwardedPrefixHeader, "") + updateFilePath);
-        } catch (MalformedURLException e) {
-            throw new DeviceGatewayException("Failed to create download URL for " + request, e);
-        }
+    String buildDownloadUrl(HttpServletRequest request, Update update) {
+        return DOWNLOAD_URL_TEMPLATE.expand(DownloadUrlTemplate.getBaseUrl(request), update.getUuid());
     }
 }
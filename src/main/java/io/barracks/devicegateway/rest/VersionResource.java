@@ -25,30 +25,44 @@
 
 package io.barracks.devicegateway.rest;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
-import io.barracks.commons.util.Endpoint;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import io.barracks.devicegateway.exception.DeviceGatewayException;
+import io.barracks.devicegateway.exception.UpstreamUnavailableException;
+import io.barracks.devicegateway.manager.DeviceBatchManager;
 import io.barracks.devicegateway.manager.DeviceManager;
 import io.barracks.devicegateway.manager.DeviceUpdateManager;
+import io.barracks.devicegateway.metrics.CallTimers;
+import io.barracks.devicegateway.metrics.PingMetrics;
 import io.barracks.devicegateway.model.DeviceRequest;
 import io.barracks.devicegateway.model.ResolvedVersions;
 import io.barracks.devicegateway.model.User;
 import io.barracks.devicegateway.model.Version;
+import io.barracks.devicegateway.rest.entity.BatchDeviceRequest;
+import io.barracks.devicegateway.rest.entity.BatchResolvedVersions;
 import io.barracks.devicegateway.security.UserAuthentication;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.actuate.metrics.CounterService;
-import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -57,30 +71,122 @@ import java.util.stream.Collectors;
 public class VersionResource {
 
     private static final String DOWNLOAD_URI_MAPPING = "/packages/{packageRef}/versions/{versionId}/file";
-    static final Endpoint DOWNLOAD_ENDPOINT = Endpoint.from(HttpMethod.GET, DOWNLOAD_URI_MAPPING);
+    private static final DownloadUrlTemplate DOWNLOAD_URL_TEMPLATE = new DownloadUrlTemplate(DOWNLOAD_URI_MAPPING);
 
     private final DeviceUpdateManager deviceUpdateManager;
     private final DeviceManager deviceManager;
-    private final CounterService counter;
+    private final DeviceBatchManager deviceBatchManager;
+    private final PingMetrics pingMetrics;
+    private final ObjectMapper objectMapper;
+    private final PollHints pollHints;
+
+    private final CallTimers.Timer resolveVersionsTimer;
+    private final CallTimers.Timer downloadVersionTimer;
+    private final CallTimers.Timer resolveBatchTimer;
 
     @Autowired
-    public VersionResource(DeviceUpdateManager deviceUpdateManager, DeviceManager deviceManager, CounterService counter) {
+    public VersionResource(DeviceUpdateManager deviceUpdateManager, DeviceManager deviceManager, DeviceBatchManager deviceBatchManager, PingMetrics pingMetrics, ObjectMapper objectMapper, PollHints pollHints, CallTimers callTimers) {
         this.deviceUpdateManager = deviceUpdateManager;
         this.deviceManager = deviceManager;
-        this.counter = counter;
+        this.deviceBatchManager = deviceBatchManager;
+        this.pingMetrics = pingMetrics;
+        this.objectMapper = objectMapper;
+        this.pollHints = pollHints;
+        this.resolveVersionsTimer = callTimers.timer("versionresource", "resolveVersions");
+        this.downloadVersionTimer = callTimers.timer("versionresource", "downloadVersion");
+        this.resolveBatchTimer = callTimers.timer("versionresource", "resolveBatch");
     }
 
     @RequestMapping(method = RequestMethod.POST, value = "/resolve")
-    public ResolvedVersions resolveVersions(HttpServletRequest request, @RequestBody @Valid DeviceRequest deviceRequest, Principal principal) {
+    public ResponseEntity<ResolvedVersions> resolveVersions(HttpServletRequest request, @RequestBody @Valid DeviceRequest deviceRequest, Principal principal) {
+        final long start = System.nanoTime();
+        try {
+            final User user = ((UserAuthentication) principal).getDetails();
+            incrementPingMetric(user);
+            final String baseUrl = getBaseUrl(request);
+            final DeviceRequest authenticatedRequest = deviceRequest.toBuilder()
+                    .userId(principal.getName())
+                    .userAgent(getUserAgent(request))
+                    .ipAddress(getIpAddress(request))
+                    .build();
+            final ResolvedVersions resolvedVersions = deviceManager.resolveVersions(authenticatedRequest);
+            final int nextPoll = pollHints.nextPoll(deviceRequest.getUnitId());
+            final ResolvedVersions response = withVersionUrls(baseUrl, resolvedVersions).nextPoll(nextPoll).build();
+            final String eTag = getETag(response);
+            if (isNotModified(request, eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).header(HttpHeaders.RETRY_AFTER, String.valueOf(nextPoll)).build();
+            }
+            return ResponseEntity.ok().eTag(eTag).header(HttpHeaders.RETRY_AFTER, String.valueOf(nextPoll)).body(response);
+        } finally {
+            resolveVersionsTimer.record(start);
+        }
+    }
+
+    /**
+     * Resolves the devices behind an edge hub with a single authentication. Results are streamed as a JSON array, in
+     * the order devices complete. The stream runs on the bounded pool of
+     * {@link io.barracks.devicegateway.config.MvcAsyncConfig}, which also times it out.
+     */
+    @RequestMapping(method = RequestMethod.POST, value = "/resolve/batch", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<StreamingResponseBody> resolveBatch(HttpServletRequest request, @RequestBody @Valid BatchDeviceRequest batchRequest, Principal principal) {
+        deviceBatchManager.checkSize(batchRequest.getRequests().size());
         final User user = ((UserAuthentication) principal).getDetails();
-        incrementPingMetric(user);
         final String baseUrl = getBaseUrl(request);
-        final DeviceRequest authenticatedRequest = deviceRequest.toBuilder()
-                .userId(principal.getName())
-                .userAgent(getUserAgent(request))
-                .ipAddress(getIpAddress(request))
-                .build();
-        final ResolvedVersions resolvedVersions = deviceManager.resolveVersions(authenticatedRequest);
+        final String userAgent = getUserAgent(request);
+        final String ipAddress = getIpAddress(request);
+        final List<DeviceRequest> authenticatedRequests = new ArrayList<>(batchRequest.getRequests().size());
+        for (DeviceRequest deviceRequest : batchRequest.getRequests()) {
+            incrementPingMetric(user);
+            authenticatedRequests.add(deviceRequest.toBuilder()
+                    .userId(principal.getName())
+                    .userAgent(userAgent)
+                    .ipAddress(ipAddress)
+                    .build());
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(outputStream -> writeBatch(authenticatedRequests, baseUrl, outputStream));
+    }
+
+    void writeBatch(List<DeviceRequest> requests, String baseUrl, OutputStream outputStream) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            final JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+            generator.writeStartArray();
+            deviceBatchManager.resolveVersions(requests, new DeviceBatchManager.Listener() {
+                @Override
+                public void onResolved(DeviceRequest request, ResolvedVersions resolvedVersions) throws IOException {
+                    writeResult(generator, BatchResolvedVersions.builder()
+                            .unitId(request.getUnitId())
+                            .versions(withVersionUrls(baseUrl, resolvedVersions)
+                                    .nextPoll(pollHints.nextPoll(request.getUnitId()))
+                                    .build())
+                            .build());
+                }
+
+                @Override
+                public void onFailed(DeviceRequest request, RuntimeException failure) throws IOException {
+                    final HttpStatus status = failure instanceof UpstreamUnavailableException ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.INTERNAL_SERVER_ERROR;
+                    writeResult(generator, BatchResolvedVersions.builder()
+                            .unitId(request.getUnitId())
+                            .status(status.value())
+                            .error(failure.getMessage())
+                            .build());
+                }
+            });
+            generator.writeEndArray();
+            generator.flush();
+        } finally {
+            resolveBatchTimer.record(start);
+        }
+    }
+
+    private void writeResult(JsonGenerator generator, BatchResolvedVersions result) throws IOException {
+        generator.writeObject(result);
+        generator.flush();
+    }
+
+    private ResolvedVersions.ResolvedVersionsBuilder withVersionUrls(String baseUrl, ResolvedVersions resolvedVersions) {
         return ResolvedVersions.builder()
                 .unavailable(resolvedVersions.getUnavailable())
                 .unchanged(resolvedVersions.getUnchanged())
@@ -93,9 +199,52 @@ public class VersionResource {
                         resolvedVersions.getChanged().stream()
                                 .map(version -> addVersionUrl(baseUrl, version))
                                 .collect(Collectors.toList())
-                )
-                .build();
+                );
+    }
+
+    String getETag(ResolvedVersions resolvedVersions) {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        putVersions(hasher, "changed", resolvedVersions.getChanged());
+        putVersions(hasher, "available", resolvedVersions.getAvailable());
+        putVersions(hasher, "unchanged", resolvedVersions.getUnchanged());
+        putVersions(hasher, "unavailable", resolvedVersions.getUnavailable());
+        return "\"" + hasher.hash().toString() + "\"";
+    }
+
+    private void putVersions(Hasher hasher, String category, List<Version> versions) {
+        putString(hasher, category);
+        hasher.putInt(versions.size());
+        for (Version version : versions) {
+            putString(hasher, version.getReference());
+            putString(hasher, version.getVersion());
+            putString(hasher, version.getUrl());
+            putString(hasher, version.getMd5());
+            putString(hasher, version.getFilename());
+            hasher.putLong(Optional.ofNullable(version.getSize()).orElse(-1L));
+            putString(hasher, String.valueOf(version.getCustomUpdateData()));
+        }
+    }
+
+    private void putString(Hasher hasher, String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+        }
+    }
 
+    boolean isNotModified(HttpServletRequest request, String eTag) {
+        final String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (Strings.isNullOrEmpty(ifNoneMatch)) {
+            return false;
+        }
+        for (String candidate : Splitter.on(',').trimResults().omitEmptyStrings().split(ifNoneMatch)) {
+            final String value = candidate.startsWith("W/") ? candidate.substring(2) : candidate;
+            if (value.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private String getUserAgent(HttpServletRequest request) {
@@ -112,42 +261,34 @@ public class VersionResource {
         }
     }
 
-    private Version addVersionUrl(String baseUrl, Version version) {
+    Version addVersionUrl(String baseUrl, Version version) {
         return version.toBuilder()
-                .url(DOWNLOAD_ENDPOINT.withBase(baseUrl).getURI(version.getReference(), version.getVersion()).toString())
+                .url(DOWNLOAD_URL_TEMPLATE.expand(baseUrl, version.getReference(), version.getVersion()))
                 .build();
     }
 
     String getBaseUrl(HttpServletRequest request) {
-        try {
-            final String protocol = Optional.ofNullable(request.getHeader("X-Forwarded-Proto")).orElse(request.isSecure() ? "https" : "http");
-            final String hostHeader = Optional.ofNullable(request.getHeader("Host")).orElse("");
-            final String[] splitHostHeader = hostHeader.split(":");
-            final String host = splitHostHeader[0];
-            final Integer port = splitHostHeader.length > 1 ? Integer.valueOf(splitHostHeader[1]) : null;
-            final String pathPrefix = Optional.ofNullable(request.getHeader("X-Forwarded-Prefix")).orElse("");
-            if (port != null) {
-                return new URL(protocol, host, port, pathPrefix).toExternalForm();
-            }
-            return new URL(protocol, host, pathPrefix).toExternalForm();
-        } catch (MalformedURLException e) {
-            throw new DeviceGatewayException("Failed to create download URL for " + request, e);
-        }
+        return DownloadUrlTemplate.getBaseUrl(request);
     }
 
     @RequestMapping(value = DOWNLOAD_URI_MAPPING, method = RequestMethod.GET, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
     public void downloadVersion(@PathVariable("packageRef") String packageRef, @PathVariable("versionId") String versionId, Principal principal, HttpServletResponse response) {
+        final long start = System.nanoTime();
         try {
-            deviceUpdateManager.downloadVersion(principal.getName(), packageRef, versionId, response.getOutputStream());
-            response.setStatus(HttpServletResponse.SC_OK);
-            response.flushBuffer();
-        } catch (IOException e) {
-            throw new DeviceGatewayException("Could not get output stream from " + response, e);
+            try {
+                deviceUpdateManager.downloadVersion(principal.getName(), packageRef, versionId, response.getOutputStream());
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.flushBuffer();
+            } catch (IOException e) {
+                throw new DeviceGatewayException("Could not get output stream from " + response, e);
+            }
+        } finally {
+            downloadVersionTimer.record(start);
         }
     }
 
     private void incrementPingMetric(User user) {
-        counter.increment("ping.v2." + user.getEmail().replace("@", "_at_").replace(".", "_"));
+        pingMetrics.increment(PingMetrics.ApiVersion.V2, user);
     }
 
 }
@@ -27,11 +27,11 @@ package io.barracks.devicegateway.rest.entity;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.barracks.devicegateway.model.utils.ImmutableMaps;
 import lombok.*;
 import org.hibernate.validator.constraints.NotBlank;
 
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Builder(toBuilder = true)
@@ -46,7 +46,6 @@ public class DeviceRequestEntity {
     private final String unitId;
     @NotBlank
     private final String versionId;
-    @Singular("clientData")
     private final Map<String, Object> customClientData;
 
     private final String deviceIP;
@@ -59,11 +58,22 @@ public class DeviceRequestEntity {
         return DeviceRequestEntity.builder()
                 .unitId(unitId)
                 .versionId(versionId)
-                .customClientData(customClientData == null ? Collections.emptyMap() : new LinkedHashMap<>(customClientData))
+                // The map was just created by Jackson, it is not shared
+                .customClientData(customClientData == null ? Collections.emptyMap() : Collections.unmodifiableMap(customClientData))
                 .build();
     }
 
-    public Map<String, Object> getCustomClientData() {
-        return new LinkedHashMap<>(customClientData);
+    public static class DeviceRequestEntityBuilder {
+        private Map<String, Object> customClientData = Collections.emptyMap();
+
+        public DeviceRequestEntityBuilder customClientData(Map<String, Object> customClientData) {
+            this.customClientData = ImmutableMaps.snapshot(customClientData);
+            return this;
+        }
+
+        public DeviceRequestEntityBuilder clientData(String key, Object value) {
+            this.customClientData = ImmutableMaps.with(customClientData, key, value);
+            return this;
+        }
     }
 }
@@ -0,0 +1,200 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adaptive limit on the device requests processed at once, enabled with {@code io.barracks.admission.enabled}.
+ * <p>
+ * Every {@code io.barracks.admission.window} milliseconds the average latency of the window is compared with a long
+ * term average: the limit shrinks in proportion when latency grows, and otherwise grows by the square root of the limit
+ * as long as the requests actually use it. Low priority requests only get {@code low_priority_share} of the limit and
+ * are shed first, high priority requests may go {@code high_priority_reserve} requests beyond it, within
+ * {@code max_limit}.
+ * <p>
+ * Only requests released with their start time feed the latency average: an asynchronous request lasts as long as its
+ * stream, which says nothing about the load of the node.
+ */
+@Component
+public class AdmissionControl implements PublicMetrics {
+
+    public enum Priority {
+        LOW, NORMAL, HIGH
+    }
+
+    private static final double LONG_RTT_DECAY = 0.99;
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double lowPriorityShare;
+    private final int highPriorityReserve;
+    private final double smoothing;
+    private final int retryAfter;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder rttSum = new LongAdder();
+    private final LongAdder rttCount = new LongAdder();
+    private final LongAdder[] rejected = new LongAdder[Priority.values().length];
+
+    private volatile double limit;
+    private double longRtt;
+
+    @Autowired
+    public AdmissionControl(
+            @Value("${io.barracks.admission.enabled:false}") boolean enabled,
+            @Value("${io.barracks.admission.initial_limit:100}") int initialLimit,
+            @Value("${io.barracks.admission.min_limit:20}") int minLimit,
+            @Value("${io.barracks.admission.max_limit:1000}") int maxLimit,
+            @Value("${io.barracks.admission.low_priority_share:0.5}") double lowPriorityShare,
+            @Value("${io.barracks.admission.high_priority_reserve:10}") int highPriorityReserve,
+            @Value("${io.barracks.admission.smoothing:0.2}") double smoothing,
+            @Value("${io.barracks.admission.retry_after:30}") int retryAfter
+    ) {
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.lowPriorityShare = lowPriorityShare;
+        this.highPriorityReserve = highPriorityReserve;
+        this.smoothing = smoothing;
+        this.retryAfter = retryAfter;
+        this.limit = initialLimit;
+        for (int i = 0; i < rejected.length; i++) {
+            rejected[i] = new LongAdder();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true if the request may proceed, in which case {@link #release(long)} or {@link #release()} must be called
+     * once it completes.
+     */
+    public boolean tryAcquire(Priority priority) {
+        final int threshold = getThreshold(priority);
+        while (true) {
+            final int current = inFlight.get();
+            if (current >= threshold) {
+                rejected[priority.ordinal()].increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                peakInFlight.accumulateAndGet(current + 1, Math::max);
+                return true;
+            }
+        }
+    }
+
+    public void release(long startNanos) {
+        inFlight.decrementAndGet();
+        rttSum.add(System.nanoTime() - startNanos);
+        rttCount.increment();
+    }
+
+    /**
+     * Releases a request without sampling its latency.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    int getThreshold(Priority priority) {
+        switch (priority) {
+            case LOW:
+                return (int) Math.max(1, limit * lowPriorityShare);
+            case HIGH:
+                return (int) Math.min(maxLimit, limit + highPriorityReserve);
+            default:
+                return (int) limit;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${io.barracks.admission.window:100}")
+    public synchronized void update() {
+        final long count = rttCount.sumThenReset();
+        final long sum = rttSum.sumThenReset();
+        final int peak = peakInFlight.getAndSet(inFlight.get());
+        if (count == 0) {
+            return;
+        }
+        final double shortRtt = sum / (double) count;
+        longRtt = longRtt == 0 ? shortRtt : longRtt * LONG_RTT_DECAY + shortRtt * (1 - LONG_RTT_DECAY);
+        final double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, longRtt / shortRtt));
+        if (gradient >= 1.0 && peak < limit / 2) {
+            // Latency is fine but the limit is not what holds requests back, growing it would prove nothing
+            return;
+        }
+        final double target = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + target * smoothing));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected(Priority priority) {
+        return rejected[priority.ordinal()].sum();
+    }
+
+    /**
+     * Seconds before a shed request should be retried, spread around {@code io.barracks.admission.retry_after} so that
+     * rejected devices do not all come back together.
+     */
+    public int nextRetry() {
+        return retryAfter / 2 + ThreadLocalRandom.current().nextInt(retryAfter + 1);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>(2 + rejected.length);
+        metrics.add(new Metric<>("admission.limit", getLimit()));
+        metrics.add(new Metric<>("admission.in_flight", getInFlight()));
+        for (Priority priority : Priority.values()) {
+            metrics.add(new Metric<>("admission.rejected." + priority.name().toLowerCase(), getRejected(priority)));
+        }
+        return metrics;
+    }
+}
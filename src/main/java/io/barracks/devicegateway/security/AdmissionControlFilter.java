@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.GenericFilterBean;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Sheds device requests through {@link AdmissionControl} before they are authenticated, so that a rejection costs no
+ * upstream call.
+ * <p>
+ * Downloads are never shed: a download follows an update the device was already given, and its duration depends on
+ * the device link rather than on the load of the node. A resolve with an {@code If-None-Match}
+ * header comes from a device that already holds an answer and has the lowest priority. Nothing tells a first check
+ * apart before the body is read, so every other request has the normal priority.
+ * <p>
+ * A request going asynchronous keeps its slot until it completes, without a latency sample. A notification subscription
+ * only holds it until the stream is open, the stream itself is parked and costs the node nothing until an event.
+ */
+public class AdmissionControlFilter extends GenericFilterBean {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final AdmissionControl admissionControl;
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    public AdmissionControlFilter(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        final HttpServletRequest httpRequest = (HttpServletRequest) request;
+        final String path = urlPathHelper.getPathWithinApplication(httpRequest);
+        // Asynchronous and error dispatches belong to a request that was already admitted
+        final AdmissionControl.Priority priority = httpRequest.getDispatcherType() == DispatcherType.REQUEST ? getPriority(path, httpRequest) : null;
+        if (priority == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        if (!admissionControl.tryAcquire(priority)) {
+            logger.debug("Shedding {} request to '{}'", priority, httpRequest.getRequestURI());
+            final HttpServletResponse httpResponse = (HttpServletResponse) response;
+            httpResponse.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(admissionControl.nextRetry()));
+            httpResponse.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        final long start = System.nanoTime();
+        boolean async = false;
+        try {
+            filterChain.doFilter(request, response);
+            if (request.isAsyncStarted() && !TransferPaths.isStream(path)) {
+                request.getAsyncContext().addListener(new ReleaseListener());
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                admissionControl.release(start);
+            }
+        }
+    }
+
+    private AdmissionControl.Priority getPriority(String path, HttpServletRequest request) {
+        if (TransferPaths.isTransfer(path)) {
+            return null;
+        }
+        if ("/resolve".equals(path)) {
+            return request.getHeader(HttpHeaders.IF_NONE_MATCH) != null ? AdmissionControl.Priority.LOW : AdmissionControl.Priority.NORMAL;
+        }
+        return AdmissionControl.Priority.NORMAL;
+    }
+
+    private class ReleaseListener implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            admissionControl.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
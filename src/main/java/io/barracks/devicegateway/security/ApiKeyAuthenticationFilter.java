@@ -26,19 +26,26 @@ package io.barracks.devicegateway.security;
 
 import io.barracks.devicegateway.client.AuthorizationServiceClient;
 import io.barracks.devicegateway.client.exception.AuthorizationServiceClientException;
+import io.barracks.devicegateway.exception.UpstreamUnavailableException;
 import io.barracks.devicegateway.model.ApiKey;
 import io.barracks.devicegateway.model.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.filter.GenericFilterBean;
+import org.springframework.web.util.UrlPathHelper;
 
+import javax.servlet.DispatcherType;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 public class ApiKeyAuthenticationFilter extends GenericFilterBean {
 
@@ -46,19 +53,41 @@ public class ApiKeyAuthenticationFilter extends GenericFilterBean {
 
     private final AuthorizationServiceClient authorizationServiceClient;
 
-    public ApiKeyAuthenticationFilter(AuthorizationServiceClient authorizationServiceClient) {
+    private final RateLimits rateLimits;
+
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    public ApiKeyAuthenticationFilter(AuthorizationServiceClient authorizationServiceClient, RateLimits rateLimits) {
         this.authorizationServiceClient = authorizationServiceClient;
+        this.rateLimits = rateLimits;
     }
 
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         final HttpServletRequest httpRequest = (HttpServletRequest) request;
+        if (httpRequest.getDispatcherType() == DispatcherType.ASYNC) {
+            // The request was authenticated before it went asynchronous, e.g. a notification stream that is ending
+            filterChain.doFilter(request, response);
+            return;
+        }
         final String apiKey = httpRequest.getHeader("Authorization");
         try {
             final User user = authorizationServiceClient.authenticateApiKey(new ApiKey(apiKey));
+            final long waitNanos = TransferPaths.isTransfer(urlPathHelper.getPathWithinApplication(httpRequest)) ? 0 : rateLimits.tryAcquire(user);
+            if (waitNanos > 0) {
+                logger.debug("Request of user '{}' from '{}' rate limited", user.getId(), request.getRemoteAddr());
+                final HttpServletResponse httpResponse = (HttpServletResponse) response;
+                httpResponse.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1));
+                httpResponse.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+                return;
+            }
             SecurityContextHolder.getContext().setAuthentication(new UserAuthentication(user));
         } catch (IllegalArgumentException | AuthorizationServiceClientException e) {
             logger.warn("Authentication of apiKey '{}' from '{}' failed with exception '{}'", apiKey, request.getRemoteAddr(), e.getMessage());
+        } catch (UpstreamUnavailableException e) {
+            logger.warn("Authentication of apiKey '{}' from '{}' rejected: '{}'", apiKey, request.getRemoteAddr(), e.getMessage());
+            ((HttpServletResponse) response).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
         }
         filterChain.doFilter(request, response);
         SecurityContextHolder.getContext().setAuthentication(null);
@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.security;
+
+import io.barracks.devicegateway.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * One {@link TokenBucket} per user, enabled with {@code io.barracks.ratelimit.enabled} and configured by
+ * {@code io.barracks.ratelimit.users.<userId>.*} with fallback on {@code io.barracks.ratelimit.*}.
+ * <p>
+ * A bucket is shared by the whole fleet of a user, so {@code burst} and {@code refill_rate} have no default and must be
+ * sized for it when limits are enabled. Each poll costs one token, including a {@code /resolve/batch} whatever the
+ * number of devices it holds, which {@code io.barracks.resolve.batch.max_devices} bounds instead, and a notification
+ * subscription. Downloads are not limited.
+ * <p>
+ * Only the total of rejected requests is published to the actuator metrics, the per-user counts are exported
+ * periodically as {@code userId} tagged log records.
+ */
+@Slf4j
+@Component
+public class RateLimits implements PublicMetrics {
+
+    private static final String PREFIX = "io.barracks.ratelimit.";
+
+    private final Environment environment;
+    private final LongSupplier clock;
+    private final boolean enabled;
+    private final int burst;
+    private final double refillRate;
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RateLimits(Environment environment) {
+        this(environment, System::nanoTime);
+    }
+
+    RateLimits(Environment environment, LongSupplier clock) {
+        this.environment = environment;
+        this.clock = clock;
+        this.enabled = environment.getProperty(PREFIX + "enabled", Boolean.class, false);
+        this.burst = enabled ? environment.getRequiredProperty(PREFIX + "burst", Integer.class) : 0;
+        this.refillRate = enabled ? environment.getRequiredProperty(PREFIX + "refill_rate", Double.class) : 0;
+    }
+
+    /**
+     * @return 0 if the user may send this request, otherwise the nanoseconds until it may send another one.
+     */
+    public long tryAcquire(User user) {
+        if (!enabled) {
+            return 0;
+        }
+        return buckets.computeIfAbsent(user.getId(), key -> new TokenBucket(
+                environment.getProperty(PREFIX + "users." + key + ".burst", Integer.class, burst),
+                environment.getProperty(PREFIX + "users." + key + ".refill_rate", Double.class, refillRate),
+                clock
+        )).tryAcquire();
+    }
+
+    public long getRejected() {
+        return buckets.values().stream().mapToLong(TokenBucket::getRejected).sum();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("ratelimit.users", buckets.size()),
+                new Metric<>("ratelimit.rejected", getRejected())
+        );
+    }
+
+    @Scheduled(fixedDelayString = "${io.barracks.ratelimit.export_interval:60000}")
+    public void export() {
+        buckets.forEach((userId, bucket) -> {
+            final long delta = bucket.drainRejected();
+            if (delta > 0) {
+                log.info("metric=ratelimit.rejected userId={} count={}", userId, delta);
+            }
+        });
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.security;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket holding up to {@code burst} tokens, refilled with {@code refillRate} tokens per second.
+ * <p>
+ * The bucket is kept as the time at which it will be full again, so that taking a token is a single compare-and-set.
+ */
+public class TokenBucket {
+
+    private final long tokenNanos;
+    private final long capacityNanos;
+    private final LongSupplier clock;
+
+    private final AtomicLong fullAt;
+    private final LongAdder rejected = new LongAdder();
+    private long exported;
+
+    public TokenBucket(int burst, double refillRate, LongSupplier clock) {
+        this.tokenNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / refillRate));
+        this.capacityNanos = burst * tokenNanos;
+        this.clock = clock;
+        this.fullAt = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * @return 0 if a token was taken, otherwise the nanoseconds until one is available.
+     */
+    public long tryAcquire() {
+        while (true) {
+            final long now = clock.getAsLong();
+            final long current = fullAt.get();
+            final long next = (current - now > 0 ? current : now) + tokenNanos;
+            if (next - now > capacityNanos) {
+                rejected.increment();
+                return next - now - capacityNanos;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    synchronized long drainRejected() {
+        final long current = rejected.sum();
+        final long delta = current - exported;
+        exported = current;
+        return delta;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.security;
+
+/**
+ * Requests that last as long as the device takes to read them: downloads, along with the documentation. They are not
+ * polls, and are neither shed nor rate limited.
+ * <p>
+ * Notification streams are not transfers: the request opening one does the same upstream work as a check. Only the
+ * stream it leaves open lasts, see {@link #isStream(String)}.
+ */
+final class TransferPaths {
+
+    private TransferPaths() {
+    }
+
+    static boolean isTransfer(String path) {
+        return path.startsWith("/update/download/") || path.startsWith("/packages/") || path.startsWith("/docs/");
+    }
+
+    static boolean isStream(String path) {
+        return path.endsWith("/notifications");
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.warmup;
+
+import io.barracks.devicegateway.metrics.CallTimers;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.InputStream;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Once the application is ready, replays synthetic {@code /update/check}, {@code /resolve} and download calls
+ * against this node, whose upstream services are stubbed meanwhile, so that the request handling, the JSON
+ * (de)serialization, the version resolution and the URL building get compiled before real devices are served.
+ * <p>
+ * Calls are made in batches of {@code io.barracks.warmup.batch_size} from {@code io.barracks.warmup.concurrency}
+ * threads until the JIT compiler spends less than {@code io.barracks.warmup.jit_threshold} of a batch's duration
+ * compiling, or {@code io.barracks.warmup.max_duration} milliseconds have passed. The latency histograms are then
+ * cleared and the node reported ready.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "io.barracks.warmup.enabled", havingValue = "true")
+public class WarmUpRunner implements ApplicationListener<ApplicationReadyEvent> {
+
+    static final int MIN_BATCHES = 2;
+
+    private static final ResponseExtractor<Long> DRAIN = response -> {
+        final byte[] buffer = new byte[8192];
+        long total = 0;
+        try (InputStream body = response.getBody()) {
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                total += read;
+            }
+        }
+        return total;
+    };
+
+    private final WarmUpState state;
+    private final CallTimers callTimers;
+    private final UpstreamLatencyMetrics upstreamLatencyMetrics;
+    private final int batchSize;
+    private final int concurrency;
+    private final long maxDurationMillis;
+    private final double jitThreshold;
+    private final RestTemplate restTemplate;
+
+    @Autowired
+    public WarmUpRunner(
+            WarmUpState state,
+            CallTimers callTimers,
+            UpstreamLatencyMetrics upstreamLatencyMetrics,
+            @Value("${io.barracks.warmup.batch_size:400}") int batchSize,
+            @Value("${io.barracks.warmup.concurrency:4}") int concurrency,
+            @Value("${io.barracks.warmup.max_duration:60000}") long maxDurationMillis,
+            @Value("${io.barracks.warmup.jit_threshold:0.05}") double jitThreshold
+    ) {
+        this.state = state;
+        this.callTimers = callTimers;
+        this.upstreamLatencyMetrics = upstreamLatencyMetrics;
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+        this.maxDurationMillis = maxDurationMillis;
+        this.jitThreshold = jitThreshold;
+        final SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(5000);
+        requestFactory.setReadTimeout(30000);
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        final int port = ((EmbeddedWebApplicationContext) event.getApplicationContext()).getEmbeddedServletContainer().getPort();
+        final Thread thread = new Thread(() -> warmUp("http://localhost:" + port), "warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    RestTemplate getRestTemplate() {
+        return restTemplate;
+    }
+
+    void warmUp(String gatewayUrl) {
+        final long start = System.nanoTime();
+        final CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        final boolean monitored = compilation != null && compilation.isCompilationTimeMonitoringSupported();
+        final LongAdder failures = new LongAdder();
+        long requests = 0;
+        try {
+            int batches = 0;
+            boolean settled = false;
+            while (!settled && System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(maxDurationMillis)) {
+                final long compiledBefore = monitored ? compilation.getTotalCompilationTime() : 0L;
+                final long batchStart = System.nanoTime();
+                runBatch(gatewayUrl, failures);
+                requests += batchSize;
+                batches++;
+                final long batchMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batchStart);
+                final long compiledMillis = monitored ? compilation.getTotalCompilationTime() - compiledBefore : 0L;
+                log.debug("Warm-up batch {}: {} ms, {} ms compiling", batches, batchMillis, compiledMillis);
+                settled = batches >= MIN_BATCHES && compiledMillis <= jitThreshold * batchMillis;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            callTimers.reset();
+            upstreamLatencyMetrics.reset();
+            state.complete(requests);
+            log.info("Warm-up completed with {} requests ({} failed) in {} ms", requests, failures.sum(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    private void runBatch(String gatewayUrl, LongAdder failures) throws InterruptedException {
+        final AtomicInteger next = new AtomicInteger();
+        final ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        try {
+            for (int i = 0; i < concurrency; i++) {
+                workers.execute(() -> {
+                    int call;
+                    while ((call = next.getAndIncrement()) < batchSize) {
+                        try {
+                            execute(gatewayUrl, call);
+                        } catch (RestClientException e) {
+                            if (failures.sum() == 0) {
+                                log.warn("Warm-up call failed", e);
+                            }
+                            failures.increment();
+                        }
+                    }
+                });
+            }
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(maxDurationMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void execute(String gatewayUrl, int call) {
+        final String unitId = "warm-up-unit-" + call % 16;
+        switch (call % 4) {
+            case 0:
+                restTemplate.exchange(gatewayUrl + "/update/check", HttpMethod.POST, new HttpEntity<>(checkBody(unitId), headers()), String.class);
+                break;
+            case 1:
+                restTemplate.exchange(gatewayUrl + "/resolve", HttpMethod.POST, new HttpEntity<>(resolveBody(unitId), headers()), String.class);
+                break;
+            case 2:
+                restTemplate.execute(gatewayUrl + "/update/download/" + WarmUpStubs.UPDATE_ID, HttpMethod.GET,
+                        request -> request.getHeaders().putAll(headers()), DRAIN);
+                break;
+            default:
+                restTemplate.execute(gatewayUrl + "/packages/io.barracks.warmup.0/versions/" + WarmUpStubs.LATEST_VERSION + "/file", HttpMethod.GET,
+                        request -> request.getHeaders().putAll(headers()), DRAIN);
+        }
+    }
+
+    private HttpHeaders headers() {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.AUTHORIZATION, state.getToken());
+        headers.set(WarmUpState.TOKEN_HEADER, state.getToken());
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return headers;
+    }
+
+    private Map<String, Object> checkBody(String unitId) {
+        final Map<String, Object> body = new LinkedHashMap<>();
+        body.put("unitId", unitId);
+        body.put("versionId", WarmUpStubs.CURRENT_VERSION);
+        body.put("customClientData", Collections.singletonMap("battery", 42));
+        return body;
+    }
+
+    private Map<String, Object> resolveBody(String unitId) {
+        final List<Map<String, Object>> packages = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final Map<String, Object> aPackage = new LinkedHashMap<>();
+            aPackage.put("reference", "io.barracks.warmup." + i);
+            aPackage.put("version", WarmUpStubs.CURRENT_VERSION);
+            packages.add(aPackage);
+        }
+        final Map<String, Object> body = new LinkedHashMap<>();
+        body.put("unitId", unitId);
+        body.put("packages", packages);
+        body.put("customClientData", Collections.singletonMap("battery", 42));
+        return body;
+    }
+}
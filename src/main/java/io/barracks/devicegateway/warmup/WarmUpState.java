@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.warmup;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * State of the optional warm-up phase, enabled with {@code io.barracks.warmup.enabled}.
+ * <p>
+ * The phase is active from startup until {@link WarmUpRunner} completes: meanwhile upstream calls are answered by
+ * {@link WarmUpStubs}, AMQP messages are dropped and only the requests carrying {@link #TOKEN_HEADER} with this
+ * node's token are served.
+ */
+@Component
+public class WarmUpState {
+
+    public static final String TOKEN_HEADER = "X-Barracks-Warm-Up";
+
+    private final boolean enabled;
+    private final String token = UUID.randomUUID().toString();
+    private volatile boolean active;
+    private volatile long requests;
+
+    @Autowired
+    public WarmUpState(@Value("${io.barracks.warmup.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+        this.active = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    boolean isWarmUpRequest(String tokenHeader) {
+        return token.equals(tokenHeader);
+    }
+
+    void complete(long requests) {
+        this.requests = requests;
+        this.active = false;
+    }
+}
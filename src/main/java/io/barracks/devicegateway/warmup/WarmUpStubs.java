@@ -0,0 +1,205 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.AbstractClientHttpResponse;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Canned answers of the authorization, device, update, package, component and deployment services, used in place of
+ * the real ones while warming up. Paths are matched on their end, so that any base URL works.
+ */
+class WarmUpStubs {
+
+    static final String USER_ID = "_warm-up";
+    static final String UPDATE_ID = "00000000-0000-0000-0000-000000000000";
+    static final String CURRENT_VERSION = "1.0.0";
+    static final String LATEST_VERSION = "2.0.0";
+
+    private static final Pattern AUTHENTICATE = Pattern.compile(".*/device/authenticate");
+    private static final Pattern DEVICES = Pattern.compile(".*/devices");
+    private static final Pattern UPDATE = Pattern.compile(".*/updates/[^/]+");
+    private static final Pattern RESOLVE = Pattern.compile(".*/packages/resolve");
+    private static final Pattern FILE = Pattern.compile(".*/file");
+    private static final Pattern VERSION = Pattern.compile(".*/owners/[^/]+/packages/([^/]+)/versions/([^/]+)");
+    private static final Pattern PACKAGE = Pattern.compile(".*/packages/([^/]+)");
+
+    private final ObjectMapper mapper;
+    private final byte[] file;
+
+    WarmUpStubs(ObjectMapper mapper, int fileSize) {
+        this.mapper = mapper;
+        this.file = new byte[fileSize];
+    }
+
+    ClientHttpResponse respond(HttpMethod method, URI uri, byte[] body) throws IOException {
+        final String path = uri.getPath();
+        Matcher matcher;
+        if (method == HttpMethod.POST && AUTHENTICATE.matcher(path).matches()) {
+            return json(HttpStatus.OK, user());
+        } else if (method == HttpMethod.POST && DEVICES.matcher(path).matches()) {
+            return json(HttpStatus.CREATED, device());
+        } else if (method == HttpMethod.POST && RESOLVE.matcher(path).matches()) {
+            return json(HttpStatus.OK, resolvedPackages(mapper.readTree(body)));
+        } else if (method == HttpMethod.GET && UPDATE.matcher(path).matches()) {
+            return json(HttpStatus.OK, update());
+        } else if (method == HttpMethod.GET && FILE.matcher(path).matches()) {
+            return new StubResponse(HttpStatus.OK, MediaType.APPLICATION_OCTET_STREAM, file);
+        } else if (method == HttpMethod.GET && (matcher = VERSION.matcher(path)).matches()) {
+            return json(HttpStatus.OK, version(matcher.group(1), matcher.group(2)));
+        } else if (method == HttpMethod.GET && (matcher = PACKAGE.matcher(path)).matches()) {
+            return json(HttpStatus.OK, packageInfo(matcher.group(1)));
+        }
+        return new StubResponse(HttpStatus.NOT_FOUND, MediaType.APPLICATION_JSON, "{}".getBytes());
+    }
+
+    private Map<String, Object> user() {
+        final Map<String, Object> user = new HashMap<>();
+        user.put("id", USER_ID);
+        user.put("email", "warm-up@barracks.io");
+        return user;
+    }
+
+    private Map<String, Object> device() {
+        final Map<String, Object> device = new HashMap<>();
+        device.put("userId", USER_ID);
+        device.put("unitId", "warm-up-unit");
+        device.put("versionId", CURRENT_VERSION);
+        device.put("segmentId", "warm-up-segment");
+        device.put("receptionDate", System.currentTimeMillis());
+        device.put("additionalProperties", Collections.singletonMap("battery", 42));
+        return device;
+    }
+
+    private Map<String, Object> update() {
+        final Map<String, Object> update = new HashMap<>();
+        update.put("uuid", UPDATE_ID);
+        update.put("packageId", "warm-up-package");
+        update.put("userId", USER_ID);
+        update.put("status", "published");
+        update.put("additionalProperties", Collections.singletonMap("critical", true));
+        return update;
+    }
+
+    private Map<String, Object> packageInfo(String packageId) {
+        final Map<String, Object> packageInfo = new HashMap<>();
+        packageInfo.put("id", packageId);
+        packageInfo.put("versionId", LATEST_VERSION);
+        packageInfo.put("userId", USER_ID);
+        packageInfo.put("md5", "deadbeef");
+        packageInfo.put("size", file.length);
+        return packageInfo;
+    }
+
+    private Map<String, Object> version(String reference, String id) {
+        final Map<String, Object> version = new HashMap<>();
+        version.put("packageRef", reference);
+        version.put("id", id);
+        version.put("length", file.length);
+        version.put("md5", "deadbeef");
+        version.put("filename", reference + ".bin");
+        version.put("metadata", Collections.singletonMap("critical", false));
+        return version;
+    }
+
+    private Map<String, Object> resolvedPackages(JsonNode request) {
+        final List<Map<String, Object>> present = new ArrayList<>();
+        for (JsonNode aPackage : request.path("packages")) {
+            final Map<String, Object> resolved = new HashMap<>();
+            resolved.put("reference", aPackage.path("reference").asText());
+            resolved.put("version", LATEST_VERSION);
+            present.add(resolved);
+        }
+        final Map<String, Object> response = new HashMap<>();
+        response.put("present", present);
+        response.put("absent", Collections.emptyList());
+        return response;
+    }
+
+    private ClientHttpResponse json(HttpStatus status, Object body) {
+        try {
+            return new StubResponse(status, MediaType.APPLICATION_JSON_UTF8, mapper.writeValueAsBytes(body));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class StubResponse extends AbstractClientHttpResponse {
+        private final HttpStatus status;
+        private final HttpHeaders headers = new HttpHeaders();
+        private final byte[] body;
+
+        private StubResponse(HttpStatus status, MediaType contentType, byte[] body) {
+            this.status = status;
+            this.body = body;
+            headers.setContentType(contentType);
+            headers.setContentLength(body.length);
+        }
+
+        @Override
+        public int getRawStatusCode() {
+            return status.value();
+        }
+
+        @Override
+        public String getStatusText() {
+            return status.getReasonPhrase();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
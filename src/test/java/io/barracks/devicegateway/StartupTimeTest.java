@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway;
+
+import io.barracks.devicegateway.config.FastStartupConfig;
+import io.barracks.devicegateway.config.LazyApplicationBeansPostProcessor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.rest.webmvc.config.RepositoryRestMvcConfiguration;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Boots the whole application with and without the {@code fast-startup} profile and logs how long each took, so
+ * regressions show up in the build output. The budget can be tightened with {@code -Dio.barracks.startup.max_millis}.
+ */
+@Slf4j
+public class StartupTimeTest {
+
+    private static final long MAX_STARTUP_MILLIS = Long.getLong("io.barracks.startup.max_millis", 60000L);
+
+    @Test
+    public void run_withFastStartupProfile_shouldDeferApplicationBeansAndSkipDataRest() {
+        // When
+        final long start = System.nanoTime();
+        try (ConfigurableApplicationContext context = run(FastStartupConfig.PROFILE)) {
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            log.info("Started with profile '{}' in {} ms", FastStartupConfig.PROFILE, elapsed);
+
+            // Then
+            assertThat(elapsed).isLessThan(MAX_STARTUP_MILLIS);
+            assertThat(context.getBeanNamesForType(RepositoryRestMvcConfiguration.class)).isEmpty();
+            assertThat(context.getBean(LazyApplicationBeansPostProcessor.class).getLazyBeanNames())
+                    .contains("cf", "rabbitTemplate", "updateResource", "deviceUpdateManager");
+        }
+    }
+
+    @Test
+    public void run_withDefaultProfile_shouldStartWithinBudget() {
+        // When
+        final long start = System.nanoTime();
+        try (ConfigurableApplicationContext context = run()) {
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            log.info("Started with the default profile in {} ms", elapsed);
+
+            // Then
+            assertThat(elapsed).isLessThan(MAX_STARTUP_MILLIS);
+            assertThat(context.getBeanNamesForType(LazyApplicationBeansPostProcessor.class)).isEmpty();
+        }
+    }
+
+    private ConfigurableApplicationContext run(String... profiles) {
+        return new SpringApplicationBuilder(Application.class)
+                .profiles(profiles)
+                .properties("server.port=0")
+                .run();
+    }
+}
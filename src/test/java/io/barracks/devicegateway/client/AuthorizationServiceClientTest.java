@@ -25,6 +25,7 @@
 package io.barracks.devicegateway.client;
 
 import io.barracks.devicegateway.client.exception.AuthorizationServiceClientException;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.ApiKey;
 import io.barracks.devicegateway.model.User;
 import org.junit.Test;
@@ -44,7 +45,7 @@ import static org.springframework.test.web.client.match.MockRestRequestMatchers.
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
 
 @RunWith(SpringRunner.class)
-@RestClientTest(AuthorizationServiceClient.class)
+@RestClientTest({AuthorizationServiceClient.class, UpstreamLatencyMetrics.class, UpstreamGuards.class})
 public class AuthorizationServiceClientTest {
 
     @Autowired
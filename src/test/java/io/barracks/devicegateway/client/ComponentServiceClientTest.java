@@ -27,6 +27,7 @@ package io.barracks.devicegateway.client;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.barracks.commons.util.Endpoint;
 import io.barracks.devicegateway.client.exception.ComponentServiceClientException;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.Version;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -54,7 +55,7 @@ import static org.springframework.test.web.client.response.MockRestResponseCreat
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
 
 @RunWith(SpringRunner.class)
-@RestClientTest(ComponentServiceClient.class)
+@RestClientTest({ComponentServiceClient.class, UpstreamLatencyMetrics.class, UpstreamGuards.class, UpstreamHedging.class})
 public class ComponentServiceClientTest {
 
     @Autowired
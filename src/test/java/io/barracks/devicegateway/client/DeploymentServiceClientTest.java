@@ -27,6 +27,7 @@ package io.barracks.devicegateway.client;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.barracks.commons.util.Endpoint;
 import io.barracks.devicegateway.client.exception.DeploymentServiceClientException;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.DeviceRequest;
 import io.barracks.devicegateway.model.ResolvedPackages;
 import org.junit.Test;
@@ -48,7 +49,7 @@ import static org.springframework.test.web.client.response.MockRestResponseCreat
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
 
 @RunWith(SpringRunner.class)
-@RestClientTest(DeploymentServiceClient.class)
+@RestClientTest({DeploymentServiceClient.class, UpstreamLatencyMetrics.class, UpstreamGuards.class})
 public class DeploymentServiceClientTest {
     @Autowired
     private MockRestServiceServer mockServer;
@@ -59,6 +60,9 @@ public class DeploymentServiceClientTest {
     @Autowired
     private ObjectMapper mapper;
 
+    @Autowired
+    private UpstreamLatencyMetrics upstreamLatencyMetrics;
+
     @Value("${io.barracks.deploymentservice.base_url}")
     private String baseUrl;
 
@@ -82,6 +86,8 @@ public class DeploymentServiceClientTest {
         // Then
         mockServer.verify();
         assertThat(resolvedPackages).isEqualTo(expected);
+        assertThat(upstreamLatencyMetrics.getSnapshots().get("deploymentservice").get("resolvePackages").get("200").getCount())
+                .isEqualTo(1L);
     }
 
     @Test
@@ -98,6 +104,8 @@ public class DeploymentServiceClientTest {
         assertThatExceptionOfType(DeploymentServiceClientException.class)
                 .isThrownBy(() -> client.resolvePackages(request));
         mockServer.verify();
+        assertThat(upstreamLatencyMetrics.getSnapshots().get("deploymentservice").get("resolvePackages"))
+                .containsKey("400");
     }
 
 }
@@ -26,6 +26,7 @@ package io.barracks.devicegateway.client;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.barracks.devicegateway.client.exception.DeviceServiceClientException;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.DeviceInfo;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -52,7 +53,7 @@ import static org.springframework.test.web.client.match.MockRestRequestMatchers.
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
 
 @RunWith(SpringRunner.class)
-@RestClientTest(DeviceServiceClient.class)
+@RestClientTest({DeviceServiceClient.class, UpstreamLatencyMetrics.class, UpstreamGuards.class})
 public class DeviceServiceClientTest {
 
     private static final String BARRACKS_URL = "http://not.barracks.io";
@@ -0,0 +1,196 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.client;
+
+import io.barracks.devicegateway.exception.DeviceStreamException;
+import org.junit.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.ResourceHttpMessageConverter;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class DownloadGovernorTest {
+
+    private static final List<HttpMessageConverter<?>> CONVERTERS = Collections.singletonList(new ResourceHttpMessageConverter());
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void reserve_whenRateIsSet_shouldSpaceChunksByTheirTransmissionTime() {
+        // Given
+        final DownloadGovernor governor = new DownloadGovernor(new MockEnvironment()
+                .withProperty("io.barracks.download.bytes_per_second", "1000000")
+                .withProperty("io.barracks.download.burst", "0"),
+                clock::get
+        );
+
+        // When Then
+        assertThat(governor.getNodePacer().reserve(1000)).isEqualTo(0L);
+        assertThat(governor.getNodePacer().reserve(1000)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1));
+        assertThat(governor.getNodePacer().reserve(1000)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(2));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(3));
+        assertThat(governor.getNodePacer().reserve(1000)).isEqualTo(0L);
+    }
+
+    @Test
+    public void reserve_afterIdlePeriod_shouldOnlyCarryOverBurst() {
+        // Given
+        final DownloadGovernor governor = new DownloadGovernor(new MockEnvironment()
+                .withProperty("io.barracks.download.bytes_per_second", "1000000")
+                .withProperty("io.barracks.download.burst", "10"),
+                clock::get
+        );
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            assertThat(governor.getNodePacer().reserve(1000)).isEqualTo(0L);
+        }
+
+        // Then
+        assertThat(governor.getNodePacer().reserve(1000)).isEqualTo(0L);
+        assertThat(governor.getNodePacer().reserve(1000)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void reserve_whenRateIsNotSet_shouldNeverWait() {
+        // Given
+        final DownloadGovernor governor = new DownloadGovernor(new MockEnvironment(), clock::get);
+
+        // When Then
+        for (int i = 0; i < 100; i++) {
+            assertThat(governor.getNodePacer().reserve(DownloadGovernor.CHUNK_SIZE)).isEqualTo(0L);
+        }
+    }
+
+    @Test
+    public void shape_shouldCountActiveDownloadsAndThroughput() throws IOException {
+        // Given
+        final DownloadGovernor governor = new DownloadGovernor(new MockEnvironment(), clock::get);
+        final ByteArrayOutputStream destination = new ByteArrayOutputStream();
+
+        // When
+        final ShapedOutputStream shapedStream = governor.shape("user", destination);
+        shapedStream.write(new byte[40000]);
+
+        // Then
+        assertThat(governor.getActive()).isEqualTo(1);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        governor.sample();
+        assertThat(governor.getBytes()).isEqualTo(40000L);
+        assertThat(governor.getThroughput()).isEqualTo(20000.0);
+        shapedStream.close();
+        shapedStream.close();
+        assertThat(governor.getActive()).isEqualTo(0);
+        assertThat(destination.size()).isEqualTo(40000);
+    }
+
+    @Test
+    public void shape_whenNodeIsCapped_shouldServeMoreConcurrentDownloadsThanAnyBulkhead() throws Exception {
+        // Given
+        final DownloadGovernor governor = new DownloadGovernor(new MockEnvironment()
+                .withProperty("io.barracks.download.bytes_per_second", "20000000")
+                .withProperty("io.barracks.download.burst", "0")
+        );
+        final UpstreamGuard fileGuard = new UpstreamGuards(new StandardEnvironment()).fileGuard("packageservice.files");
+        final int downloads = 100;
+        final byte[] file = new byte[32 * 1024];
+        final ExecutorService executor = Executors.newFixedThreadPool(downloads);
+        final List<Future<Long>> results = new ArrayList<>(downloads);
+        final long start = System.nanoTime();
+
+        // When
+        try {
+            for (int i = 0; i < downloads; i++) {
+                results.add(executor.submit(() -> fileGuard.call(() -> {
+                    try (ShapedOutputStream shapedStream = governor.shape("user", new ByteArrayOutputStream())) {
+                        return new LargeFileForwardingExtractor(CONVERTERS, shapedStream).extractData(response(file));
+                    }
+                })));
+            }
+            for (Future<Long> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo(file.length);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Then
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(fileGuard.getRejectedCalls()).isEqualTo(0L);
+        assertThat(fileGuard.getState()).isEqualTo(UpstreamGuard.State.CLOSED);
+        assertThat(governor.getActive()).isEqualTo(0);
+        assertThat(governor.getBytes()).isEqualTo((long) downloads * file.length);
+    }
+
+    @Test
+    public void shape_whenInterruptedWhileWaiting_shouldNotCountAsUpstreamFailure() {
+        // Given
+        final DownloadGovernor governor = new DownloadGovernor(new MockEnvironment()
+                .withProperty("io.barracks.download.bytes_per_second", "1000")
+                .withProperty("io.barracks.download.burst", "0")
+        );
+        final UpstreamGuard fileGuard = new UpstreamGuard("packageservice.files", 0, 1, 10000);
+
+        // When
+        Thread.currentThread().interrupt();
+        try {
+            assertThatExceptionOfType(DeviceStreamException.class).isThrownBy(() -> fileGuard.call(() -> {
+                try (ShapedOutputStream shapedStream = governor.shape("user", new ByteArrayOutputStream())) {
+                    return new LargeFileForwardingExtractor(CONVERTERS, shapedStream).extractData(response(new byte[10000]));
+                }
+            }));
+        } finally {
+            Thread.interrupted();
+        }
+
+        // Then
+        assertThat(fileGuard.getState()).isEqualTo(UpstreamGuard.State.CLOSED);
+        assertThat(governor.getActive()).isEqualTo(0);
+    }
+
+    private static MockClientHttpResponse response(byte[] file) {
+        final MockClientHttpResponse response = new MockClientHttpResponse(file, HttpStatus.OK);
+        response.getHeaders().setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        return response;
+    }
+}
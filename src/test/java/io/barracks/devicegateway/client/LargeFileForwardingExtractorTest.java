@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.client;
+
+import io.barracks.devicegateway.exception.DeviceStreamException;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.ResourceHttpMessageConverter;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class LargeFileForwardingExtractorTest {
+
+    private static final byte[] FILE = new byte[10000];
+
+    @Test
+    public void extractData_shouldCopyFileToDestination() throws IOException {
+        // Given
+        final ByteArrayOutputStream destination = new ByteArrayOutputStream();
+        final LargeFileForwardingExtractor extractor = new LargeFileForwardingExtractor(
+                Collections.singletonList(new ResourceHttpMessageConverter()), destination
+        );
+
+        // When
+        final long copied = extractor.extractData(response());
+
+        // Then
+        assertThat(copied).isEqualTo(FILE.length);
+        assertThat(destination.toByteArray()).isEqualTo(FILE);
+    }
+
+    @Test
+    public void extractData_whenDestinationFails_shouldThrowDeviceStreamException() {
+        // Given
+        final OutputStream destination = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        final LargeFileForwardingExtractor extractor = new LargeFileForwardingExtractor(
+                Collections.singletonList(new ResourceHttpMessageConverter()), destination
+        );
+
+        // Then When
+        assertThatExceptionOfType(DeviceStreamException.class)
+                .isThrownBy(() -> extractor.extractData(response()))
+                .withCauseInstanceOf(IOException.class);
+    }
+
+    private MockClientHttpResponse response() {
+        final MockClientHttpResponse response = new MockClientHttpResponse(FILE, HttpStatus.OK);
+        response.getHeaders().setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        return response;
+    }
+}
@@ -26,6 +26,7 @@ package io.barracks.devicegateway.client;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.barracks.devicegateway.client.exception.PackageServiceClientException;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.PackageInfo;
 import net.minidev.json.parser.ParseException;
 import org.junit.Test;
@@ -53,7 +54,7 @@ import static org.springframework.test.web.client.match.MockRestRequestMatchers.
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
 
 @RunWith(SpringRunner.class)
-@RestClientTest(PackageServiceClient.class)
+@RestClientTest({PackageServiceClient.class, UpstreamLatencyMetrics.class, UpstreamGuards.class, UpstreamHedging.class})
 public class PackageServiceClientTest {
 
     @Autowired
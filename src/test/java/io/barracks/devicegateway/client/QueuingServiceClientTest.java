@@ -25,6 +25,7 @@
 package io.barracks.devicegateway.client;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.DeviceInfo;
 import io.barracks.devicegateway.utils.DeviceInfoUtils;
 import org.junit.Before;
@@ -33,6 +34,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.core.env.StandardEnvironment;
 
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
@@ -50,7 +52,7 @@ public class QueuingServiceClientTest {
 
     @Before
     public void setUp() {
-        queuingServiceClient = new QueuingServiceClient(exchangeName, routingKey, rabbitTemplate);
+        queuingServiceClient = new QueuingServiceClient(exchangeName, routingKey, rabbitTemplate, new UpstreamLatencyMetrics(), new UpstreamGuards(new StandardEnvironment()));
     }
 
     @Test
@@ -25,6 +25,7 @@
 package io.barracks.devicegateway.client;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.DeviceEvent;
 import io.barracks.devicegateway.model.DeviceRequest;
 import io.barracks.devicegateway.utils.DeviceEventUtils;
@@ -36,6 +37,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.core.env.StandardEnvironment;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -53,7 +55,7 @@ public class QueuingServiceClientV2Test {
 
     @Before
     public void setUp() {
-        queuingServiceClientV2 = new QueuingServiceClientV2(exchangeName, routingKey, rabbitTemplate, mock(CounterService.class));
+        queuingServiceClientV2 = new QueuingServiceClientV2(exchangeName, routingKey, rabbitTemplate, mock(CounterService.class), new UpstreamLatencyMetrics(), new UpstreamGuards(new StandardEnvironment()));
     }
 
     @Test
@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.client;
+
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShapedOutputStreamTest {
+
+    private final DownloadGovernor governor = new DownloadGovernor(new MockEnvironment()
+            .withProperty("io.barracks.download.users.user.bytes_per_second", "1000000000"));
+
+    @Test
+    public void write_shouldForwardBytesInChunks() throws IOException {
+        // Given
+        final RecordingOutputStream destination = new RecordingOutputStream();
+        final ShapedOutputStream shapedStream = governor.shape("user", destination);
+
+        // When
+        shapedStream.write(new byte[DownloadGovernor.CHUNK_SIZE * 2 + 10]);
+        shapedStream.write(42);
+
+        // Then
+        assertThat(destination.writes).containsExactly(DownloadGovernor.CHUNK_SIZE, DownloadGovernor.CHUNK_SIZE, 10, 1);
+        assertThat(governor.getBytes()).isEqualTo(DownloadGovernor.CHUNK_SIZE * 2 + 11L);
+    }
+
+    @Test
+    public void close_shouldLeaveDestinationOpen() throws IOException {
+        // Given
+        final RecordingOutputStream destination = new RecordingOutputStream();
+        final ShapedOutputStream shapedStream = governor.shape("user", destination);
+
+        // When
+        shapedStream.close();
+
+        // Then
+        assertThat(destination.closed).isFalse();
+        assertThat(governor.getActive()).isEqualTo(0);
+    }
+
+    private static class RecordingOutputStream extends OutputStream {
+        private final List<Integer> writes = new ArrayList<>();
+        private boolean closed;
+
+        @Override
+        public void write(int b) {
+            writes.add(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes.add(len);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
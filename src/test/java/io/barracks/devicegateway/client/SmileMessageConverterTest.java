@@ -0,0 +1,101 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.barracks.devicegateway.model.DeviceEvent;
+import io.barracks.devicegateway.model.DeviceRequest;
+import io.barracks.devicegateway.utils.DeviceEventUtils;
+import io.barracks.devicegateway.utils.DeviceRequestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SmileMessageConverterTest {
+
+    private ObjectMapper jsonMapper;
+
+    private ObjectMapper smileMapper;
+
+    private SmileMessageConverter converter;
+
+    @Before
+    public void setUp() {
+        final Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        jsonMapper = builder.build();
+        smileMapper = new ObjectMapper(new SmileFactory());
+        builder.configure(smileMapper);
+        converter = new SmileMessageConverter(smileMapper);
+    }
+
+    @Test
+    public void toMessage_shouldEncodeSameTreeAsJson_andSetHeaders() throws Exception {
+        // Given
+        final DeviceEvent deviceEvent = DeviceEventUtils.getDeviceEvent();
+
+        // When
+        final Message message = converter.toMessage(deviceEvent, new MessageProperties());
+
+        // Then
+        final MessageProperties properties = message.getMessageProperties();
+        assertThat(properties.getContentType()).isEqualTo(SmileMessageConverter.CONTENT_TYPE);
+        assertThat(properties.getContentLength()).isEqualTo(message.getBody().length);
+        assertThat(properties.getHeaders()).containsEntry("__TypeId__", DeviceEvent.class.getName());
+        assertThat(smileMapper.readTree(message.getBody())).isEqualTo(jsonMapper.valueToTree(deviceEvent));
+        assertThat(message.getBody().length).isLessThan(jsonMapper.writeValueAsBytes(deviceEvent).length);
+    }
+
+    @Test
+    public void fromMessage_whenSmileContentType_shouldDecodeToTypeIdClass() {
+        // Given
+        final DeviceRequest deviceRequest = DeviceRequestUtils.getDeviceRequest();
+        final Message message = converter.toMessage(deviceRequest, new MessageProperties());
+
+        // When
+        final Object result = converter.fromMessage(message);
+
+        // Then
+        assertThat(result).isEqualTo(deviceRequest);
+    }
+
+    @Test
+    public void fromMessage_whenOtherContentType_shouldReturnBody() {
+        // Given
+        final MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        final Message message = new Message("{}".getBytes(), properties);
+
+        // When
+        final Object result = converter.fromMessage(message);
+
+        // Then
+        assertThat(result).isEqualTo(message.getBody());
+    }
+}
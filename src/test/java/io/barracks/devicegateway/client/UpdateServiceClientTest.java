@@ -27,6 +27,7 @@ package io.barracks.devicegateway.client;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.barracks.commons.util.Endpoint;
 import io.barracks.devicegateway.client.exception.UpdateServiceClientException;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
 import io.barracks.devicegateway.model.Update;
 import net.minidev.json.parser.ParseException;
 import org.junit.Test;
@@ -53,7 +54,7 @@ import static org.springframework.test.web.client.match.MockRestRequestMatchers.
 import static org.springframework.test.web.client.response.MockRestResponseCreators.*;
 
 @RunWith(SpringRunner.class)
-@RestClientTest(UpdateServiceClient.class)
+@RestClientTest({UpdateServiceClient.class, UpstreamLatencyMetrics.class, UpstreamGuards.class, UpstreamHedging.class})
 public class UpdateServiceClientTest {
 
     @Autowired
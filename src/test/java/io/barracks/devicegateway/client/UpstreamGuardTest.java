@@ -0,0 +1,260 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.client;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.barracks.devicegateway.client.exception.DeploymentServiceClientException;
+import io.barracks.devicegateway.exception.DeviceStreamException;
+import io.barracks.devicegateway.exception.UpstreamUnavailableException;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class UpstreamGuardTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final UpstreamGuard guard = new UpstreamGuard("deploymentservice", 2, 3, 1000, clock::get);
+
+    @Test
+    public void call_whenConsecutiveFailuresReachThreshold_shouldOpenCircuitAndFailFast() {
+        // Given
+        fail(3);
+
+        // Then When
+        assertThat(guard.getState()).isEqualTo(UpstreamGuard.State.OPEN);
+        assertThatExceptionOfType(UpstreamUnavailableException.class)
+                .isThrownBy(() -> guard.call(() -> "unreachable"));
+        assertThat(guard.getRejectedCalls()).isEqualTo(1L);
+    }
+
+    @Test
+    public void call_whenClientErrorsAreReturned_shouldKeepCircuitClosed() {
+        // Given
+        for (int i = 0; i < 5; i++) {
+            assertThatExceptionOfType(DeploymentServiceClientException.class).isThrownBy(() -> guard.call(() -> {
+                throw new DeploymentServiceClientException(new HttpClientErrorException(HttpStatus.BAD_REQUEST));
+            }));
+        }
+
+        // Then
+        assertThat(guard.getState()).isEqualTo(UpstreamGuard.State.CLOSED);
+    }
+
+    @Test
+    public void call_whenSuccessBetweenFailures_shouldResetFailureCount() {
+        // Given
+        fail(2);
+        guard.call(() -> "ok");
+        fail(2);
+
+        // Then
+        assertThat(guard.getState()).isEqualTo(UpstreamGuard.State.CLOSED);
+    }
+
+    @Test
+    public void call_whenOpenDurationHasElapsedAndProbeSucceeds_shouldCloseCircuit() {
+        // Given
+        fail(3);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        // When
+        final String result = guard.call(() -> "ok");
+
+        // Then
+        assertThat(result).isEqualTo("ok");
+        assertThat(guard.getState()).isEqualTo(UpstreamGuard.State.CLOSED);
+    }
+
+    @Test
+    public void call_whenOpenDurationHasElapsedAndProbeFails_shouldReopenCircuit() {
+        // Given
+        fail(3);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        // When
+        fail(1);
+
+        // Then
+        assertThat(guard.getState()).isEqualTo(UpstreamGuard.State.OPEN);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertThatExceptionOfType(UpstreamUnavailableException.class)
+                .isThrownBy(() -> guard.call(() -> "unreachable"));
+    }
+
+    @Test
+    public void call_whenProbeThrowsError_shouldReopenCircuit_andProbeAgainLater() {
+        // Given
+        fail(3);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        // When
+        assertThatExceptionOfType(StackOverflowError.class).isThrownBy(() -> guard.call(() -> {
+            throw new StackOverflowError();
+        }));
+
+        // Then
+        assertThat(guard.getState()).isEqualTo(UpstreamGuard.State.OPEN);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertThat(guard.call(() -> "ok")).isEqualTo("ok");
+        assertThat(guard.getState()).isEqualTo(UpstreamGuard.State.CLOSED);
+    }
+
+    @Test
+    public void call_whenCallStartedBeforeOpeningFails_shouldNotDelayProbe() throws Exception {
+        // Given
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread slowCall = new Thread(() -> failAfter(started, release));
+        slowCall.start();
+        started.await(5, TimeUnit.SECONDS);
+        fail(3);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        // When
+        release.countDown();
+        slowCall.join(5000);
+
+        // Then
+        assertThat(guard.call(() -> "ok")).isEqualTo("ok");
+        assertThat(guard.getState()).isEqualTo(UpstreamGuard.State.CLOSED);
+    }
+
+    @Test
+    public void call_whenCallStartedBeforeOpeningFailsDuringProbe_shouldLetProbeSettleCircuit() throws Exception {
+        // Given
+        final CountDownLatch slowStarted = new CountDownLatch(1);
+        final CountDownLatch slowRelease = new CountDownLatch(1);
+        final Thread slowCall = new Thread(() -> failAfter(slowStarted, slowRelease));
+        slowCall.start();
+        slowStarted.await(5, TimeUnit.SECONDS);
+        fail(2);
+        final UpstreamGuard.State stateBeforeOpening = guard.getState();
+        fail(1);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        final CountDownLatch probeStarted = new CountDownLatch(1);
+        final CountDownLatch probeRelease = new CountDownLatch(1);
+        final Thread probe = new Thread(() -> guard.call(() -> {
+            probeStarted.countDown();
+            return Uninterruptibles.awaitUninterruptibly(probeRelease, 5, TimeUnit.SECONDS);
+        }));
+        probe.start();
+        probeStarted.await(5, TimeUnit.SECONDS);
+
+        // When
+        slowRelease.countDown();
+        slowCall.join(5000);
+        final UpstreamGuard.State stateDuringProbe = guard.getState();
+        probeRelease.countDown();
+        probe.join(5000);
+
+        // Then
+        assertThat(stateBeforeOpening).isEqualTo(UpstreamGuard.State.CLOSED);
+        assertThat(stateDuringProbe).isEqualTo(UpstreamGuard.State.HALF_OPEN);
+        assertThat(guard.getState()).isEqualTo(UpstreamGuard.State.CLOSED);
+    }
+
+    @Test
+    public void call_whenMaxConcurrentCallsAreRunning_shouldRejectCall() throws Exception {
+        // Given
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            new Thread(() -> guard.call(() -> {
+                started.countDown();
+                return Uninterruptibles.awaitUninterruptibly(release, 5, TimeUnit.SECONDS);
+            })).start();
+        }
+        started.await(5, TimeUnit.SECONDS);
+
+        // Then When
+        assertThat(guard.getActiveCalls()).isEqualTo(2);
+        assertThatExceptionOfType(UpstreamUnavailableException.class)
+                .isThrownBy(() -> guard.call(() -> "rejected"));
+        release.countDown();
+    }
+
+    @Test
+    public void call_whenDeviceStreamFails_shouldKeepCircuitClosed() {
+        // Given
+        for (int i = 0; i < 5; i++) {
+            assertThatExceptionOfType(ResourceAccessException.class).isThrownBy(() -> guard.call(() -> {
+                throw new ResourceAccessException("I/O error", new DeviceStreamException(new IOException("Broken pipe")));
+            }));
+        }
+
+        // Then
+        assertThat(guard.getState()).isEqualTo(UpstreamGuard.State.CLOSED);
+    }
+
+    @Test
+    public void call_whenMaxConcurrentCallsIsNotSet_shouldNotRejectCalls() throws Exception {
+        // Given
+        final UpstreamGuard unbounded = new UpstreamGuard("packageservice.files", 0, 3, 1000, clock::get);
+        final int calls = 100;
+        final CountDownLatch started = new CountDownLatch(calls);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < calls; i++) {
+            new Thread(() -> unbounded.call(() -> {
+                started.countDown();
+                return Uninterruptibles.awaitUninterruptibly(release, 5, TimeUnit.SECONDS);
+            })).start();
+        }
+
+        // When
+        final boolean allStarted = started.await(5, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(allStarted).isTrue();
+        assertThat(unbounded.getActiveCalls()).isEqualTo(calls);
+        assertThat(unbounded.getRejectedCalls()).isEqualTo(0L);
+        release.countDown();
+    }
+
+    private void failAfter(CountDownLatch started, CountDownLatch release) {
+        assertThatExceptionOfType(DeploymentServiceClientException.class).isThrownBy(() -> guard.call(() -> {
+            started.countDown();
+            Uninterruptibles.awaitUninterruptibly(release, 5, TimeUnit.SECONDS);
+            throw new DeploymentServiceClientException(new HttpServerErrorException(HttpStatus.GATEWAY_TIMEOUT));
+        }));
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            assertThatExceptionOfType(DeploymentServiceClientException.class).isThrownBy(() -> guard.call(() -> {
+                throw new DeploymentServiceClientException(new HttpServerErrorException(HttpStatus.BAD_GATEWAY));
+            }));
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.client;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.barracks.devicegateway.client.exception.ComponentServiceClientException;
+import io.barracks.devicegateway.metrics.RequestTimingFilter;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.client.HttpClientErrorException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class UpstreamHedgingTest {
+
+    private final UpstreamLatencyMetrics.Operation operation = new UpstreamLatencyMetrics().operation("componentservice", "getVersion");
+    private UpstreamHedging hedging;
+
+    @After
+    public void tearDown() {
+        hedging.shutdown();
+    }
+
+    @Test
+    public void call_whenDisabled_shouldRunInline() {
+        // Given
+        hedging = new UpstreamHedging(false, 5, 95, 1, 4);
+        final UpstreamHedging.Hedge hedge = hedging.hedge("componentservice.getVersion", operation);
+        final Thread caller = Thread.currentThread();
+
+        // When
+        final boolean inline = hedge.call(() -> Thread.currentThread() == caller);
+
+        // Then
+        assertThat(inline).isTrue();
+    }
+
+    @Test
+    public void call_whenFirstAttemptIsSlow_shouldReturnHedgedAnswer() {
+        // Given
+        hedging = new UpstreamHedging(true, 100, 95, 1, 4);
+        final UpstreamHedging.Hedge hedge = hedging.hedge("componentservice.getVersion", operation);
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        // When
+        final String result = hedge.call(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                Uninterruptibles.awaitUninterruptibly(release, 5, TimeUnit.SECONDS);
+                return "slow";
+            }
+            return "hedged";
+        });
+        release.countDown();
+
+        // Then
+        assertThat(result).isEqualTo("hedged");
+        assertThat(hedge.getHedges()).isEqualTo(1L);
+    }
+
+    @Test
+    public void call_whenRecentCallsAreSlow_shouldWaitForTheirPercentileBeforeHedging() {
+        // Given
+        hedging = new UpstreamHedging(true, 100, 95, 1, 4);
+        final UpstreamHedging.Hedge hedge = hedging.hedge("componentservice.getVersion", operation);
+        for (int i = 0; i < 20; i++) {
+            operation.record(HttpStatus.OK, System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+        }
+
+        // When
+        final String result = hedge.call(() -> {
+            Uninterruptibles.sleepUninterruptibly(20, TimeUnit.MILLISECONDS);
+            return "slow";
+        });
+
+        // Then
+        assertThat(result).isEqualTo("slow");
+        assertThat(hedge.getHedges()).isEqualTo(0L);
+    }
+
+    @Test
+    public void call_whenFirstAttemptFailsBeforeDelay_shouldNotHedge() {
+        // Given
+        hedging = new UpstreamHedging(true, 100, 95, 1000, 4);
+        final UpstreamHedging.Hedge hedge = hedging.hedge("componentservice.getVersion", operation);
+
+        // Then When
+        assertThatExceptionOfType(ComponentServiceClientException.class).isThrownBy(() -> hedge.call(() -> {
+            throw new ComponentServiceClientException(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+        }));
+        assertThat(hedge.getHedges()).isEqualTo(0L);
+    }
+
+    @Test
+    public void call_whenBudgetIsSpent_shouldStopHedging() {
+        // Given
+        hedging = new UpstreamHedging(true, 0, 95, 1, 4);
+        final UpstreamHedging.Hedge hedge = hedging.hedge("componentservice.getVersion", operation);
+
+        // When
+        for (int i = 0; i < 20; i++) {
+            hedge.call(() -> {
+                Uninterruptibles.sleepUninterruptibly(5, TimeUnit.MILLISECONDS);
+                return "slow";
+            });
+        }
+
+        // Then
+        assertThat(hedge.getHedges()).isEqualTo(10L);
+    }
+
+    @Test
+    public void call_whenBudgetCannotPayForAHedge_shouldRunInline() {
+        // Given
+        hedging = new UpstreamHedging(true, 0, 95, 1, 4);
+        final UpstreamHedging.Hedge hedge = hedging.hedge("componentservice.getVersion", operation);
+        for (int i = 0; i < 10; i++) {
+            hedge.call(() -> {
+                Uninterruptibles.sleepUninterruptibly(5, TimeUnit.MILLISECONDS);
+                return "slow";
+            });
+        }
+        final Thread caller = Thread.currentThread();
+
+        // When
+        final boolean inline = hedge.call(() -> Thread.currentThread() == caller);
+
+        // Then
+        assertThat(inline).isTrue();
+    }
+
+    @Test
+    public void call_shouldRecordSpansIntoTheCallerRequestTiming() throws Exception {
+        // Given
+        hedging = new UpstreamHedging(true, 100, 95, 1000, 4);
+        final UpstreamHedging.Hedge hedge = hedging.hedge("componentservice.getVersion", operation);
+        final RequestTimingFilter filter = new RequestTimingFilter(true, 0.0);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(new MockHttpServletRequest("POST", "/resolve"), response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                hedge.call(() -> {
+                    operation.record(HttpStatus.OK, System.nanoTime());
+                    return "version";
+                });
+            }
+        }));
+
+        // Then
+        assertThat(response.getHeader("Server-Timing")).matches("componentservice\\.getVersion;dur=[0-9.]+, total;dur=[0-9.]+");
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.config;
+
+import org.junit.Test;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LazyApplicationBeansPostProcessorTest {
+
+    private static final AtomicInteger created = new AtomicInteger();
+
+    @Test
+    public void postProcessBeanFactory_shouldDeferApplicationBeans() {
+        // Given
+        created.set(0);
+        final LazyApplicationBeansPostProcessor postProcessor = new LazyApplicationBeansPostProcessor("io.barracks.devicegateway.config");
+
+        // When
+        try (AnnotationConfigApplicationContext context = refresh(postProcessor)) {
+            // Then
+            assertThat(postProcessor.getLazyBeanNames()).contains("service");
+            assertThat(created.get()).isEqualTo(0);
+            context.getBean("service");
+            assertThat(created.get()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void postProcessBeanFactory_shouldKeepListenersEager() {
+        // Given
+        final LazyApplicationBeansPostProcessor postProcessor = new LazyApplicationBeansPostProcessor("io.barracks.devicegateway.config");
+
+        // When
+        try (AnnotationConfigApplicationContext context = refresh(postProcessor)) {
+            // Then
+            assertThat(postProcessor.getLazyBeanNames()).doesNotContain("listener");
+            assertThat(context.getBean(TestConfig.class).refreshed).isTrue();
+        }
+    }
+
+    @Test
+    public void postProcessBeanFactory_shouldIgnoreBeansOutsideThePackage() {
+        // Given
+        final LazyApplicationBeansPostProcessor postProcessor = new LazyApplicationBeansPostProcessor("io.barracks.devicegateway.config");
+
+        // When
+        try (AnnotationConfigApplicationContext context = refresh(postProcessor)) {
+            // Then
+            assertThat(postProcessor.getLazyBeanNames()).doesNotContain("external");
+            assertThat(context.getBeanFactory().getBeanDefinition("external").isLazyInit()).isFalse();
+        }
+    }
+
+    private AnnotationConfigApplicationContext refresh(LazyApplicationBeansPostProcessor postProcessor) {
+        final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.register(TestConfig.class);
+        context.registerBeanDefinition("external", new RootBeanDefinition(ArrayList.class));
+        context.addBeanFactoryPostProcessor(postProcessor);
+        context.refresh();
+        return context;
+    }
+
+    static class TestConfig {
+
+        private boolean refreshed;
+
+        @Bean
+        public Object service() {
+            created.incrementAndGet();
+            return new Object();
+        }
+
+        @Bean
+        public ApplicationListener<ContextRefreshedEvent> listener() {
+            return new ApplicationListener<ContextRefreshedEvent>() {
+                @Override
+                public void onApplicationEvent(ContextRefreshedEvent event) {
+                    refreshed = true;
+                }
+            };
+        }
+    }
+}
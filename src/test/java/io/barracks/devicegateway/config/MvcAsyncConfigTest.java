@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.config;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class MvcAsyncConfigTest {
+
+    private MvcAsyncConfig config;
+
+    @After
+    public void tearDown() {
+        if (config != null) {
+            config.shutdown();
+        }
+    }
+
+    @Test
+    public void configureAsyncSupport_shouldSizeTimeoutToTheLargestBatch() {
+        // Given
+        config = new MvcAsyncConfig(0, 4, 4, 1000, 8, 1000);
+        final ExposedConfigurer configurer = new ExposedConfigurer();
+
+        // When
+        config.configureAsyncSupport(configurer);
+
+        // Then
+        assertThat(configurer.getTimeout()).isEqualTo(125000L);
+    }
+
+    @Test
+    public void configureAsyncSupport_whenTimeoutIsSet_shouldUseIt() {
+        // Given
+        config = new MvcAsyncConfig(5000, 4, 4, 1000, 8, 1000);
+        final ExposedConfigurer configurer = new ExposedConfigurer();
+
+        // When
+        config.configureAsyncSupport(configurer);
+
+        // Then
+        assertThat(configurer.getTimeout()).isEqualTo(5000L);
+    }
+
+    @Test
+    public void configureAsyncSupport_shouldUseABoundedExecutor() {
+        // Given
+        config = new MvcAsyncConfig(0, 4, 16, 1000, 8, 1000);
+        final ExposedConfigurer configurer = new ExposedConfigurer();
+
+        // When
+        config.configureAsyncSupport(configurer);
+
+        // Then
+        assertThat(configurer.getTaskExecutor()).isInstanceOf(ThreadPoolTaskExecutor.class);
+        final ThreadPoolTaskExecutor executor = (ThreadPoolTaskExecutor) configurer.getTaskExecutor();
+        assertThat(executor.getMaxPoolSize()).isEqualTo(4);
+        assertThat(executor.getThreadPoolExecutor().getQueue().remainingCapacity()).isEqualTo(16);
+    }
+
+    @Test
+    public void batchTimeout_shouldRoundUpPartialRounds() {
+        assertThat(MvcAsyncConfig.batchTimeout(1001, 8, 1000)).isEqualTo(126000L);
+        assertThat(MvcAsyncConfig.batchTimeout(0, 8, 1000)).isEqualTo(1000L);
+    }
+
+    @Test
+    public void handleTimeout_shouldInterruptTheStalledTask_andGiveItsThreadBackToThePool() throws Exception {
+        // Given
+        config = new MvcAsyncConfig(0, 1, 1, 1000, 8, 1000);
+        final ExposedConfigurer configurer = new ExposedConfigurer();
+        config.configureAsyncSupport(configurer);
+        final AsyncTaskExecutor executor = configurer.getTaskExecutor();
+        final CallableProcessingInterceptor interceptor = configurer.getCallableInterceptors().get(0);
+        final NativeWebRequest request = new ServletWebRequest(new MockHttpServletRequest());
+        final CountDownLatch started = new CountDownLatch(1);
+        final Callable<Void> stalled = () -> {
+            started.countDown();
+            new CountDownLatch(1).await();
+            return null;
+        };
+        final Future<Void> stream = executor.submit(() -> {
+            interceptor.preProcess(request, stalled);
+            try {
+                return stalled.call();
+            } finally {
+                interceptor.postProcess(request, stalled, null);
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When
+        final Object result = interceptor.handleTimeout(request, stalled);
+
+        // Then
+        assertThat(result).isEqualTo(CallableProcessingInterceptor.RESULT_NONE);
+        assertThatExceptionOfType(ExecutionException.class)
+                .isThrownBy(() -> stream.get(5, TimeUnit.SECONDS))
+                .withCauseInstanceOf(InterruptedException.class);
+        assertThat(executor.submit(() -> "next").get(5, TimeUnit.SECONDS)).isEqualTo("next");
+    }
+
+    @Test
+    public void handleTimeout_whenTaskIsDone_shouldNotInterruptItsThread() throws Exception {
+        // Given
+        config = new MvcAsyncConfig(0, 1, 1, 1000, 8, 1000);
+        final ExposedConfigurer configurer = new ExposedConfigurer();
+        config.configureAsyncSupport(configurer);
+        final CallableProcessingInterceptor interceptor = configurer.getCallableInterceptors().get(0);
+        final NativeWebRequest request = new ServletWebRequest(new MockHttpServletRequest());
+        final Callable<Void> done = () -> null;
+        interceptor.preProcess(request, done);
+        interceptor.postProcess(request, done, null);
+
+        // When
+        interceptor.handleTimeout(request, done);
+
+        // Then
+        assertThat(Thread.interrupted()).isFalse();
+    }
+
+    private static final class ExposedConfigurer extends AsyncSupportConfigurer {
+        @Override
+        protected AsyncTaskExecutor getTaskExecutor() {
+            return super.getTaskExecutor();
+        }
+
+        @Override
+        protected Long getTimeout() {
+            return super.getTimeout();
+        }
+
+        @Override
+        protected List<CallableProcessingInterceptor> getCallableInterceptors() {
+            return super.getCallableInterceptors();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.manager;
+
+import io.barracks.devicegateway.exception.BatchTooLargeException;
+import io.barracks.devicegateway.metrics.CallTimers;
+import io.barracks.devicegateway.model.DeviceRequest;
+import io.barracks.devicegateway.model.ResolvedVersions;
+import io.barracks.devicegateway.model.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static io.barracks.devicegateway.utils.DeviceRequestUtils.getDeviceRequest;
+import static io.barracks.devicegateway.utils.ResolvedVersionsUtils.getResolvedVersions;
+import static io.barracks.devicegateway.utils.VersionUtils.getVersion;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class DeviceBatchManagerTest {
+
+    private DeviceManager deviceManager;
+
+    private DeviceBatchManager batchManager;
+
+    @Before
+    public void setUp() {
+        deviceManager = mock(DeviceManager.class);
+        batchManager = new DeviceBatchManager(deviceManager, new CallTimers(), 3, 2, 4);
+    }
+
+    @After
+    public void tearDown() {
+        batchManager.shutdown();
+    }
+
+    @Test
+    public void resolveVersions_shouldReportEveryDevice() throws Exception {
+        // Given
+        final List<DeviceRequest> requests = Arrays.asList(getDeviceRequest(), getDeviceRequest(), getDeviceRequest());
+        final ResolvedVersions resolvedVersions = getResolvedVersions();
+        final IllegalStateException failure = new IllegalStateException("Duplicate package reference");
+        doReturn(resolvedVersions).when(deviceManager).resolveVersions(eq(requests.get(0)), any(DeviceManager.VersionLookup.class));
+        doThrow(failure).when(deviceManager).resolveVersions(eq(requests.get(1)), any(DeviceManager.VersionLookup.class));
+        doReturn(resolvedVersions).when(deviceManager).resolveVersions(eq(requests.get(2)), any(DeviceManager.VersionLookup.class));
+        final Map<DeviceRequest, Object> results = new HashMap<>();
+
+        // When
+        batchManager.resolveVersions(requests, new DeviceBatchManager.Listener() {
+            @Override
+            public void onResolved(DeviceRequest request, ResolvedVersions versions) {
+                results.put(request, versions);
+            }
+
+            @Override
+            public void onFailed(DeviceRequest request, RuntimeException e) {
+                results.put(request, e);
+            }
+        });
+
+        // Then
+        assertThat(results)
+                .hasSize(3)
+                .containsEntry(requests.get(0), resolvedVersions)
+                .containsEntry(requests.get(1), failure)
+                .containsEntry(requests.get(2), resolvedVersions);
+    }
+
+    @Test
+    public void resolveVersions_whenListenerFails_shouldStopResolving() throws Exception {
+        // Given
+        final List<DeviceRequest> requests = Arrays.asList(getDeviceRequest(), getDeviceRequest(), getDeviceRequest(), getDeviceRequest());
+        doReturn(getResolvedVersions()).when(deviceManager).resolveVersions(any(DeviceRequest.class), any(DeviceManager.VersionLookup.class));
+        final IOException exception = new IOException("Broken pipe");
+
+        // When / Then
+        assertThatExceptionOfType(IOException.class)
+                .isThrownBy(() -> batchManager.resolveVersions(requests, new DeviceBatchManager.Listener() {
+                    @Override
+                    public void onResolved(DeviceRequest request, ResolvedVersions versions) throws IOException {
+                        throw exception;
+                    }
+
+                    @Override
+                    public void onFailed(DeviceRequest request, RuntimeException e) {
+                    }
+                }))
+                .isSameAs(exception);
+        verify(deviceManager, atMost(3)).resolveVersions(any(DeviceRequest.class), any(DeviceManager.VersionLookup.class));
+    }
+
+    @Test
+    public void checkSize_whenBatchIsTooLarge_shouldThrowException() {
+        // Then / When
+        batchManager.checkSize(3);
+        assertThatExceptionOfType(BatchTooLargeException.class).isThrownBy(() -> batchManager.checkSize(4));
+    }
+
+    @Test
+    public void sharedVersions_shouldLookUpEachVersionOnce() throws Exception {
+        // Given
+        final Version version = getVersion();
+        final CountDownLatch lookingUp = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            lookingUp.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return version;
+        }).when(deviceManager).getVersion("user", "io.barracks.package", "1.0.0");
+        doReturn(getVersion()).when(deviceManager).getVersion("user", "io.barracks.package", "2.0.0");
+        final DeviceBatchManager.SharedVersions versions = batchManager.new SharedVersions();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            // When
+            final Future<Version> first = executor.submit(() -> versions.getVersion("user", "io.barracks.package", "1.0.0"));
+            lookingUp.await(10, TimeUnit.SECONDS);
+            final Future<Version> second = executor.submit(() -> versions.getVersion("user", "io.barracks.package", "1.0.0"));
+            versions.getVersion("user", "io.barracks.package", "2.0.0");
+            release.countDown();
+
+            // Then
+            assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo(version);
+            assertThat(second.get(10, TimeUnit.SECONDS)).isEqualTo(version);
+            assertThat(versions.getVersion("user", "io.barracks.package", "1.0.0")).isEqualTo(version);
+            verify(deviceManager, times(1)).getVersion("user", "io.barracks.package", "1.0.0");
+            verify(deviceManager, times(1)).getVersion("user", "io.barracks.package", "2.0.0");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sharedVersions_whenLookupFails_shouldFailEveryDeviceNeedingTheVersion() {
+        // Given
+        final IllegalArgumentException failure = new IllegalArgumentException("Unknown version");
+        doThrow(failure).when(deviceManager).getVersion("user", "io.barracks.package", "1.0.0");
+        final DeviceBatchManager.SharedVersions versions = batchManager.new SharedVersions();
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> versions.getVersion("user", "io.barracks.package", "1.0.0"));
+
+        // Then / When
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> versions.getVersion("user", "io.barracks.package", "1.0.0"))
+                .isSameAs(failure);
+        verify(deviceManager, times(1)).getVersion("user", "io.barracks.package", "1.0.0");
+    }
+}
@@ -27,6 +27,7 @@ package io.barracks.devicegateway.manager;
 import io.barracks.devicegateway.client.ComponentServiceClient;
 import io.barracks.devicegateway.client.DeploymentServiceClient;
 import io.barracks.devicegateway.client.QueuingServiceClientV2;
+import io.barracks.devicegateway.metrics.CallTimers;
 import io.barracks.devicegateway.model.*;
 import io.barracks.devicegateway.model.Package;
 import org.junit.Test;
@@ -59,6 +60,9 @@ public class DeviceManagerTest {
     @Mock
     private QueuingServiceClientV2 queuingServiceClientV2;
 
+    @Spy
+    private CallTimers callTimers = new CallTimers();
+
     @InjectMocks
     @Spy
     private DeviceManager manager;
@@ -106,6 +110,30 @@ public class DeviceManagerTest {
         assertThat(result).isEqualTo(resolvedVersions);
     }
 
+    @Test
+    public void resolveVersions_withVersionLookup_shouldGetVersionsFromLookupAndPostDeviceEvent() {
+        // Given
+        final Package aPackage = getPackage();
+        final DeviceRequest deviceRequest = getDeviceRequest().toBuilder()
+                .clearPackages()
+                .addPackage(aPackage)
+                .build();
+        final ResolvedPackages resolvedPackages = ResolvedPackages.builder()
+                .addPresent(aPackage.toBuilder().version(UUID.randomUUID().toString()).build())
+                .build();
+        final Version version = getVersion();
+        final ResolvedVersions expected = ResolvedVersions.builder().addChanged(version).build();
+        doReturn(resolvedPackages).when(deploymentServiceClient).resolvePackages(deviceRequest);
+
+        // When
+        final ResolvedVersions result = manager.resolveVersions(deviceRequest, (userId, reference, versionId) -> version);
+
+        // Then
+        verify(queuingServiceClientV2).postDeviceRequest(DeviceEvent.builder().request(deviceRequest).response(expected).build());
+        verifyZeroInteractions(componentServiceClient);
+        assertThat(result).isEqualTo(expected);
+    }
+
     @Test
     public void buildResolvedVersions_whenDeviceHasVersion_andVersionIsAbsent_shouldReturnUnavailable() {
         // Given
@@ -303,4 +331,41 @@ public class DeviceManagerTest {
         assertThat(response.getChanged()).isEmpty();
         assertThat(response.getUnchanged()).isEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void buildResolvedVersions_whenPackagesAreMixed_shouldClassifyEachPackageOnce() {
+        // Given
+        final Package unchanged = getPackage();
+        final Package changed = getPackage();
+        final Package available = getPackage();
+        final Package unavailable = getPackage();
+        final Package changedOnDevice = changed.toBuilder().version(UUID.randomUUID().toString()).build();
+        final DeviceRequest request = getDeviceRequest().toBuilder()
+                .clearPackages()
+                .addPackage(unchanged)
+                .addPackage(changedOnDevice)
+                .addPackage(unavailable)
+                .build();
+        final ResolvedPackages resolvedPackages = ResolvedPackages.builder()
+                .addPresent(unchanged)
+                .addPresent(changed)
+                .addPresent(available)
+                .addAbsent(unavailable)
+                .build();
+        final Version changedVersion = Version.fromPackage(changed);
+        final Version availableVersion = Version.fromPackage(available);
+        doReturn(changedVersion).when(manager).getVersion(request.getUserId(), changed.getReference(), changed.getVersion().get());
+        doReturn(availableVersion).when(manager).getVersion(request.getUserId(), available.getReference(), available.getVersion().get());
+
+        // When
+        final ResolvedVersions response = manager.buildResolvedVersions(request, resolvedPackages);
+
+        // Then
+        verify(manager).getVersion(request.getUserId(), changed.getReference(), changed.getVersion().get());
+        verify(manager).getVersion(request.getUserId(), available.getReference(), available.getVersion().get());
+        assertThat(response.getAvailable()).containsExactly(availableVersion);
+        assertThat(response.getUnavailable()).containsExactly(Version.fromPackage(unavailable));
+        assertThat(response.getChanged()).containsExactly(changedVersion);
+        assertThat(response.getUnchanged()).containsExactly(Version.fromPackage(unchanged));
+    }
+}
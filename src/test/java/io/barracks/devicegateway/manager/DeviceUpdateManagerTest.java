@@ -34,6 +34,7 @@ import io.barracks.devicegateway.exception.InvalidUpdateStatusException;
 import io.barracks.devicegateway.exception.NotPackageOwnerException;
 import io.barracks.devicegateway.exception.PackageStreamException;
 import io.barracks.devicegateway.exception.NoUpdateAvailableException;
+import io.barracks.devicegateway.metrics.CallTimers;
 import io.barracks.devicegateway.model.*;
 import org.assertj.core.util.Maps;
 import org.junit.Test;
@@ -79,6 +80,12 @@ public class DeviceUpdateManagerTest {
     @Mock
     private ComponentServiceClient componentServiceClient;
 
+    @Mock
+    private DownloadGovernor downloadGovernor;
+
+    @Spy
+    private CallTimers callTimers = new CallTimers();
+
     @InjectMocks
     @Spy
     private DeviceUpdateManager deviceUpdateManager;
@@ -352,6 +359,7 @@ public class DeviceUpdateManagerTest {
 
         // Then
         verify(deviceUpdateManager).checkForUpdate(deviceInfo);
+        verify(deviceUpdateManager).registerDevice(deviceInfo);
         verify(queuingServiceClient).postDeviceInfo(deviceInfo);
         verify(deviceUpdateManager).createDeviceInfo(deviceInfo);
         verify(deviceUpdateManager).getUpdateForDevice(savedDeviceInfo);
@@ -359,6 +367,22 @@ public class DeviceUpdateManagerTest {
         assertThat(opt).isEqualTo(expected);
     }
 
+    @Test
+    public void registerDevice_shouldPostDeviceInfoAndReturnSavedDeviceInfo() {
+        // Given
+        final DeviceInfo deviceInfo = getDeviceInfo();
+        final DeviceInfo savedDeviceInfo = getDeviceInfo();
+        doReturn(savedDeviceInfo).when(deviceUpdateManager).createDeviceInfo(deviceInfo);
+
+        // When
+        final DeviceInfo result = deviceUpdateManager.registerDevice(deviceInfo);
+
+        // Then
+        verify(queuingServiceClient).postDeviceInfo(deviceInfo);
+        verify(deviceUpdateManager).createDeviceInfo(deviceInfo);
+        assertThat(result).isEqualTo(savedDeviceInfo);
+    }
+
     @Test
     public void checkForUpdate_whenNoNewUpdateAvailable_shouldThrowException() throws MalformedURLException {
         // Given
@@ -375,6 +399,7 @@ public class DeviceUpdateManagerTest {
         verify(updateServiceClient).getLatestPublishedUpdateByUserIdAndSegmentId(savedDeviceInfo.getUserId(), savedDeviceInfo.getSegmentId());
         verify(queuingServiceClient).postDeviceInfo(deviceInfo);
         verify(deviceUpdateManager).checkForUpdate(deviceInfo);
+        verify(deviceUpdateManager).registerDevice(deviceInfo);
         verifyNoMoreInteractions(deviceUpdateManager);
     }
 
@@ -384,20 +409,23 @@ public class DeviceUpdateManagerTest {
         final String updateId = UUID.randomUUID().toString();
         final OutputStream outputStream = new ByteArrayOutputStream();
         final PackageInfo packageInfo = getPackageInfo();
+        final ShapedOutputStream shapedStream = mock(ShapedOutputStream.class);
+        doReturn(shapedStream).when(downloadGovernor).shape(packageInfo.getUserId(), outputStream);
 
         final long copied = 1337L;
 
         doReturn(packageInfo).when(deviceUpdateManager).getPackageInfoByUpdateIdAndUserId(updateId, packageInfo.getUserId());
-        doReturn(copied).when(deviceUpdateManager).loadPackageStream(packageInfo, outputStream);
+        doReturn(copied).when(deviceUpdateManager).loadPackageStream(packageInfo, shapedStream);
 
         // When
         long result = deviceUpdateManager.downloadUpdate(packageInfo.getUserId(), updateId, outputStream);
 
         // Then
         verify(deviceUpdateManager).getPackageInfoByUpdateIdAndUserId(updateId, packageInfo.getUserId());
-        verify(deviceUpdateManager).loadPackageStream(packageInfo, outputStream);
+        verify(deviceUpdateManager).loadPackageStream(packageInfo, shapedStream);
         verify(deviceUpdateManager).downloadUpdate(packageInfo.getUserId(), updateId, outputStream);
         verifyNoMoreInteractions(deviceUpdateManager);
+        verify(shapedStream).close();
         assertThat(result).isNotEqualTo(copied);
     }
 
@@ -407,20 +435,23 @@ public class DeviceUpdateManagerTest {
         final String updateId = UUID.randomUUID().toString();
         final OutputStream outputStream = new ByteArrayOutputStream();
         final PackageInfo packageInfo = getPackageInfo();
+        final ShapedOutputStream shapedStream = mock(ShapedOutputStream.class);
+        doReturn(shapedStream).when(downloadGovernor).shape(packageInfo.getUserId(), outputStream);
 
         final long copied = packageInfo.getSize();
 
         doReturn(packageInfo).when(deviceUpdateManager).getPackageInfoByUpdateIdAndUserId(updateId, packageInfo.getUserId());
-        doReturn(copied).when(deviceUpdateManager).loadPackageStream(packageInfo, outputStream);
+        doReturn(copied).when(deviceUpdateManager).loadPackageStream(packageInfo, shapedStream);
 
         // When
         long result = deviceUpdateManager.downloadUpdate(packageInfo.getUserId(), updateId, outputStream);
 
         // Then
         verify(deviceUpdateManager).getPackageInfoByUpdateIdAndUserId(updateId, packageInfo.getUserId());
-        verify(deviceUpdateManager).loadPackageStream(packageInfo, outputStream);
+        verify(deviceUpdateManager).loadPackageStream(packageInfo, shapedStream);
         verify(deviceUpdateManager).downloadUpdate(packageInfo.getUserId(), updateId, outputStream);
         verifyNoMoreInteractions(deviceUpdateManager);
+        verify(shapedStream).close();
         assertThat(result).isEqualTo(copied);
     }
 
@@ -431,14 +462,17 @@ public class DeviceUpdateManagerTest {
         final String packageRef = UUID.randomUUID().toString();
         final String versionId = UUID.randomUUID().toString();
         final OutputStream outputStream = new ByteArrayOutputStream();
+        final ShapedOutputStream shapedStream = mock(ShapedOutputStream.class);
+        doReturn(shapedStream).when(downloadGovernor).shape(userId, outputStream);
         long expected = 123L;
-        doReturn(expected).when(componentServiceClient).getVersionFile(userId, packageRef, versionId, outputStream);
+        doReturn(expected).when(componentServiceClient).getVersionFile(userId, packageRef, versionId, shapedStream);
 
         // When
         long result = deviceUpdateManager.downloadVersion(userId, packageRef, versionId, outputStream);
 
         // Then
         verify(deviceUpdateManager).downloadVersion(userId, packageRef, versionId, outputStream);
+        verify(shapedStream).close();
         assertThat(result).isEqualTo(expected);
     }
 
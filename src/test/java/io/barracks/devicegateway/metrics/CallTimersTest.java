@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.metrics;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class CallTimersTest {
+
+    @Test
+    public void timer_whenCalledTwice_shouldReturnSameTimer() {
+        // Given
+        final CallTimers callTimers = new CallTimers();
+
+        // When
+        final CallTimers.Timer first = callTimers.timer("devicemanager", "resolveVersions");
+        final CallTimers.Timer second = callTimers.timer("devicemanager", "resolveVersions");
+
+        // Then
+        assertThat(first).isSameAs(second);
+    }
+
+    @Test
+    public void record_shouldBreakDownByComponentAndMethodInMillis() {
+        // Given
+        final CallTimers callTimers = new CallTimers();
+        final CallTimers.Timer checkForUpdate = callTimers.timer("updateresource", "checkForUpdate");
+        final CallTimers.Timer downloadUpdate = callTimers.timer("updateresource", "downloadUpdate");
+
+        // When
+        checkForUpdate.record(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10));
+        checkForUpdate.record(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10));
+        downloadUpdate.record(System.nanoTime());
+
+        // Then
+        final Map<String, LatencySnapshot> snapshots = callTimers.getSnapshots().get("updateresource");
+        assertThat(snapshots).containsOnlyKeys("checkForUpdate", "downloadUpdate");
+        assertThat(snapshots.get("checkForUpdate").getCount()).isEqualTo(2L);
+        assertThat(snapshots.get("checkForUpdate").getP50()).isCloseTo(10.0, within(5.0));
+        assertThat(snapshots.get("downloadUpdate").getCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void record_whenRequestIsTimed_shouldAddSpan() {
+        // Given
+        final CallTimers.Timer timer = new CallTimers().timer("devicemanager", "resolveVersions");
+        final RequestTiming timing = RequestTiming.start();
+
+        // When
+        try {
+            timer.record(System.nanoTime());
+        } finally {
+            RequestTiming.stop();
+        }
+
+        // Then
+        assertThat(timing.toServerTiming(0L)).startsWith("devicemanager.resolveVersions;dur=");
+    }
+
+    @Test
+    public void reset_shouldClearRecordedSamples() {
+        // Given
+        final CallTimers callTimers = new CallTimers();
+        final CallTimers.Timer timer = callTimers.timer("updateresource", "checkForUpdate");
+        timer.record(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10));
+        callTimers.getSnapshots();
+        timer.record(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10));
+
+        // When
+        callTimers.reset();
+
+        // Then
+        assertThat(callTimers.getSnapshots().get("updateresource").get("checkForUpdate").getCount()).isEqualTo(0L);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.metrics;
+
+import io.barracks.devicegateway.model.User;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class PingMetricsTest {
+
+    @Test
+    public void increment_shouldCountPerUserAndPerVersion() {
+        // Given
+        final PingMetrics pingMetrics = new PingMetrics(10);
+        final User user = User.builder().id(UUID.randomUUID().toString()).build();
+
+        // When
+        pingMetrics.increment(PingMetrics.ApiVersion.V1, user);
+        pingMetrics.increment(PingMetrics.ApiVersion.V2, user);
+        pingMetrics.increment(PingMetrics.ApiVersion.V2, user);
+
+        // Then
+        assertThat(pingMetrics.getCountsByUser().get(user.getId()))
+                .containsExactly(entry("ping.v1", 1L), entry("ping.v2", 2L));
+    }
+
+    @Test
+    public void increment_whenMaxUsersIsReached_shouldCountInOtherUsers() {
+        // Given
+        final PingMetrics pingMetrics = new PingMetrics(1);
+        final User first = User.builder().id(UUID.randomUUID().toString()).build();
+        final User second = User.builder().id(UUID.randomUUID().toString()).build();
+
+        // When
+        pingMetrics.increment(PingMetrics.ApiVersion.V1, first);
+        pingMetrics.increment(PingMetrics.ApiVersion.V1, second);
+
+        // Then
+        assertThat(pingMetrics.getCountsByUser()).containsOnlyKeys(first.getId(), PingMetrics.OTHER_USERS);
+        assertThat(pingMetrics.getCountsByUser().get(PingMetrics.OTHER_USERS)).contains(entry("ping.v1", 1L));
+    }
+
+    @Test
+    public void metrics_shouldOnlyPublishTotals() {
+        // Given
+        final PingMetrics pingMetrics = new PingMetrics(10);
+        pingMetrics.increment(PingMetrics.ApiVersion.V1, User.builder().id(UUID.randomUUID().toString()).build());
+        pingMetrics.increment(PingMetrics.ApiVersion.V1, User.builder().id(UUID.randomUUID().toString()).build());
+
+        // When
+        final Map<String, Number> metrics = pingMetrics.metrics().stream()
+                .collect(Collectors.toMap(Metric::getName, Metric::getValue));
+
+        // Then
+        assertThat(metrics).containsOnly(entry("ping.v1", 2L), entry("ping.v2", 0L), entry("ping.users", 2));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.metrics;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestTimingFilterTest {
+
+    private static final String BODY = "{\"changed\":[]}";
+
+    @Test
+    public void doFilter_whenHeaderEnabled_shouldAddServerTimingWithRecordedSpans() throws Exception {
+        // Given
+        final RequestTimingFilter filter = new RequestTimingFilter(true, 0.0);
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/resolve");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request, response, new MockFilterChain(new RecordingServlet()));
+
+        // Then
+        assertThat(response.getHeader(RequestTimingFilter.SERVER_TIMING_HEADER))
+                .matches("deploymentservice\\.resolvePackages;dur=12\\.000, "
+                        + "componentservice\\.getVersion;dur=3\\.000, "
+                        + "componentservice\\.getVersion;dur=3\\.000, "
+                        + "total;dur=[0-9.]+");
+        assertThat(response.getContentAsString()).isEqualTo(BODY);
+    }
+
+    @Test
+    public void doFilter_whenPathIsNotTimed_shouldNotAddHeader() throws Exception {
+        // Given
+        final RequestTimingFilter filter = new RequestTimingFilter(true, 1.0);
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/update/download/42");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request, response, new MockFilterChain(new RecordingServlet()));
+
+        // Then
+        assertThat(response.getHeader(RequestTimingFilter.SERVER_TIMING_HEADER)).isNull();
+        assertThat(response.getContentAsString()).isEqualTo(BODY);
+    }
+
+    @Test
+    public void doFilter_whenDisabled_shouldNotAddHeader() throws Exception {
+        // Given
+        final RequestTimingFilter filter = new RequestTimingFilter(false, 0.0);
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/update/check");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request, response, new MockFilterChain(new RecordingServlet()));
+
+        // Then
+        assertThat(response.getHeader(RequestTimingFilter.SERVER_TIMING_HEADER)).isNull();
+        assertThat(response.getContentAsString()).isEqualTo(BODY);
+    }
+
+    @Test
+    public void doFilter_whenOnlySampled_shouldNotBufferNorAddHeader() throws Exception {
+        // Given
+        final RequestTimingFilter filter = new RequestTimingFilter(false, 1.0);
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/update/check");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request, response, new MockFilterChain(new RecordingServlet()));
+
+        // Then
+        assertThat(response.getHeader(RequestTimingFilter.SERVER_TIMING_HEADER)).isNull();
+        assertThat(response.getContentAsString()).isEqualTo(BODY);
+    }
+
+    @Test
+    public void record_whenNoTimingIsStarted_shouldBeIgnored() {
+        // When
+        RequestTiming.record("deploymentservice.resolvePackages", 1L);
+
+        // Then
+        final RequestTiming timing = RequestTiming.start();
+        RequestTiming.stop();
+        assertThat(timing.toServerTiming(0L)).isEqualTo("total;dur=0.000");
+    }
+
+    @Test
+    public void bind_shouldRecordSpansOfAnotherThreadIntoTheRequestTiming() {
+        // Given
+        final RequestTiming timing = RequestTiming.start();
+        final Supplier<String> call = RequestTiming.bind(() -> {
+            RequestTiming.record("componentservice.getVersion", TimeUnit.MILLISECONDS.toNanos(3));
+            return "version";
+        });
+        RequestTiming.stop();
+
+        // When
+        final String result = CompletableFuture.supplyAsync(call).join();
+
+        // Then
+        assertThat(result).isEqualTo("version");
+        assertThat(timing.toServerTiming(0L)).isEqualTo("componentservice.getVersion;dur=3.000, total;dur=0.000");
+    }
+
+    private static class RecordingServlet extends HttpServlet {
+        @Override
+        protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            RequestTiming.record("deploymentservice.resolvePackages", TimeUnit.MILLISECONDS.toNanos(12));
+            RequestTiming.record("componentservice.getVersion", TimeUnit.MILLISECONDS.toNanos(3));
+            RequestTiming.record("componentservice.getVersion", TimeUnit.MILLISECONDS.toNanos(3));
+            resp.getWriter().write(BODY);
+            resp.flushBuffer();
+        }
+    }
+}
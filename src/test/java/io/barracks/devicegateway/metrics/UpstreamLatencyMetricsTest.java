@@ -0,0 +1,147 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.metrics;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class UpstreamLatencyMetricsTest {
+
+    @Test
+    public void record_shouldBreakDownByClientOperationAndStatus() {
+        // Given
+        final UpstreamLatencyMetrics metrics = new UpstreamLatencyMetrics();
+        final UpstreamLatencyMetrics.Operation operation = metrics.operation("deploymentservice", "resolvePackages");
+        final long start = System.nanoTime();
+
+        // When
+        operation.record(HttpStatus.OK, start);
+        operation.record(HttpStatus.OK, start);
+        operation.record(HttpStatus.BAD_GATEWAY, start);
+        operation.recordFailure(start);
+
+        // Then
+        final Map<String, LatencySnapshot> snapshots = metrics.getSnapshots()
+                .get("deploymentservice").get("resolvePackages");
+        assertThat(snapshots).containsOnlyKeys("200", "502", UpstreamLatencyMetrics.FAILURE);
+        assertThat(snapshots.get("200").getCount()).isEqualTo(2L);
+        assertThat(snapshots.get("502").getCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void operation_whenCalledTwice_shouldReturnSameOperation() {
+        // Given
+        final UpstreamLatencyMetrics metrics = new UpstreamLatencyMetrics();
+
+        // When
+        final UpstreamLatencyMetrics.Operation first = metrics.operation("updateservice", "getUpdateByUuid");
+        final UpstreamLatencyMetrics.Operation second = metrics.operation("updateservice", "getUpdateByUuid");
+
+        // Then
+        assertThat(first).isSameAs(second);
+    }
+
+    @Test
+    public void getSnapshots_shouldAccumulateAcrossReadsAndReportPercentilesInMillis() {
+        // Given
+        final UpstreamLatencyMetrics metrics = new UpstreamLatencyMetrics();
+        final UpstreamLatencyMetrics.Operation operation = metrics.operation("queuingservice", "postDeviceRequest");
+        operation.record("success", System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10));
+        metrics.getSnapshots();
+        operation.record("success", System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10));
+
+        // When
+        final LatencySnapshot snapshot = metrics.getSnapshots()
+                .get("queuingservice").get("postDeviceRequest").get("success");
+
+        // Then
+        assertThat(snapshot.getCount()).isEqualTo(2L);
+        assertThat(snapshot.getP50()).isCloseTo(10.0, within(5.0));
+        assertThat(snapshot.getP999()).isGreaterThanOrEqualTo(snapshot.getP50());
+        assertThat(snapshot.getMax()).isGreaterThanOrEqualTo(snapshot.getP999());
+    }
+
+    @Test
+    public void takeRecentValueAtPercentile_shouldOnlyCoverSamplesSinceLastTaken() {
+        // Given
+        final UpstreamLatencyMetrics metrics = new UpstreamLatencyMetrics();
+        final UpstreamLatencyMetrics.Operation operation = metrics.operation("componentservice", "getVersion");
+        record(operation, 20, 10);
+        final long before = operation.takeRecentValueAtPercentile(HttpStatus.OK, 95.0, 20);
+
+        // When
+        record(operation, 20, 50);
+        final long after = operation.takeRecentValueAtPercentile(HttpStatus.OK, 95.0, 20);
+
+        // Then
+        assertThat(before).isCloseTo(TimeUnit.MILLISECONDS.toMicros(10), within(5000L));
+        assertThat(after).isCloseTo(TimeUnit.MILLISECONDS.toMicros(50), within(5000L));
+        assertThat(metrics.getSnapshots().get("componentservice").get("getVersion").get("200").getCount()).isEqualTo(40L);
+    }
+
+    @Test
+    public void takeRecentValueAtPercentile_whenTooFewSamples_shouldKeepThemForNextTime() {
+        // Given
+        final UpstreamLatencyMetrics metrics = new UpstreamLatencyMetrics();
+        final UpstreamLatencyMetrics.Operation operation = metrics.operation("componentservice", "getVersion");
+        record(operation, 10, 10);
+
+        // When
+        final long tooFew = operation.takeRecentValueAtPercentile(HttpStatus.OK, 95.0, 20);
+        record(operation, 10, 10);
+        final long enough = operation.takeRecentValueAtPercentile(HttpStatus.OK, 95.0, 20);
+
+        // Then
+        assertThat(tooFew).isEqualTo(0L);
+        assertThat(enough).isCloseTo(TimeUnit.MILLISECONDS.toMicros(10), within(5000L));
+    }
+
+    @Test
+    public void reset_shouldClearRecordedSamples() {
+        // Given
+        final UpstreamLatencyMetrics metrics = new UpstreamLatencyMetrics();
+        final UpstreamLatencyMetrics.Operation operation = metrics.operation("deploymentservice", "resolvePackages");
+        operation.record(HttpStatus.OK, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10));
+
+        // When
+        metrics.reset();
+
+        // Then
+        assertThat(operation.getValueAtPercentile(HttpStatus.OK, 99.0)).isEqualTo(0L);
+        assertThat(metrics.getSnapshots().get("deploymentservice").get("resolvePackages").get("200").getCount()).isEqualTo(0L);
+    }
+
+    private static void record(UpstreamLatencyMetrics.Operation operation, int count, long latencyMillis) {
+        for (int i = 0; i < count; i++) {
+            operation.record(HttpStatus.OK, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        }
+    }
+}
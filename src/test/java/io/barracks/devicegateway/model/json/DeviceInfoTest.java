@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.model.json;
+
+import io.barracks.devicegateway.model.DeviceInfo;
+import io.barracks.devicegateway.utils.DeviceInfoUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.JsonTest;
+import org.springframework.boot.test.json.JacksonTester;
+import org.springframework.boot.test.json.JsonContent;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+@RunWith(SpringRunner.class)
+@JsonTest
+public class DeviceInfoTest {
+    @Autowired
+    private JacksonTester<DeviceInfo> json;
+
+    @Test
+    public void deserialize_shouldParseReceptionDateAndWrapAdditionalProperties() throws Exception {
+        // Given
+        final String content = "{\"unitId\":\" unitId \",\"receptionDate\":\"2016-08-02T20:35+0000\","
+                + "\"additionalProperties\":{\"aProperty\":\"aValue\"}}";
+
+        // When
+        final DeviceInfo result = json.parseObject(content);
+
+        // Then
+        assertThat(result.getUnitId()).isEqualTo("unitId");
+        assertThat(result.getReceptionDate()).isEqualTo(Instant.parse("2016-08-02T20:35:00Z"));
+        assertThat(result.getAdditionalProperties()).containsOnly(entry("aProperty", "aValue"));
+    }
+
+    @Test
+    public void serialize_shouldWriteReceptionDateLikeADate() throws Exception {
+        // Given
+        final DeviceInfo deviceInfo = DeviceInfoUtils.getDeviceInfo().toBuilder()
+                .receptionDate(Instant.parse("2016-08-02T20:35:00.123Z"))
+                .build();
+
+        // When
+        final JsonContent<DeviceInfo> result = json.write(deviceInfo);
+
+        // Then
+        assertThat(result).extractingJsonPathNumberValue("receptionDate").isEqualTo(1470170100123L);
+        assertThat(result).extractingJsonPathMapValue("additionalProperties").isEqualTo(deviceInfo.getAdditionalProperties());
+    }
+
+    @Test
+    public void getAdditionalProperties_shouldShareTheSnapshot() {
+        // Given
+        final DeviceInfo deviceInfo = DeviceInfoUtils.getDeviceInfo();
+
+        // When
+        final DeviceInfo copy = deviceInfo.toBuilder().userId("other").build();
+
+        // Then
+        assertThat(deviceInfo.getAdditionalProperties()).isSameAs(deviceInfo.getAdditionalProperties());
+        assertThat(copy.getAdditionalProperties()).isSameAs(deviceInfo.getAdditionalProperties());
+    }
+}
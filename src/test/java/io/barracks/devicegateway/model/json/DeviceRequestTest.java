@@ -27,6 +27,7 @@ package io.barracks.devicegateway.model.json;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.barracks.devicegateway.model.DeviceRequest;
 import io.barracks.devicegateway.model.Package;
+import io.barracks.devicegateway.model.utils.RawJsonMap;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -37,10 +38,12 @@ import org.springframework.boot.test.json.JsonContent;
 import org.springframework.core.io.Resource;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.Collections;
 import java.util.stream.IntStream;
 
 import static io.barracks.devicegateway.utils.DeviceRequestUtils.getDeviceRequest;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 
 @RunWith(SpringRunner.class)
 @JsonTest
@@ -98,4 +101,48 @@ public class DeviceRequestTest {
                 }
         );
     }
+
+    @Test
+    public void deserialize_shouldTrimUnitIdAndSkipUnknownProperties() throws Exception {
+        // Given
+        final String content = "{\"unknown\":{\"nested\":[1,2,{}]},\"unitId\":\"  unit  \","
+                + "\"packages\":[{\"reference\":\"abc\",\"unknown\":[true],\"version\":\"1.0\"}]}";
+
+        // When
+        final DeviceRequest result = json.parseObject(content);
+
+        // Then
+        assertThat(result).isEqualTo(DeviceRequest.builder()
+                .unitId("unit")
+                .addPackage(Package.builder().reference("abc").version("1.0").build())
+                .build()
+        );
+        assertThat(result.getCustomClientData()).isEmpty();
+    }
+
+    @Test
+    public void deserialize_shouldKeepCustomClientDataAsTokensAndWriteItBack() throws Exception {
+        // Given
+        final String customClientData = "{\"nested\":{\"list\":[1,2.5,\"three\",null]},\"flag\":false}";
+        final String content = "{\"unitId\":\"unit\",\"customClientData\":" + customClientData + ",\"packages\":[]}";
+
+        // When
+        final DeviceRequest result = json.parseObject(content);
+
+        // Then
+        assertThat(result.getCustomClientData()).isInstanceOf(RawJsonMap.class);
+        assertThat(json.write(result)).extractingJsonPathMapValue("@.customClientData")
+                .isEqualTo(objectMapper.readValue(customClientData, Object.class));
+        assertThat(result.getCustomClientData()).contains(entry("flag", false));
+    }
+
+    @Test
+    public void deserialize_whenCustomClientDataIsNull_shouldKeepNull() throws Exception {
+        // When
+        final DeviceRequest result = json.parseObject("{\"unitId\":\"unit\",\"customClientData\":null,\"packages\":[]}");
+
+        // Then
+        assertThat(result.getCustomClientData()).isNull();
+        assertThat(result.getPackages()).isEqualTo(Collections.emptyList());
+    }
 }
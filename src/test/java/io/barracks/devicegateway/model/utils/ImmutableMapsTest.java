@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.model.utils;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class ImmutableMapsTest {
+
+    @Test
+    public void snapshot_whenMapIsImmutable_shouldReturnSameInstance() {
+        // Given
+        final Map<String, Object> unmodifiable = Collections.unmodifiableMap(new HashMap<>());
+        final Map<String, Object> guava = ImmutableMap.of("key", "value");
+
+        // Then
+        assertThat(ImmutableMaps.snapshot(unmodifiable)).isSameAs(unmodifiable);
+        assertThat(ImmutableMaps.snapshot(guava)).isSameAs(guava);
+        assertThat(ImmutableMaps.snapshot(null)).isNull();
+    }
+
+    @Test
+    public void snapshot_whenMapIsMutable_shouldReturnUnmodifiableCopyKeepingOrderAndNulls() {
+        // Given
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("b", 1);
+        map.put("a", null);
+
+        // When
+        final Map<String, Object> result = ImmutableMaps.snapshot(map);
+        map.put("c", 2);
+
+        // Then
+        assertThat(result).containsExactly(entry("b", 1), entry("a", null));
+        assertThatExceptionOfType(UnsupportedOperationException.class).isThrownBy(() -> result.put("d", 3));
+    }
+
+    @Test
+    public void with_shouldReturnUnmodifiableCopyWithEntry() {
+        // Given
+        final Map<String, Object> map = ImmutableMaps.snapshot(Collections.singletonMap("a", 1));
+
+        // When
+        final Map<String, Object> result = ImmutableMaps.with(map, "b", 2);
+
+        // Then
+        assertThat(map).containsOnlyKeys("a");
+        assertThat(result).containsExactly(entry("a", 1), entry("b", 2));
+        assertThat(ImmutableMaps.snapshot(result)).isSameAs(result);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.model.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RawJsonMapTest {
+
+    private static final String JSON = "{\"pi\":3.14159265358979323846,\"big\":123456789012345678901234567890,"
+            + "\"text\":\"a \\\"quoted\\\" \\u00e9\",\"list\":[true,null,{}],\"empty\":{}}";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void read_shouldKeepNumbersAndStringsAsWritten() throws IOException {
+        // Given
+        final JsonParser parser = mapper.getFactory().createParser(JSON + " trailing");
+        parser.nextToken();
+
+        // When
+        final RawJsonMap map = RawJsonMap.read(parser);
+
+        // Then
+        assertThat(mapper.writeValueAsString(map))
+                .isEqualTo("{\"pi\":3.14159265358979323846,\"big\":123456789012345678901234567890,"
+                        + "\"text\":\"a \\\"quoted\\\" \u00e9\",\"list\":[true,null,{}],\"empty\":{}}");
+        assertThat(parser.getCurrentToken().asString()).isEqualTo("}");
+    }
+
+    @Test
+    public void entrySet_shouldBindContentOnRead() throws IOException {
+        // Given
+        final JsonParser parser = mapper.getFactory().createParser("{\"flag\":true,\"list\":[1,\"two\"]}");
+        parser.nextToken();
+        final Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("flag", true);
+        expected.put("list", Arrays.asList(1, "two"));
+
+        // When
+        final RawJsonMap map = RawJsonMap.read(parser);
+
+        // Then
+        assertThat(map).isEqualTo(expected);
+        assertThat(map.get("flag")).isEqualTo(true);
+        assertThat(map).isNotEqualTo(Collections.emptyMap());
+    }
+
+    @Test
+    public void serialize_whenGeneratorIsNotJson_shouldCopyTokens() throws IOException {
+        // Given
+        final JsonParser parser = mapper.getFactory().createParser("{\"flag\":true,\"count\":2}");
+        parser.nextToken();
+        final RawJsonMap map = RawJsonMap.read(parser);
+        final TokenBuffer buffer = new TokenBuffer(mapper, false);
+
+        // When
+        mapper.writeValue(buffer, map);
+
+        // Then
+        final Map<String, Object> written = mapper.readValue(buffer.asParser(), new TypeReference<Map<String, Object>>() {
+        });
+        assertThat(written).isEqualTo(map);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.notification;
+
+import io.barracks.devicegateway.model.UpdateNotification;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.UUID;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UpdateNotificationListenerTest {
+
+    @Mock
+    private UpdateNotificationRegistry registry;
+
+    @InjectMocks
+    private UpdateNotificationListener listener;
+
+    @Test
+    public void onUpdateNotification_shouldPublishToRegistry() {
+        // Given
+        final UpdateNotification notification = UpdateNotification.builder()
+                .userId(UUID.randomUUID().toString())
+                .segmentId(UUID.randomUUID().toString())
+                .build();
+
+        // When
+        listener.onUpdateNotification(notification);
+
+        // Then
+        verify(registry).publish(notification);
+    }
+
+    @Test
+    public void onUpdateNotification_whenUserIsMissing_shouldIgnoreNotification() {
+        // Given
+        final UpdateNotification notification = UpdateNotification.builder()
+                .packageRef("io.barracks.package")
+                .build();
+
+        // When
+        listener.onUpdateNotification(notification);
+
+        // Then
+        verify(registry, never()).publish(any(UpdateNotification.class));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.notification;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.barracks.devicegateway.model.UpdateNotification;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class UpdateNotificationRegistryTest {
+
+    private final String userId = UUID.randomUUID().toString();
+
+    private final UpdateNotificationRegistry registry = spy(new UpdateNotificationRegistry(1000, 1000, MoreExecutors.newDirectExecutorService()));
+
+    @Test
+    public void publish_whenSegmentNotification_shouldNotifySegmentSubscribersOnly() throws Exception {
+        // Given
+        final SseEmitter segment = subscribe(UpdateNotificationRegistry.Key.forSegment(userId, "segment"));
+        final SseEmitter otherSegment = subscribe(UpdateNotificationRegistry.Key.forSegment(userId, "other"));
+        final SseEmitter otherUser = subscribe(UpdateNotificationRegistry.Key.forSegment(UUID.randomUUID().toString(), "segment"));
+        final UpdateNotification notification = UpdateNotification.builder().userId(userId).segmentId("segment").build();
+
+        // When
+        final int notified = registry.publish(notification);
+
+        // Then
+        assertThat(notified).isEqualTo(1);
+        verify(segment).send(any(SseEmitter.SseEventBuilder.class));
+        verify(otherSegment, never()).send(any(SseEmitter.SseEventBuilder.class));
+        verify(otherUser, never()).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    public void publish_whenPackageNotification_shouldNotifyPackageSubscribers() throws Exception {
+        // Given
+        final SseEmitter emitter = subscribe(
+                UpdateNotificationRegistry.Key.forPackage(userId, "io.barracks.a"),
+                UpdateNotificationRegistry.Key.forPackage(userId, "io.barracks.b")
+        );
+        final SseEmitter segment = subscribe(UpdateNotificationRegistry.Key.forSegment(userId, null));
+        final UpdateNotification notification = UpdateNotification.builder().userId(userId).packageRef("io.barracks.b").build();
+
+        // When
+        final int notified = registry.publish(notification);
+
+        // Then
+        assertThat(notified).isEqualTo(1);
+        verify(emitter).send(any(SseEmitter.SseEventBuilder.class));
+        verify(segment, never()).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    public void publish_whenStreamIsCompleted_shouldNotNotifyIt() throws Exception {
+        // Given
+        final UpdateNotificationRegistry.Key key = UpdateNotificationRegistry.Key.forSegment(userId, null);
+        final SseEmitter emitter = subscribe(key);
+        final ArgumentCaptor<Runnable> onCompletion = ArgumentCaptor.forClass(Runnable.class);
+        verify(emitter).onCompletion(onCompletion.capture());
+
+        // When
+        onCompletion.getValue().run();
+
+        // Then
+        assertThat(registry.publish(UpdateNotification.builder().userId(userId).build())).isEqualTo(0);
+        assertThat(registry.getSubscriberCount()).isEqualTo(0);
+        verify(emitter, never()).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    public void heartbeat_whenWriteFails_shouldCloseStream() throws Exception {
+        // Given
+        final SseEmitter emitter = subscribe(UpdateNotificationRegistry.Key.forSegment(userId, null));
+        final IOException exception = new IOException("Broken pipe");
+        doThrow(exception).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+
+        // When
+        registry.heartbeat();
+
+        // Then
+        verify(emitter).completeWithError(exception);
+        assertThat(registry.getSubscriberCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void publish_whenStreamStalls_shouldNotBlockCallerNorOtherBatches() throws Exception {
+        // Given
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        final UpdateNotificationRegistry pooledRegistry = spy(new UpdateNotificationRegistry(1000, 1, executor));
+        final CountDownLatch release = new CountDownLatch(1);
+        final SseEmitter stalled = mock(SseEmitter.class);
+        doAnswer(invocation -> release.await(5, TimeUnit.SECONDS)).when(stalled).send(any(SseEmitter.SseEventBuilder.class));
+        final SseEmitter other = mock(SseEmitter.class);
+        for (SseEmitter emitter : Arrays.asList(stalled, other)) {
+            doReturn(emitter).when(pooledRegistry).createEmitter();
+            pooledRegistry.subscribe(Arrays.asList(UpdateNotificationRegistry.Key.forSegment(userId, null)));
+        }
+
+        try {
+            // When
+            final long start = System.nanoTime();
+            final int targets = pooledRegistry.publish(UpdateNotification.builder().userId(userId).build());
+            pooledRegistry.heartbeat();
+            pooledRegistry.heartbeat();
+
+            // Then
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(1));
+            assertThat(targets).isEqualTo(2);
+            verify(other, timeout(5000).times(2)).send(any(SseEmitter.SseEventBuilder.class));
+            verify(other, after(200).times(2)).send(any(SseEmitter.SseEventBuilder.class));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void metrics_shouldReportSubscribersAndSentEvents() throws Exception {
+        // Given
+        final SseEmitter emitter = subscribe(UpdateNotificationRegistry.Key.forSegment(userId, null));
+        subscribe(UpdateNotificationRegistry.Key.forSegment(userId, "segment"));
+        registry.notify(emitter, UpdateNotification.builder().userId(userId).build());
+
+        // When / Then
+        assertThat(registry.metrics())
+                .extracting("name", "value")
+                .containsExactly(
+                        tuple("notifications.subscribers", 2),
+                        tuple("notifications.sent", 1L)
+                );
+    }
+
+    private SseEmitter subscribe(UpdateNotificationRegistry.Key... keys) {
+        final SseEmitter emitter = mock(SseEmitter.class);
+        doReturn(emitter).when(registry).createEmitter();
+        assertThat(registry.subscribe(Arrays.asList(keys))).isSameAs(emitter);
+        return emitter;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.rest;
+
+import io.barracks.devicegateway.exception.DeviceGatewayException;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DownloadUrlTemplateTest {
+
+    @Test
+    public void expand_shouldReplaceVariablesInOrder() {
+        // Given
+        final DownloadUrlTemplate template = new DownloadUrlTemplate("/packages/{packageRef}/versions/{versionId}/file");
+        final String reference = UUID.randomUUID().toString();
+        final String version = UUID.randomUUID().toString();
+
+        // When
+        final String result = template.expand("https://app.barracks.io", reference, version);
+
+        // Then
+        assertThat(result).isEqualTo("https://app.barracks.io/packages/" + reference + "/versions/" + version + "/file");
+    }
+
+    @Test
+    public void expand_whenValueContainsReservedCharacters_shouldEscapePathSegment() {
+        // Given
+        final DownloadUrlTemplate template = new DownloadUrlTemplate("/update/download/{uuid}");
+
+        // When
+        final String result = template.expand("http://localhost", "a b/c?d");
+
+        // Then
+        assertThat(result).isEqualTo("http://localhost/update/download/a%20b%2Fc%3Fd");
+    }
+
+    @Test
+    public void expand_whenValueCountDiffers_shouldThrowException() {
+        // Given
+        final DownloadUrlTemplate template = new DownloadUrlTemplate("/update/download/{uuid}");
+
+        // Then / When
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> template.expand("http://localhost", "a", "b"));
+    }
+
+    @Test
+    public void getBaseUrl_whenCalledTwice_shouldReturnSameValue() {
+        // Given
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("Host")).thenReturn("localhost:8080");
+        when(request.getHeader("X-Forwarded-Proto")).thenReturn("https");
+        when(request.getHeader("X-Forwarded-Prefix")).thenReturn("/api/device");
+
+        // When
+        final String first = DownloadUrlTemplate.getBaseUrl(request);
+        final String second = DownloadUrlTemplate.getBaseUrl(request);
+
+        // Then
+        assertThat(first).isEqualTo("https://localhost:8080/api/device");
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    public void getBaseUrl_whenProtocolIsUnknown_shouldThrowException() {
+        // Given
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("Host")).thenReturn("localhost");
+        when(request.getHeader("X-Forwarded-Proto")).thenReturn("unknown");
+
+        // Then / When
+        assertThatExceptionOfType(DeviceGatewayException.class)
+                .isThrownBy(() -> DownloadUrlTemplate.getBaseUrl(request));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.rest;
+
+import io.barracks.devicegateway.exception.NoUpdateAvailableException;
+import io.barracks.devicegateway.manager.DeviceUpdateManager;
+import io.barracks.devicegateway.metrics.PingMetrics;
+import io.barracks.devicegateway.model.*;
+import io.barracks.devicegateway.notification.UpdateNotificationRegistry;
+import io.barracks.devicegateway.rest.entity.DeviceRequestEntity;
+import io.barracks.devicegateway.utils.RandomPrincipal;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.stream.Collectors;
+
+import static io.barracks.devicegateway.utils.DetailedUpdateUtils.getDetailedUpdate;
+import static io.barracks.devicegateway.utils.DeviceInfoUtils.getDeviceInfo;
+import static io.barracks.devicegateway.utils.DeviceRequestEntityUtils.getDeviceRequestEntity;
+import static io.barracks.devicegateway.utils.DeviceRequestUtils.getDeviceRequest;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationResourceTest {
+
+    @Mock
+    private DeviceUpdateManager deviceUpdateManager;
+
+    @Mock
+    private UpdateNotificationRegistry registry;
+
+    @Mock
+    private PingMetrics pingMetrics;
+
+    @InjectMocks
+    private NotificationResource notificationResource;
+
+    private RandomPrincipal principal;
+
+    @Before
+    public void setUp() throws Exception {
+        this.principal = new RandomPrincipal();
+    }
+
+    @Test
+    public void subscribeToUpdates_whenNoUpdateIsAvailable_shouldRegisterDeviceAndWaitOnItsSegment() {
+        // Given
+        final User user = principal.getDetails();
+        final DeviceRequestEntity deviceRequest = getDeviceRequestEntity();
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("X-Forwarded-For", "192.168.52.79, 192.168.54.7");
+        request.addHeader("user-agent", "agent");
+        final DeviceInfo deviceInfo = DeviceInfo.builder()
+                .userId(user.getId())
+                .unitId(deviceRequest.getUnitId())
+                .versionId(deviceRequest.getVersionId())
+                .additionalProperties(deviceRequest.getCustomClientData())
+                .deviceIP("192.168.52.79")
+                .userAgent("agent")
+                .build();
+        final DeviceInfo savedDeviceInfo = getDeviceInfo();
+        final SseEmitter emitter = new SseEmitter();
+        doReturn(savedDeviceInfo).when(deviceUpdateManager).registerDevice(deviceInfo);
+        doThrow(NoUpdateAvailableException.class).when(deviceUpdateManager).getUpdateForDevice(savedDeviceInfo);
+        doReturn(emitter).when(registry).subscribe(Collections.singleton(
+                UpdateNotificationRegistry.Key.forSegment(user.getId(), savedDeviceInfo.getSegmentId())
+        ));
+
+        // When
+        final SseEmitter result = notificationResource.subscribeToUpdates(request, deviceRequest, principal);
+
+        // Then
+        assertThat(result).isSameAs(emitter);
+        verify(pingMetrics).increment(PingMetrics.ApiVersion.V1, user);
+        verify(registry, never()).notify(any(SseEmitter.class), any(UpdateNotification.class));
+    }
+
+    @Test
+    public void subscribeToUpdates_whenUpdateIsAvailable_shouldNotifyRightAway() {
+        // Given
+        final User user = principal.getDetails();
+        final DeviceInfo savedDeviceInfo = getDeviceInfo();
+        final DetailedUpdate update = getDetailedUpdate();
+        final SseEmitter emitter = new SseEmitter();
+        doReturn(savedDeviceInfo).when(deviceUpdateManager).registerDevice(any(DeviceInfo.class));
+        doReturn(update).when(deviceUpdateManager).getUpdateForDevice(savedDeviceInfo);
+        doReturn(emitter).when(registry).subscribe(Collections.singleton(
+                UpdateNotificationRegistry.Key.forSegment(user.getId(), savedDeviceInfo.getSegmentId())
+        ));
+
+        // When
+        notificationResource.subscribeToUpdates(new MockHttpServletRequest(), getDeviceRequestEntity(), principal);
+
+        // Then
+        verify(registry).notify(emitter, UpdateNotification.builder()
+                .userId(user.getId())
+                .segmentId(savedDeviceInfo.getSegmentId())
+                .updateId(update.getUpdate().getUuid())
+                .build()
+        );
+    }
+
+    @Test
+    public void subscribeToVersions_shouldWaitOnEachPackage() {
+        // Given
+        final DeviceRequest deviceRequest = getDeviceRequest();
+        final SseEmitter emitter = new SseEmitter();
+        doReturn(emitter).when(registry).subscribe(
+                deviceRequest.getPackages().stream()
+                        .map(pkg -> UpdateNotificationRegistry.Key.forPackage(principal.getName(), pkg.getReference()))
+                        .collect(Collectors.toCollection(HashSet::new))
+        );
+
+        // When
+        final SseEmitter result = notificationResource.subscribeToVersions(deviceRequest, principal);
+
+        // Then
+        assertThat(result).isSameAs(emitter);
+        verifyZeroInteractions(deviceUpdateManager);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.rest;
+
+import io.barracks.devicegateway.metrics.PingMetrics;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class PollHintsTest {
+
+    private final PingMetrics pingMetrics = mock(PingMetrics.class);
+
+    private final PollHints pollHints = new PollHints(pingMetrics, 300, 3600, 100, 0.5);
+
+    @Test
+    public void nextPoll_shouldBeStablePerUnit_andSpreadOverTheInterval() {
+        // Given
+        final Set<Integer> hints = new HashSet<>();
+        int early = 0;
+
+        // When
+        for (int i = 0; i < 1000; i++) {
+            final String unitId = UUID.randomUUID().toString();
+            final int hint = pollHints.nextPoll(unitId);
+            assertThat(pollHints.nextPoll(unitId)).isEqualTo(hint);
+            assertThat(hint).isBetween(150, 450);
+            hints.add(hint);
+            if (hint < 300) {
+                early++;
+            }
+        }
+
+        // Then
+        assertThat(hints.size()).isGreaterThan(250);
+        assertThat(early).isBetween(400, 600);
+    }
+
+    @Test
+    public void getInterval_whenPollRateExceedsTarget_shouldStretchInterval() {
+        // Given
+        final long start = System.nanoTime();
+        pollHints.sample(start);
+        doReturn(400L).when(pingMetrics).getTotal();
+
+        // When
+        pollHints.sample(start + TimeUnit.SECONDS.toNanos(1));
+
+        // Then
+        assertThat(pollHints.getRate()).isEqualTo(400.0);
+        assertThat(pollHints.getInterval()).isEqualTo(1200);
+    }
+
+    @Test
+    public void getInterval_whenPollRateDrops_shouldShrinkIntervalSlowly() {
+        // Given
+        final long start = System.nanoTime();
+        pollHints.sample(start);
+        doReturn(400L).when(pingMetrics).getTotal();
+        pollHints.sample(start + TimeUnit.SECONDS.toNanos(1));
+
+        // When
+        pollHints.sample(start + TimeUnit.SECONDS.toNanos(2));
+
+        // Then
+        assertThat(pollHints.getRate()).isEqualTo(320.0);
+        assertThat(pollHints.getInterval()).isEqualTo(960);
+    }
+
+    @Test
+    public void getInterval_shouldStayWithinBounds() {
+        // Given
+        final long start = System.nanoTime();
+        pollHints.sample(start);
+        assertThat(pollHints.getInterval()).isEqualTo(300);
+        doReturn(1000000L).when(pingMetrics).getTotal();
+
+        // When
+        pollHints.sample(start + TimeUnit.SECONDS.toNanos(1));
+
+        // Then
+        assertThat(pollHints.getInterval()).isEqualTo(3600);
+        assertThat(pollHints.nextPoll("unit")).isBetween(1800, 5400);
+    }
+}
@@ -25,9 +25,12 @@
 package io.barracks.devicegateway.rest;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sun.security.auth.UserPrincipal;
 import io.barracks.devicegateway.exception.DeviceGatewayException;
 import io.barracks.devicegateway.manager.DeviceUpdateManager;
+import io.barracks.devicegateway.metrics.CallTimers;
+import io.barracks.devicegateway.metrics.PingMetrics;
 import io.barracks.devicegateway.model.DetailedUpdate;
 import io.barracks.devicegateway.model.DeviceInfo;
 import io.barracks.devicegateway.model.Update;
@@ -43,7 +46,8 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
-import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletResponse;
 
 import javax.servlet.http.HttpServletRequest;
@@ -63,11 +67,22 @@ import static org.mockito.Mockito.*;
 @RunWith(MockitoJUnitRunner.class)
 public class UpdateResourceTest {
     @Mock
-    private CounterService counter;
+    private PingMetrics pingMetrics;
 
     @Mock
     private DeviceUpdateManager deviceUpdateManager;
 
+    @Mock
+    private PollHints pollHints;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Spy
+    private DeviceUpdateBodyCache deviceUpdateBodyCache = new DeviceUpdateBodyCache(mapper, 100);
+
+    @Spy
+    private CallTimers callTimers = new CallTimers();
+
     @InjectMocks
     @Spy
     private UpdateResource updateResource;
@@ -112,18 +127,24 @@ public class UpdateResourceTest {
         doReturn(ipData).when(requestMock).getHeader("X-Forwarded-For");
         doReturn(userAgent).when(requestMock).getHeader("user-agent");
         doReturn(detailedUpdate).when(deviceUpdateManager).checkForUpdate(deviceInfo);
-        doReturn(url).when(updateResource).buildDownloadUrl(requestMock, detailedUpdate.getUpdate());
+        doReturn(url.toString()).when(updateResource).buildDownloadUrl(requestMock, detailedUpdate.getUpdate());
+        doReturn(420).when(pollHints).nextPoll(request.getUnitId());
+
+        final MockHttpServletResponse response = new MockHttpServletResponse();
 
         // When
-        final DeviceUpdate result = updateResource.checkForUpdate(requestMock, request, principal);
+        updateResource.checkForUpdate(requestMock, request, principal, response);
 
         // Then
         verify(requestMock).getHeader("user-agent");
         verify(deviceUpdateManager).checkForUpdate(deviceInfo);
-        verify(updateResource).checkForUpdate(requestMock, request, principal);
+        verify(pingMetrics).increment(PingMetrics.ApiVersion.V1, user);
+        verify(updateResource).checkForUpdate(requestMock, request, principal, response);
         verify(updateResource).buildDownloadUrl(requestMock, detailedUpdate.getUpdate());
         verifyNoMoreInteractions(updateResource);
-        assertThat(result).isEqualTo(expected);
+        assertThat(response.getContentType()).isEqualTo(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("420");
+        assertThat(mapper.readTree(response.getContentAsByteArray())).isEqualTo(mapper.valueToTree(expected));
     }
 
     @Test
@@ -158,18 +179,65 @@ public class UpdateResourceTest {
         doReturn(deviceIP).when(requestMock).getRemoteAddr();
         doReturn(userAgent).when(requestMock).getHeader("user-agent");
         doReturn(detailedUpdate).when(deviceUpdateManager).checkForUpdate(deviceInfo);
-        doReturn(url).when(updateResource).buildDownloadUrl(requestMock, detailedUpdate.getUpdate());
+        doReturn(url.toString()).when(updateResource).buildDownloadUrl(requestMock, detailedUpdate.getUpdate());
+
+        final MockHttpServletResponse response = new MockHttpServletResponse();
 
         // When
-        final DeviceUpdate result = updateResource.checkForUpdate(requestMock, request, principal);
+        updateResource.checkForUpdate(requestMock, request, principal, response);
 
         // Then
         verify(requestMock).getHeader("user-agent");
         verify(deviceUpdateManager).checkForUpdate(deviceInfo);
-        verify(updateResource).checkForUpdate(requestMock, request, principal);
+        verify(updateResource).checkForUpdate(requestMock, request, principal, response);
         verify(updateResource).buildDownloadUrl(requestMock, detailedUpdate.getUpdate());
         verifyNoMoreInteractions(updateResource);
-        assertThat(result).isEqualTo(deviceUpdate);
+        assertThat(mapper.readTree(response.getContentAsByteArray())).isEqualTo(mapper.valueToTree(deviceUpdate));
+    }
+
+    @Test
+    public void checkForUpdate_whenSameUpdateAndBaseUrl_shouldReuseSerializedBody() throws Exception {
+        // Given
+        final HttpServletRequest requestMock = mock(HttpServletRequest.class);
+        final DeviceRequestEntity request = getDeviceRequestEntity();
+        final DetailedUpdate detailedUpdate = getDetailedUpdate();
+        final MockHttpServletResponse first = new MockHttpServletResponse();
+        final MockHttpServletResponse second = new MockHttpServletResponse();
+        doReturn("127.0.0.1").when(requestMock).getRemoteAddr();
+        doReturn("localhost").when(requestMock).getHeader("Host");
+        doReturn(detailedUpdate).when(deviceUpdateManager).checkForUpdate(any(DeviceInfo.class));
+
+        // When
+        updateResource.checkForUpdate(requestMock, request, principal, first);
+        updateResource.checkForUpdate(requestMock, request, principal, second);
+
+        // Then
+        verify(updateResource, times(1)).buildDownloadUrl(requestMock, detailedUpdate.getUpdate());
+        assertThat(second.getContentAsByteArray()).isEqualTo(first.getContentAsByteArray());
+        assertThat(mapper.readTree(second.getContentAsByteArray()).at("/packageInfo/url").asText())
+                .isEqualTo("http://localhost/update/download/" + detailedUpdate.getUpdate().getUuid());
+    }
+
+    @Test
+    public void checkForUpdate_whenUpdateChanged_shouldSerializeAgain() throws Exception {
+        // Given
+        final HttpServletRequest requestMock = mock(HttpServletRequest.class);
+        final DeviceRequestEntity request = getDeviceRequestEntity();
+        final DetailedUpdate detailedUpdate = getDetailedUpdate();
+        final DetailedUpdate changedUpdate = DetailedUpdate.builder()
+                .update(detailedUpdate.getUpdate())
+                .packageInfo(detailedUpdate.getPackageInfo().toBuilder().md5("changed").build())
+                .build();
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        doReturn("localhost").when(requestMock).getHeader("Host");
+        when(deviceUpdateManager.checkForUpdate(any(DeviceInfo.class))).thenReturn(detailedUpdate, changedUpdate);
+        updateResource.checkForUpdate(requestMock, request, principal, new MockHttpServletResponse());
+
+        // When
+        updateResource.checkForUpdate(requestMock, request, principal, response);
+
+        // Then
+        assertThat(mapper.readTree(response.getContentAsByteArray()).at("/packageInfo/md5").asText()).isEqualTo("changed");
     }
 
 
@@ -217,12 +285,11 @@ public class UpdateResourceTest {
         when(requestMock.isSecure()).thenReturn(false);
 
         // When
-        final URL result = updateResource.buildDownloadUrl(requestMock, update);
+        final String result = updateResource.buildDownloadUrl(requestMock, update);
 
         // Then
         assertThat(result)
-                .isNotNull()
-                .hasToString("http://" + host + "/update/download/" + update.getUuid());
+                .isEqualTo("http://" + host + "/update/download/" + update.getUuid());
     }
 
     @Test
@@ -235,12 +302,11 @@ public class UpdateResourceTest {
         when(requestMock.isSecure()).thenReturn(true);
 
         // When
-        final URL result = updateResource.buildDownloadUrl(requestMock, update);
+        final String result = updateResource.buildDownloadUrl(requestMock, update);
 
         // Then
         assertThat(result)
-                .isNotNull()
-                .hasToString("https://" + host + "/update/download/" + update.getUuid());
+                .isEqualTo("https://" + host + "/update/download/" + update.getUuid());
     }
 
     @Test
@@ -257,11 +323,10 @@ public class UpdateResourceTest {
         when(requestMock.getHeader("X-Forwarded-Prefix")).thenReturn(prefix);
 
         // When
-        final URL result = updateResource.buildDownloadUrl(requestMock, update);
+        final String result = updateResource.buildDownloadUrl(requestMock, update);
 
         // Then
         assertThat(result)
-                .isNotNull()
-                .hasToString("https://" + host + prefix + "/update/download/" + update.getUuid());
+                .isEqualTo("https://" + host + prefix + "/update/download/" + update.getUuid());
     }
 }
\ No newline at end of file
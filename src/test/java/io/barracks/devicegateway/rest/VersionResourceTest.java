@@ -24,31 +24,48 @@
 
 package io.barracks.devicegateway.rest;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sun.security.auth.UserPrincipal;
+import io.barracks.devicegateway.exception.BatchTooLargeException;
 import io.barracks.devicegateway.exception.DeviceGatewayException;
+import io.barracks.devicegateway.exception.UpstreamUnavailableException;
+import io.barracks.devicegateway.manager.DeviceBatchManager;
 import io.barracks.devicegateway.manager.DeviceManager;
 import io.barracks.devicegateway.manager.DeviceUpdateManager;
+import io.barracks.devicegateway.metrics.CallTimers;
+import io.barracks.devicegateway.metrics.PingMetrics;
 import io.barracks.devicegateway.model.DeviceRequest;
 import io.barracks.devicegateway.model.ResolvedVersions;
+import io.barracks.devicegateway.model.Version;
+import io.barracks.devicegateway.rest.entity.BatchDeviceRequest;
+import io.barracks.devicegateway.security.UserAuthentication;
 import io.barracks.devicegateway.utils.DeviceRequestUtils;
 import io.barracks.devicegateway.utils.RandomPrincipal;
 import io.barracks.devicegateway.utils.ResolvedVersionsUtils;
+import io.barracks.devicegateway.utils.VersionUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
-import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.security.Principal;
+import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
@@ -66,7 +83,19 @@ public class VersionResourceTest {
     private DeviceManager deviceManager;
 
     @Mock
-    private CounterService counterService;
+    private DeviceBatchManager deviceBatchManager;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Mock
+    private PingMetrics pingMetrics;
+
+    @Mock
+    private PollHints pollHints;
+
+    @Spy
+    private CallTimers callTimers = new CallTimers();
 
     @InjectMocks
     @Spy
@@ -92,30 +121,183 @@ public class VersionResourceTest {
                 .build();
         final ResolvedVersions managerResponse = ResolvedVersionsUtils.getResolvedVersions();
         doReturn(managerResponse).when(deviceManager).resolveVersions(authenticatedRequest);
+        doReturn(420).when(pollHints).nextPoll(request.getUnitId());
         final ResolvedVersions expected = ResolvedVersions.builder()
                 .unavailable(managerResponse.getUnavailable())
                 .unchanged(managerResponse.getUnchanged())
                 .available(
                         managerResponse.getAvailable().stream()
-                                .map(version -> version.toBuilder().url(VersionResource.DOWNLOAD_ENDPOINT.withBase(baseUrl).getURI(version.getReference(), version.getVersion()).toString()).build())
+                                .map(version -> version.toBuilder().url(baseUrl + "/packages/" + version.getReference() + "/versions/" + version.getVersion() + "/file").build())
                                 .collect(Collectors.toList())
                 )
                 .changed(
                         managerResponse.getChanged().stream()
-                                .map(version -> version.toBuilder().url(VersionResource.DOWNLOAD_ENDPOINT.withBase(baseUrl).getURI(version.getReference(), version.getVersion()).toString()).build())
+                                .map(version -> version.toBuilder().url(baseUrl + "/packages/" + version.getReference() + "/versions/" + version.getVersion() + "/file").build())
                                 .collect(Collectors.toList())
                 )
+                .nextPoll(420)
                 .build();
 
         // When
-        final ResolvedVersions response = versionResource.resolveVersions(requestMock, request, principal);
+        final ResponseEntity<ResolvedVersions> response = versionResource.resolveVersions(requestMock, request, principal);
 
         // Then
         verify(requestMock).getHeader("user-agent");
         verify(requestMock).getHeader("X-Forwarded-For");
         verify(versionResource).getBaseUrl(any());
         verify(deviceManager).resolveVersions(authenticatedRequest);
-        assertThat(response).isEqualTo(expected);
+        verify(pingMetrics).increment(PingMetrics.ApiVersion.V2, ((UserAuthentication) principal).getDetails());
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getETag()).isEqualTo(versionResource.getETag(expected));
+        assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("420");
+        assertThat(response.getBody()).isEqualTo(expected);
+    }
+
+    @Test
+    public void resolveBatch_shouldAuthenticateEveryRequest_andStreamEveryDeviceResult() throws Exception {
+        // Given
+        final String baseUrl = "https://not.barracks.io";
+        final HttpServletRequest requestMock = mock(HttpServletRequest.class);
+        final String userAgent = UUID.randomUUID().toString();
+        doReturn("1234.123.12.34").when(requestMock).getHeader("X-Forwarded-For");
+        doReturn(userAgent).when(requestMock).getHeader("user-agent");
+        doReturn(baseUrl).when(versionResource).getBaseUrl(any());
+        final DeviceRequest resolved = DeviceRequestUtils.getDeviceRequest().toBuilder().userId(null).build();
+        final DeviceRequest failed = DeviceRequestUtils.getDeviceRequest().toBuilder().userId(null).build();
+        final List<DeviceRequest> authenticatedRequests = Stream.of(resolved, failed)
+                .map(request -> request.toBuilder()
+                        .userId(principal.getName())
+                        .ipAddress("1234.123.12.34")
+                        .userAgent(userAgent)
+                        .build())
+                .collect(Collectors.toList());
+        final Version version = VersionUtils.getVersion();
+        doAnswer(invocation -> {
+            final DeviceBatchManager.Listener listener = (DeviceBatchManager.Listener) invocation.getArguments()[1];
+            listener.onResolved(authenticatedRequests.get(0), ResolvedVersions.builder().addChanged(version).build());
+            listener.onFailed(authenticatedRequests.get(1), new UpstreamUnavailableException("deploymentservice", "circuit open"));
+            return null;
+        }).when(deviceBatchManager).resolveVersions(eq(authenticatedRequests), any(DeviceBatchManager.Listener.class));
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // When
+        final ResponseEntity<StreamingResponseBody> response = versionResource.resolveBatch(
+                requestMock,
+                BatchDeviceRequest.builder().addRequest(resolved).addRequest(failed).build(),
+                principal
+        );
+        response.getBody().writeTo(outputStream);
+
+        // Then
+        verify(deviceBatchManager).checkSize(2);
+        verify(pingMetrics, times(2)).increment(PingMetrics.ApiVersion.V2, ((UserAuthentication) principal).getDetails());
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        final JsonNode results = objectMapper.readTree(outputStream.toByteArray());
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).get("unitId").asText()).isEqualTo(resolved.getUnitId());
+        assertThat(results.get(0).get("versions").get("changed").get(0).get("url").asText())
+                .isEqualTo(baseUrl + "/packages/" + version.getReference() + "/versions/" + version.getVersion() + "/file");
+        assertThat(results.get(1).get("unitId").asText()).isEqualTo(failed.getUnitId());
+        assertThat(results.get(1).get("status").asInt()).isEqualTo(503);
+        assertThat(results.get(1).has("versions")).isFalse();
+    }
+
+    @Test
+    public void resolveBatch_whenBatchIsTooLarge_shouldNotResolve() throws Exception {
+        // Given
+        final BatchDeviceRequest batchRequest = BatchDeviceRequest.builder().addRequest(DeviceRequestUtils.getDeviceRequest()).build();
+        doThrow(new BatchTooLargeException(1, 0)).when(deviceBatchManager).checkSize(1);
+
+        // Then / When
+        assertThatExceptionOfType(BatchTooLargeException.class)
+                .isThrownBy(() -> versionResource.resolveBatch(mock(HttpServletRequest.class), batchRequest, principal));
+        verify(deviceBatchManager, never()).resolveVersions(any(), any());
+        verifyZeroInteractions(pingMetrics);
+    }
+
+    @Test
+    public void resolveVersion_whenIfNoneMatchIsCurrentETag_shouldReturnNotModifiedWithoutBody() {
+        // Given
+        final String baseUrl = "https://not.barracks.io";
+        final HttpServletRequest requestMock = mock(HttpServletRequest.class);
+        doReturn(baseUrl).when(versionResource).getBaseUrl(any());
+        final DeviceRequest request = DeviceRequestUtils.getDeviceRequest();
+        final ResolvedVersions managerResponse = ResolvedVersions.builder()
+                .addUnchanged(VersionUtils.getVersion().toBuilder().url(null).build())
+                .build();
+        doReturn(managerResponse).when(deviceManager).resolveVersions(any());
+        final String eTag = versionResource.getETag(managerResponse);
+        doReturn("W/\"other\", " + eTag).when(requestMock).getHeader(HttpHeaders.IF_NONE_MATCH);
+        doReturn(420).when(pollHints).nextPoll(request.getUnitId());
+
+        // When
+        final ResponseEntity<ResolvedVersions> response = versionResource.resolveVersions(requestMock, request, principal);
+
+        // Then
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.getHeaders().getETag()).isEqualTo(eTag);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("420");
+        assertThat(response.hasBody()).isFalse();
+    }
+
+    @Test
+    public void resolveVersion_whenIfNoneMatchIsWildcard_shouldReturnResponse() {
+        // Given
+        final HttpServletRequest requestMock = mock(HttpServletRequest.class);
+        doReturn("https://not.barracks.io").when(versionResource).getBaseUrl(any());
+        final ResolvedVersions managerResponse = ResolvedVersions.builder()
+                .addUnchanged(VersionUtils.getVersion().toBuilder().url(null).build())
+                .build();
+        doReturn(managerResponse).when(deviceManager).resolveVersions(any());
+        doReturn("*").when(requestMock).getHeader(HttpHeaders.IF_NONE_MATCH);
+        final DeviceRequest request = DeviceRequestUtils.getDeviceRequest();
+        doReturn(420).when(pollHints).nextPoll(request.getUnitId());
+
+        // When
+        final ResponseEntity<ResolvedVersions> response = versionResource.resolveVersions(requestMock, request, principal);
+
+        // Then
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo(managerResponse.toBuilder().nextPoll(420).build());
+    }
+
+    @Test
+    public void resolveVersion_whenIfNoneMatchIsOutdated_shouldReturnResponse() {
+        // Given
+        final HttpServletRequest requestMock = mock(HttpServletRequest.class);
+        doReturn("https://not.barracks.io").when(versionResource).getBaseUrl(any());
+        final ResolvedVersions managerResponse = ResolvedVersions.builder()
+                .addUnchanged(VersionUtils.getVersion().toBuilder().url(null).build())
+                .build();
+        doReturn(managerResponse).when(deviceManager).resolveVersions(any());
+        doReturn("\"outdated\"").when(requestMock).getHeader(HttpHeaders.IF_NONE_MATCH);
+        final DeviceRequest request = DeviceRequestUtils.getDeviceRequest();
+        doReturn(420).when(pollHints).nextPoll(request.getUnitId());
+
+        // When
+        final ResponseEntity<ResolvedVersions> response = versionResource.resolveVersions(requestMock, request, principal);
+
+        // Then
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo(managerResponse.toBuilder().nextPoll(420).build());
+    }
+
+    @Test
+    public void getETag_shouldBeStableForEqualResponses_andChangeWithContent() {
+        // Given
+        final ResolvedVersions resolvedVersions = ResolvedVersionsUtils.getResolvedVersions();
+        final ResolvedVersions copy = resolvedVersions.toBuilder().build();
+        final ResolvedVersions changed = resolvedVersions.toBuilder()
+                .addChanged(VersionUtils.getVersion())
+                .build();
+
+        // When
+        final String eTag = versionResource.getETag(resolvedVersions);
+
+        // Then
+        assertThat(eTag).startsWith("\"").endsWith("\"");
+        assertThat(versionResource.getETag(copy)).isEqualTo(eTag);
+        assertThat(versionResource.getETag(changed)).isNotEqualTo(eTag);
     }
 
     @Test
@@ -51,9 +51,11 @@ import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.util.FileCopyUtils;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.verify;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
@@ -102,7 +104,12 @@ public class UpdateResourceConfigurationTest {
                 .build();
         final DeviceRequestEntity deviceRequestEntity = objectMapper.readValue(request.getInputStream(), DeviceRequestEntity.class);
 
-        doReturn(update).when(updateResource).checkForUpdate(isA(HttpServletRequest.class), eq(deviceRequestEntity), eq(principal));
+        doAnswer(invocation -> {
+            final HttpServletResponse response = invocation.getArgumentAt(3, HttpServletResponse.class);
+            response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+            response.getOutputStream().write(objectMapper.writeValueAsBytes(update));
+            return null;
+        }).when(updateResource).checkForUpdate(isA(HttpServletRequest.class), eq(deviceRequestEntity), eq(principal), isA(HttpServletResponse.class));
 
         // When
         final ResultActions result = mvc.perform(
@@ -116,7 +123,7 @@ public class UpdateResourceConfigurationTest {
         );
 
         // Then
-        verify(updateResource).checkForUpdate(isA(HttpServletRequest.class), eq(deviceRequestEntity), eq(principal));
+        verify(updateResource).checkForUpdate(isA(HttpServletRequest.class), eq(deviceRequestEntity), eq(principal), isA(HttpServletResponse.class));
         result.andExpect(status().isOk())
                 .andDo(document(
                         "check",
@@ -43,6 +43,7 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
@@ -175,8 +176,9 @@ public class VersionResourceConfigurationTest {
                 )
                 .addUnchanged(Version.builder().reference("io.barracks.bootloader").build())
                 .addUnavailable(Version.builder().reference("io.barracks.oldApplication").build())
+                .nextPoll(300)
                 .build();
-        doReturn(response).when(versionResource).resolveVersions(any(), eq(request), eq(principal));
+        doReturn(ResponseEntity.ok(response)).when(versionResource).resolveVersions(any(), eq(request), eq(principal));
 
         // When
         final ResultActions result = mvc.perform(RestDocumentationRequestBuilders.request(endpoint.getMethod(), endpoint.withBase(baseUrl).getURI())
@@ -209,7 +211,8 @@ public class VersionResourceConfigurationTest {
                                         fieldWithPath("changed[].customUpdateData").description("Custom information regarding the update."),
                                         fieldWithPath("available").description("The newly available software not already running on the device."),
                                         fieldWithPath("unchanged").description("Unchanged software already running on the device."),
-                                        fieldWithPath("unavailable").description("Software not available anymore for the device")
+                                        fieldWithPath("unavailable").description("Software not available anymore for the device"),
+                                        fieldWithPath("nextPoll").description("The number of seconds the device should wait before resolving again.")
                                 )
                         )
                 );
@@ -221,7 +224,7 @@ public class VersionResourceConfigurationTest {
         final Endpoint endpoint = RESOLVE_VERSIONS_ENDPOINT;
         final DeviceRequest request = objectMapper.readValue(deviceRequest.getInputStream(), DeviceRequest.class);
         final ResolvedVersions response = getResolvedVersions();
-        doReturn(response).when(versionResource).resolveVersions(any(), eq(request), eq(principal));
+        doReturn(ResponseEntity.ok(response)).when(versionResource).resolveVersions(any(), eq(request), eq(principal));
 
         // When
         final ResultActions result = mvc.perform(MockMvcRequestBuilders.request(endpoint.getMethod(), endpoint.withBase(baseUrl).getURI())
@@ -0,0 +1,180 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.security;
+
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdmissionControlFilterTest {
+
+    private final AdmissionControl admissionControl = new AdmissionControl(true, 2, 2, 4, 0.5, 2, 0.2, 30);
+    private final AdmissionControlFilter filter = new AdmissionControlFilter(admissionControl);
+
+    @Test
+    public void doFilter_whenAdmitted_shouldReleaseOnceProcessed() throws Exception {
+        // Given
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/update/check");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final MockFilterChain chain = new MockFilterChain();
+
+        // When
+        filter.doFilter(request, response, chain);
+
+        // Then
+        assertThat(chain.getRequest()).isSameAs(request);
+        assertThat(admissionControl.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void doFilter_whenLowPriorityShareIsUsed_shouldShedRevalidationButAdmitResolveWithoutETag() throws Exception {
+        // Given
+        assertThat(admissionControl.tryAcquire(AdmissionControl.Priority.NORMAL)).isTrue();
+        final MockHttpServletRequest revalidation = new MockHttpServletRequest("POST", "/resolve");
+        revalidation.addHeader(HttpHeaders.IF_NONE_MATCH, "\"etag\"");
+        final MockHttpServletResponse shedResponse = new MockHttpServletResponse();
+        final MockFilterChain shedChain = new MockFilterChain();
+        final MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        final MockFilterChain firstChain = new MockFilterChain();
+
+        // When
+        filter.doFilter(revalidation, shedResponse, shedChain);
+        filter.doFilter(new MockHttpServletRequest("POST", "/resolve"), firstResponse, firstChain);
+
+        // Then
+        assertThat(shedChain.getRequest()).isNull();
+        assertThat(shedResponse.getStatus()).isEqualTo(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        assertThat(Integer.valueOf(shedResponse.getHeader(HttpHeaders.RETRY_AFTER))).isBetween(15, 45);
+        assertThat(firstChain.getRequest()).isNotNull();
+        assertThat(firstResponse.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    public void doFilter_whenLimitIsReached_shouldShedResolveWithoutETag() throws Exception {
+        // Given
+        for (int i = 0; i < 2; i++) {
+            assertThat(admissionControl.tryAcquire(AdmissionControl.Priority.NORMAL)).isTrue();
+        }
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final MockFilterChain chain = new MockFilterChain();
+
+        // When
+        filter.doFilter(new MockHttpServletRequest("POST", "/resolve"), response, chain);
+
+        // Then
+        assertThat(chain.getRequest()).isNull();
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        assertThat(admissionControl.getRejected(AdmissionControl.Priority.NORMAL)).isEqualTo(1L);
+    }
+
+    @Test
+    public void doFilter_whenLimitIsReached_shouldStillServeDownloads() throws Exception {
+        // Given
+        for (int i = 0; i < 4; i++) {
+            assertThat(admissionControl.tryAcquire(AdmissionControl.Priority.HIGH)).isTrue();
+        }
+        final MockFilterChain updateChain = new MockFilterChain();
+        final MockFilterChain versionChain = new MockFilterChain();
+
+        // When
+        filter.doFilter(new MockHttpServletRequest("GET", "/update/download/42"), new MockHttpServletResponse(), updateChain);
+        filter.doFilter(new MockHttpServletRequest("GET", "/packages/ref/versions/v1/file"), new MockHttpServletResponse(), versionChain);
+
+        // Then
+        assertThat(updateChain.getRequest()).isNotNull();
+        assertThat(versionChain.getRequest()).isNotNull();
+        assertThat(admissionControl.getInFlight()).isEqualTo(4);
+    }
+
+    @Test
+    public void doFilter_whenLimitIsReached_shouldShedNotificationSubscriptions() throws Exception {
+        // Given
+        for (int i = 0; i < 2; i++) {
+            assertThat(admissionControl.tryAcquire(AdmissionControl.Priority.NORMAL)).isTrue();
+        }
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final MockFilterChain chain = new MockFilterChain();
+
+        // When
+        filter.doFilter(new MockHttpServletRequest("POST", "/update/notifications"), response, chain);
+
+        // Then
+        assertThat(chain.getRequest()).isNull();
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    public void doFilter_whenNotificationStreamIsOpen_shouldReleaseItsSlot() throws Exception {
+        // Given
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/resolve/notifications");
+        request.setAsyncSupported(true);
+        final MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                req.startAsync();
+            }
+        });
+
+        // When
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        // Then
+        assertThat(request.isAsyncStarted()).isTrue();
+        assertThat(admissionControl.getInFlight()).isEqualTo(0);
+        request.getAsyncContext().complete();
+        assertThat(admissionControl.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void doFilter_whenRequestGoesAsynchronous_shouldReleaseOnCompletion() throws Exception {
+        // Given
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/resolve/batch");
+        request.setAsyncSupported(true);
+        final MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                req.startAsync();
+            }
+        });
+
+        // When
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+        final AsyncContext asyncContext = request.getAsyncContext();
+
+        // Then
+        assertThat(admissionControl.getInFlight()).isEqualTo(1);
+        asyncContext.complete();
+        assertThat(admissionControl.getInFlight()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.security;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdmissionControlTest {
+
+    private final AdmissionControl admissionControl = new AdmissionControl(true, 10, 8, 20, 0.5, 4, 1.0, 30);
+
+    @Test
+    public void tryAcquire_shouldShedLowPriorityFirst_andBoundHighPriorityByReserve() {
+        // Given
+        acquire(AdmissionControl.Priority.LOW, 5);
+
+        // When Then
+        assertThat(admissionControl.tryAcquire(AdmissionControl.Priority.LOW)).isFalse();
+        acquire(AdmissionControl.Priority.NORMAL, 5);
+        assertThat(admissionControl.tryAcquire(AdmissionControl.Priority.NORMAL)).isFalse();
+        acquire(AdmissionControl.Priority.HIGH, 4);
+        assertThat(admissionControl.tryAcquire(AdmissionControl.Priority.HIGH)).isFalse();
+        assertThat(admissionControl.getInFlight()).isEqualTo(14);
+        assertThat(admissionControl.getRejected(AdmissionControl.Priority.LOW)).isEqualTo(1L);
+        assertThat(admissionControl.getRejected(AdmissionControl.Priority.NORMAL)).isEqualTo(1L);
+        assertThat(admissionControl.getRejected(AdmissionControl.Priority.HIGH)).isEqualTo(1L);
+    }
+
+    @Test
+    public void release_shouldFreeTheSlot() {
+        // Given
+        acquire(AdmissionControl.Priority.NORMAL, 10);
+
+        // When
+        admissionControl.release(System.nanoTime());
+
+        // Then
+        assertThat(admissionControl.getInFlight()).isEqualTo(9);
+        assertThat(admissionControl.tryAcquire(AdmissionControl.Priority.NORMAL)).isTrue();
+    }
+
+    @Test
+    public void getThreshold_shouldKeepHighPriorityReserveWithinMaxLimit() {
+        // Given
+        final AdmissionControl admissionControl = new AdmissionControl(true, 18, 8, 20, 0.5, 4, 1.0, 30);
+
+        // When Then
+        assertThat(admissionControl.getThreshold(AdmissionControl.Priority.HIGH)).isEqualTo(20);
+    }
+
+    @Test
+    public void release_withoutStartTime_shouldNotSampleLatency() {
+        // Given
+        complete(10, 10);
+        admissionControl.update();
+        acquire(AdmissionControl.Priority.NORMAL, 1);
+
+        // When
+        admissionControl.release();
+        complete(10, 10);
+        admissionControl.update();
+
+        // Then
+        assertThat(admissionControl.getInFlight()).isEqualTo(0);
+        assertThat(admissionControl.getLimit()).isGreaterThan(13);
+    }
+
+    @Test
+    public void update_whenLimitIsUsedAndLatencyIsStable_shouldGrowLimit() {
+        // Given
+        complete(10, 10);
+
+        // When
+        admissionControl.update();
+
+        // Then
+        assertThat(admissionControl.getLimit()).isEqualTo(13);
+    }
+
+    @Test
+    public void update_whenLimitIsNotUsed_shouldKeepLimit() {
+        // Given
+        complete(2, 10);
+
+        // When
+        admissionControl.update();
+
+        // Then
+        assertThat(admissionControl.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    public void update_whenLatencyGrows_shouldShrinkLimitDownToMinLimit() {
+        // Given
+        complete(10, 10);
+        admissionControl.update();
+
+        // When
+        complete(10, 100);
+        admissionControl.update();
+
+        // Then
+        assertThat(admissionControl.getLimit()).isEqualTo(10);
+        for (int i = 0; i < 5; i++) {
+            complete(10, 100);
+            admissionControl.update();
+        }
+        assertThat(admissionControl.getLimit()).isEqualTo(8);
+    }
+
+    @Test
+    public void nextRetry_shouldSpreadAroundRetryAfter() {
+        for (int i = 0; i < 100; i++) {
+            assertThat(admissionControl.nextRetry()).isBetween(15, 45);
+        }
+    }
+
+    private void acquire(AdmissionControl.Priority priority, int count) {
+        for (int i = 0; i < count; i++) {
+            assertThat(admissionControl.tryAcquire(priority)).isTrue();
+        }
+    }
+
+    private void complete(int count, long latencyMillis) {
+        acquire(AdmissionControl.Priority.HIGH, count);
+        for (int i = 0; i < count; i++) {
+            admissionControl.release(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        }
+    }
+}
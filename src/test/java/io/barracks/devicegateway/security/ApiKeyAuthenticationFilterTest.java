@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.security;
+
+import io.barracks.devicegateway.client.AuthorizationServiceClient;
+import io.barracks.devicegateway.model.ApiKey;
+import io.barracks.devicegateway.model.User;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class ApiKeyAuthenticationFilterTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AuthorizationServiceClient authorizationServiceClient = mock(AuthorizationServiceClient.class);
+    private final RateLimits rateLimits = new RateLimits(new MockEnvironment()
+            .withProperty("io.barracks.ratelimit.enabled", "true")
+            .withProperty("io.barracks.ratelimit.burst", "1")
+            .withProperty("io.barracks.ratelimit.refill_rate", "0.1"),
+            clock::get
+    );
+    private final ApiKeyAuthenticationFilter filter = new ApiKeyAuthenticationFilter(authorizationServiceClient, rateLimits);
+
+    @Test
+    public void doFilter_whenUserExceedsRateLimit_shouldReturnTooManyRequests() throws Exception {
+        // Given
+        doReturn(User.builder().id("user").build()).when(authorizationServiceClient).authenticateApiKey(any(ApiKey.class));
+        final MockFilterChain firstChain = new MockFilterChain();
+        final MockFilterChain secondChain = new MockFilterChain();
+        final MockHttpServletResponse secondResponse = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request(), new MockHttpServletResponse(), firstChain);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        filter.doFilter(request(), secondResponse, secondChain);
+
+        // Then
+        assertThat(firstChain.getRequest()).isNotNull();
+        assertThat(secondChain.getRequest()).isNull();
+        assertThat(secondResponse.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+        assertThat(secondResponse.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("10");
+    }
+
+    @Test
+    public void doFilter_whenUserExceedsRateLimit_shouldStillServeDownloads() throws Exception {
+        // Given
+        doReturn(User.builder().id("user").build()).when(authorizationServiceClient).authenticateApiKey(any(ApiKey.class));
+        filter.doFilter(request(), new MockHttpServletResponse(), new MockFilterChain());
+
+        // When Then
+        for (String path : new String[]{"/update/download/42", "/packages/ref/versions/v1/file"}) {
+            final MockFilterChain chain = new MockFilterChain();
+            filter.doFilter(request("GET", path), new MockHttpServletResponse(), chain);
+            assertThat(chain.getRequest()).isNotNull();
+        }
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(), response, new MockFilterChain());
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+    }
+
+    @Test
+    public void doFilter_whenUserExceedsRateLimit_shouldRejectNotificationSubscriptions() throws Exception {
+        // Given
+        doReturn(User.builder().id("user").build()).when(authorizationServiceClient).authenticateApiKey(any(ApiKey.class));
+        filter.doFilter(request(), new MockHttpServletResponse(), new MockFilterChain());
+
+        // When Then
+        for (String path : new String[]{"/update/notifications", "/resolve/notifications"}) {
+            final MockFilterChain chain = new MockFilterChain();
+            final MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(request("POST", path), response, chain);
+            assertThat(chain.getRequest()).isNull();
+            assertThat(response.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+        }
+    }
+
+    private MockHttpServletRequest request() {
+        return request("POST", "/update/check");
+    }
+
+    private MockHttpServletRequest request(String method, String path) {
+        final MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.addHeader("Authorization", "apiKey");
+        return request;
+    }
+}
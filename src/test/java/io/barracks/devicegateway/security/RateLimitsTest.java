@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.security;
+
+import io.barracks.devicegateway.model.User;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class RateLimitsTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void tryAcquire_whenDisabled_shouldNeverReject() {
+        // Given
+        final RateLimits rateLimits = new RateLimits(new MockEnvironment().withProperty("io.barracks.ratelimit.burst", "1"), clock::get);
+
+        // When Then
+        for (int i = 0; i < 100; i++) {
+            assertThat(rateLimits.tryAcquire(null)).isEqualTo(0L);
+        }
+    }
+
+    @Test
+    public void tryAcquire_shouldLimitEachUserSeparately_withOverrides() {
+        // Given
+        final RateLimits rateLimits = new RateLimits(new MockEnvironment()
+                .withProperty("io.barracks.ratelimit.enabled", "true")
+                .withProperty("io.barracks.ratelimit.burst", "2")
+                .withProperty("io.barracks.ratelimit.refill_rate", "1.0")
+                .withProperty("io.barracks.ratelimit.users.gateway.burst", "4"),
+                clock::get
+        );
+
+        // When
+        final int chatty = acceptedRequests(rateLimits, "chatty");
+        final int other = acceptedRequests(rateLimits, "other");
+        final int gateway = acceptedRequests(rateLimits, "gateway");
+
+        // Then
+        assertThat(chatty).isEqualTo(2);
+        assertThat(other).isEqualTo(2);
+        assertThat(gateway).isEqualTo(4);
+        assertThat(rateLimits.getRejected()).isEqualTo(22L);
+        assertThat(rateLimits.metrics()).extracting("name", "value")
+                .containsExactly(tuple("ratelimit.users", 3), tuple("ratelimit.rejected", 22L));
+    }
+
+    @Test
+    public void constructor_whenEnabledWithoutBucketSize_shouldFail() {
+        // Given
+        final MockEnvironment environment = new MockEnvironment()
+                .withProperty("io.barracks.ratelimit.enabled", "true")
+                .withProperty("io.barracks.ratelimit.refill_rate", "100.0");
+
+        // Then When
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> new RateLimits(environment, clock::get))
+                .withMessageContaining("io.barracks.ratelimit.burst");
+    }
+
+    private int acceptedRequests(RateLimits rateLimits, String userId) {
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (rateLimits.tryAcquire(User.builder().id(userId).build()) == 0) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.security;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TokenBucketTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final TokenBucket bucket = new TokenBucket(3, 2.0, clock::get);
+
+    @Test
+    public void tryAcquire_whenBurstIsUsed_shouldRejectUntilRefilled() {
+        // Given
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryAcquire()).isEqualTo(0L);
+        }
+
+        // When
+        final long wait = bucket.tryAcquire();
+
+        // Then
+        assertThat(wait).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+        assertThat(bucket.getRejected()).isEqualTo(1L);
+        clock.addAndGet(wait);
+        assertThat(bucket.tryAcquire()).isEqualTo(0L);
+        assertThat(bucket.tryAcquire()).isGreaterThan(0L);
+    }
+
+    @Test
+    public void tryAcquire_whenIdleForLong_shouldNotExceedBurst() {
+        // Given
+        clock.addAndGet(TimeUnit.HOURS.toNanos(1));
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryAcquire()).isEqualTo(0L);
+        }
+
+        // Then
+        assertThat(bucket.tryAcquire()).isGreaterThan(0L);
+    }
+
+    @Test
+    public void drainRejected_shouldReturnRejectionsSinceLastDrain() {
+        // Given
+        for (int i = 0; i < 5; i++) {
+            bucket.tryAcquire();
+        }
+
+        // When Then
+        assertThat(bucket.drainRejected()).isEqualTo(2L);
+        assertThat(bucket.drainRejected()).isEqualTo(0L);
+        assertThat(bucket.getRejected()).isEqualTo(2L);
+    }
+}
@@ -26,7 +26,7 @@ package io.barracks.devicegateway.utils;
 
 import io.barracks.devicegateway.model.DeviceInfo;
 
-import java.util.Date;
+import java.time.Instant;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -40,7 +40,7 @@ public class DeviceInfoUtils {
                 .segmentId(UUID.randomUUID().toString())
                 .deviceIP(UUID.randomUUID().toString())
                 .userAgent(UUID.randomUUID().toString())
-                .receptionDate(new Date())
+                .receptionDate(Instant.now())
                 .additionalProperty(UUID.randomUUID().toString(), UUID.randomUUID().toString())
                 .build();
         assertThat(deviceInfo).hasNoNullFieldsOrProperties();
@@ -41,6 +41,7 @@ public class ResolvedVersionsUtils {
                 .addChanged(getVersion())
                 .addUnchanged(getVersion())
                 .addUnchanged(getVersion())
+                .nextPoll(300)
                 .build();
         assertThat(response).hasNoNullFieldsOrProperties();
         return response;
@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.warmup;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WarmUpFilterTest {
+
+    @Test
+    public void doFilter_whenWarmingUp_shouldTurnAwayRequestsWithoutToken() throws Exception {
+        // Given
+        final WarmUpFilter filter = new WarmUpFilter(new WarmUpState(true));
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/update/check");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final MockFilterChain chain = new MockFilterChain();
+
+        // When
+        filter.doFilter(request, response, chain);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(503);
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    @Test
+    public void doFilter_whenWarmingUp_shouldServeRequestsWithToken() throws Exception {
+        // Given
+        final WarmUpState state = new WarmUpState(true);
+        final WarmUpFilter filter = new WarmUpFilter(state);
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/update/check");
+        request.addHeader(WarmUpState.TOKEN_HEADER, state.getToken());
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final MockFilterChain chain = new MockFilterChain();
+
+        // When
+        filter.doFilter(request, response, chain);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(chain.getRequest()).isSameAs(request);
+    }
+
+    @Test
+    public void doFilter_whenWarmUpIsComplete_shouldServeAllRequests() throws Exception {
+        // Given
+        final WarmUpState state = new WarmUpState(true);
+        state.complete(10);
+        final WarmUpFilter filter = new WarmUpFilter(state);
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/update/check");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final MockFilterChain chain = new MockFilterChain();
+
+        // When
+        filter.doFilter(request, response, chain);
+
+        // Then
+        assertThat(chain.getRequest()).isSameAs(request);
+    }
+}
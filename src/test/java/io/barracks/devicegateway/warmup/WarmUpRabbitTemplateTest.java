@@ -0,0 +1,63 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.warmup;
+
+import org.junit.Test;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class WarmUpRabbitTemplateTest {
+
+    @Test
+    public void convertAndSend_whenWarmingUp_shouldDropMessage() {
+        // Given
+        final ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        final WarmUpRabbitTemplate template = new WarmUpRabbitTemplate(connectionFactory, new WarmUpState(true));
+
+        // When
+        template.convertAndSend("exchange", "key", "message");
+
+        // Then
+        verifyZeroInteractions(connectionFactory);
+    }
+
+    @Test
+    public void convertAndSend_whenWarmUpIsComplete_shouldSendMessage() {
+        // Given
+        final ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        when(connectionFactory.createConnection()).thenThrow(new AmqpConnectException(new RuntimeException("refused")));
+        final WarmUpState state = new WarmUpState(true);
+        state.complete(0);
+        final WarmUpRabbitTemplate template = new WarmUpRabbitTemplate(connectionFactory, state);
+
+        // When / Then
+        assertThatExceptionOfType(AmqpConnectException.class).isThrownBy(() -> template.convertAndSend("exchange", "key", "message"));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class WarmUpRestTemplateCustomizerTest {
+
+    private static final String BASE_URL = "https://not.barracks.io/service";
+
+    private WarmUpState state;
+    private ClientHttpRequestFactory delegate;
+    private RestTemplate restTemplate;
+
+    @Before
+    public void setUp() {
+        state = new WarmUpState(true);
+        delegate = mock(ClientHttpRequestFactory.class);
+        restTemplate = new RestTemplate(delegate);
+        new WarmUpRestTemplateCustomizer(state, new ObjectMapper(), 16).customize(restTemplate);
+    }
+
+    @Test
+    public void customize_whenWarmingUp_shouldAuthenticateAsWarmUpUser() {
+        // When
+        final JsonNode user = restTemplate.postForObject(BASE_URL + "/device/authenticate", Collections.singletonMap("value", "key"), JsonNode.class);
+
+        // Then
+        assertThat(user.path("id").asText()).isEqualTo(WarmUpStubs.USER_ID);
+        verifyZeroInteractions(delegate);
+    }
+
+    @Test
+    public void customize_whenWarmingUp_shouldResolveRequestedPackagesToLatestVersion() throws Exception {
+        // Given
+        final JsonNode request = new ObjectMapper().readTree("{\"packages\":[{\"reference\":\"a\",\"version\":\"1.0.0\"},{\"reference\":\"b\",\"version\":\"1.0.0\"}]}");
+
+        // When
+        final JsonNode resolved = restTemplate.postForObject(BASE_URL + "/packages/resolve", request, JsonNode.class);
+
+        // Then
+        assertThat(resolved.path("present")).hasSize(2);
+        assertThat(resolved.path("present").get(1).path("reference").asText()).isEqualTo("b");
+        assertThat(resolved.path("present").get(1).path("version").asText()).isEqualTo(WarmUpStubs.LATEST_VERSION);
+    }
+
+    @Test
+    public void customize_whenWarmingUp_shouldAnswerVersionPackageAndFileRequests() {
+        // When
+        final JsonNode version = restTemplate.getForObject(BASE_URL + "/owners/_warm-up/packages/ref/versions/2.0.0", JsonNode.class);
+        final JsonNode packageInfo = restTemplate.getForObject(BASE_URL + "/packages/pkg", JsonNode.class);
+        final byte[] file = restTemplate.getForObject(BASE_URL + "/packages/pkg/file", byte[].class);
+
+        // Then
+        assertThat(version.path("packageRef").asText()).isEqualTo("ref");
+        assertThat(version.path("id").asText()).isEqualTo("2.0.0");
+        assertThat(packageInfo.path("id").asText()).isEqualTo("pkg");
+        assertThat(packageInfo.path("userId").asText()).isEqualTo(WarmUpStubs.USER_ID);
+        assertThat(file).hasSize(16);
+    }
+
+    @Test
+    public void customize_whenWarmUpIsComplete_shouldUseWrappedFactory() throws Exception {
+        // Given
+        state.complete(0);
+
+        // When
+        try {
+            restTemplate.getForObject(BASE_URL + "/packages/pkg", JsonNode.class);
+        } catch (RuntimeException e) {
+            // The mocked factory creates no request
+        }
+
+        // Then
+        verify(delegate).createRequest(URI.create(BASE_URL + "/packages/pkg"), HttpMethod.GET);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Barracks Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package io.barracks.devicegateway.warmup;
+
+import io.barracks.devicegateway.metrics.CallTimers;
+import io.barracks.devicegateway.metrics.UpstreamLatencyMetrics;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+public class WarmUpRunnerTest {
+
+    private static final String GATEWAY_URL = "http://localhost:8080";
+
+    private final WarmUpState state = new WarmUpState(true);
+    private final CallTimers callTimers = mock(CallTimers.class);
+    private final UpstreamLatencyMetrics upstreamLatencyMetrics = mock(UpstreamLatencyMetrics.class);
+
+    @Test
+    public void warmUp_shouldReplayCallsWithTokenThenCompleteAndClearHistograms() {
+        // Given
+        final WarmUpRunner runner = new WarmUpRunner(state, callTimers, upstreamLatencyMetrics, 4, 1, 60000L, 1000.0);
+        final MockRestServiceServer server = MockRestServiceServer.bindTo(runner.getRestTemplate()).build();
+        for (int batch = 0; batch < WarmUpRunner.MIN_BATCHES; batch++) {
+            server.expect(requestTo(GATEWAY_URL + "/update/check"))
+                    .andExpect(method(HttpMethod.POST))
+                    .andExpect(header(WarmUpState.TOKEN_HEADER, state.getToken()))
+                    .andRespond(withSuccess("{}", MediaType.APPLICATION_JSON));
+            server.expect(requestTo(GATEWAY_URL + "/resolve"))
+                    .andExpect(method(HttpMethod.POST))
+                    .andRespond(withSuccess("{}", MediaType.APPLICATION_JSON));
+            server.expect(requestTo(GATEWAY_URL + "/update/download/" + WarmUpStubs.UPDATE_ID))
+                    .andExpect(header(WarmUpState.TOKEN_HEADER, state.getToken()))
+                    .andRespond(withSuccess(new byte[16], MediaType.APPLICATION_OCTET_STREAM));
+            server.expect(requestTo(GATEWAY_URL + "/packages/io.barracks.warmup.0/versions/" + WarmUpStubs.LATEST_VERSION + "/file"))
+                    .andRespond(withSuccess(new byte[16], MediaType.APPLICATION_OCTET_STREAM));
+        }
+
+        // When
+        runner.warmUp(GATEWAY_URL);
+
+        // Then
+        server.verify();
+        assertThat(state.isActive()).isFalse();
+        assertThat(state.getRequests()).isEqualTo(8L);
+        verify(callTimers).reset();
+        verify(upstreamLatencyMetrics).reset();
+    }
+
+    @Test
+    public void warmUp_whenCallsFail_shouldStillComplete() {
+        // Given
+        final WarmUpRunner runner = new WarmUpRunner(state, callTimers, upstreamLatencyMetrics, 4, 2, 60000L, 1000.0);
+        final MockRestServiceServer server = MockRestServiceServer.bindTo(runner.getRestTemplate()).ignoreExpectOrder(true).build();
+        server.expect(ExpectedCount.manyTimes(), requestTo(startsWith(GATEWAY_URL)))
+                .andRespond(withStatus(HttpStatus.INTERNAL_SERVER_ERROR));
+
+        // When
+        runner.warmUp(GATEWAY_URL);
+
+        // Then
+        assertThat(state.isActive()).isFalse();
+    }
+}